@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A thread safe, bounded, least recently used cache of keys to state addresses.
+ */
+final class AddressCache {
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final int capacity;
+
+  private final Map<String, String> entries;
+
+  /**
+   * Create a cache which holds at most the given number of addresses.
+   *
+   * @param maxEntries
+   *          the maximum number of entries retained
+   */
+  AddressCache(final int maxEntries) {
+    this.capacity = maxEntries;
+    this.entries = new LinkedHashMap<>(maxEntries, LOAD_FACTOR, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Return the cached address for the key, computing and caching it if it is absent. The address is
+   * computed outside of the cache lock so that concurrent misses do not serialize on the hash.
+   *
+   * @param key
+   *          the key
+   * @param addressFunction
+   *          computes the address of a key on a miss
+   * @return the address
+   */
+  String computeIfAbsent(final String key, final Function<String, String> addressFunction) {
+    synchronized (entries) {
+      final String cached = entries.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    final String address = addressFunction.apply(key);
+    synchronized (entries) {
+      entries.putIfAbsent(key, address);
+    }
+    return address;
+  }
+
+  /**
+   * Return the number of addresses currently cached.
+   *
+   * @return the number of entries
+   */
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Additive increase, multiplicative decrease control of the fraction of rounds which submit.
+ *
+ * <p>
+ * Each round adds the current rate to a credit, and the round submits once the credit reaches one,
+ * which spreads the submissions evenly. The rate reacts to each outcome:
+ * </p>
+ * <ul>
+ * <li>a success within the latency target raises the rate by a fixed step, so the submitter
+ * recovers within a few rounds of the pressure ending</li>
+ * <li>a success slower than the target lowers the rate a little, before the queue fills</li>
+ * <li>a full queue or an internal error halves the rate</li>
+ * <li>a lost connection quarters the rate, as there is no point submitting until it is back</li>
+ * <li>an invalid batch leaves the rate alone, as it says nothing of the validator's load</li>
+ * </ul>
+ */
+public final class AimdRateControl implements SubmitRateControl {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AimdRateControl.class);
+
+  /**
+   * The default submit latency above which the validator is taken to be under pressure.
+   */
+  public static final Duration DEFAULT_LATENCY_TARGET = Duration.ofSeconds(2);
+
+  /**
+   * The lowest rate, submitting once in this many rounds.
+   */
+  private static final int MAX_SKIPS = 32;
+
+  private static final double MIN_RATE = 1.0 / MAX_SKIPS;
+  private static final double INCREASE = 0.25;
+  private static final double SLOW_DECREASE = 0.75;
+  private static final double PRESSURE_DECREASE = 0.5;
+  private static final double CONNECTION_DECREASE = 0.25;
+
+  private final long latencyTargetNanos;
+  private double rate = 1.0;
+  private double credit = 1.0;
+
+  /**
+   * Create a control with the default latency target.
+   */
+  public AimdRateControl() {
+    this(DEFAULT_LATENCY_TARGET);
+  }
+
+  /**
+   * Create a control with the given latency target.
+   *
+   * @param latencyTarget
+   *          the submit latency above which the validator is taken to be under pressure
+   */
+  public AimdRateControl(final Duration latencyTarget) {
+    this.latencyTargetNanos = latencyTarget.toNanos();
+  }
+
+  @Override
+  public boolean shouldSubmit() {
+    credit = Math.min(1.0, credit + rate);
+    if (credit < 1.0) {
+      return false;
+    }
+    credit -= 1.0;
+    return true;
+  }
+
+  @Override
+  public void onOutcome(final SubmitOutcome outcome, final long latencyNanos) {
+    final double previous = rate;
+    switch (outcome) {
+    case OK:
+      if (latencyNanos > latencyTargetNanos) {
+        rate = Math.max(MIN_RATE, rate * SLOW_DECREASE);
+      } else {
+        rate = Math.min(1.0, rate + INCREASE);
+      }
+      break;
+    case QUEUE_FULL:
+    case INTERNAL_ERROR:
+      rate = Math.max(MIN_RATE, rate * PRESSURE_DECREASE);
+      break;
+    case CONNECTION_LOST:
+      rate = Math.max(MIN_RATE, rate * CONNECTION_DECREASE);
+      break;
+    case INVALID_BATCH:
+    default:
+      break;
+    }
+    if (rate != previous) {
+      LOGGER.warn("Submit {} in {} ms, now submitting in {} of rounds", outcome,
+          TimeUnit.NANOSECONDS.toMillis(latencyNanos), String.format("%.2f", rate));
+    }
+  }
+
+  /**
+   * Return the current fraction of rounds which submit.
+   *
+   * @return the rate
+   */
+  public double getRate() {
+    return rate;
+  }
+}
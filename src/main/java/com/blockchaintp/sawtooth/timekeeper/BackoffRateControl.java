@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The original rate control of the submitter. Every failure doubles the number of rounds skipped
+ * before the next submission, up to a limit, and every success reduces it by one.
+ */
+public final class BackoffRateControl implements SubmitRateControl {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BackoffRateControl.class);
+
+  /**
+   * The maximum number of rounds that may be skipped.
+   */
+  private static final int MAX_SKIPS = 32;
+
+  private int backoffCounter;
+  private int skipCounter;
+
+  @Override
+  public boolean shouldSubmit() {
+    if (skipCounter < backoffCounter) {
+      skipCounter++;
+      return false;
+    }
+    skipCounter = 0;
+    return true;
+  }
+
+  @Override
+  public void onOutcome(final SubmitOutcome outcome, final long latencyNanos) {
+    if (outcome == SubmitOutcome.OK) {
+      if (backoffCounter > 0) {
+        backoffCounter -= 1;
+        backoffCounter = Math.max(backoffCounter, 0);
+        LOGGER.warn("Successfully updated time marker after backoff, reducing backoff to {} intervals", backoffCounter);
+      }
+    } else {
+      backoffCounter = Math.max(1, 2 * backoffCounter);
+      backoffCounter = Math.min(MAX_SKIPS, backoffCounter);
+      LOGGER.warn("Error updating TimeKeeper records, increasing backoff to {} intervals", backoffCounter);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the current TimeKeeperConfig, reloading it from a properties file whenever the file's
+ * modification time changes. It is meant to be run periodically on a scheduled executor.
+ *
+ * <p>
+ * The modification time is polled rather than watched so that files replaced through a symbolic
+ * link, as mounted configuration usually is, are picked up. A file which cannot be read or has
+ * invalid settings is logged and the previous configuration kept.
+ * </p>
+ */
+public final class ConfigWatcher implements Runnable, Supplier<TimeKeeperConfig> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+  private final Path file;
+  private final TimeKeeperConfig defaults;
+  private final AtomicReference<TimeKeeperConfig> current;
+  private FileTime lastModified;
+
+  /**
+   * Watch a configuration file. The file is read once before this returns.
+   *
+   * @param configFile
+   *          the properties file
+   * @param defaultConfig
+   *          the configuration for settings the file does not give
+   */
+  public ConfigWatcher(final Path configFile, final TimeKeeperConfig defaultConfig) {
+    this.file = configFile;
+    this.defaults = defaultConfig;
+    this.current = new AtomicReference<>(defaultConfig);
+    run();
+  }
+
+  @Override
+  public TimeKeeperConfig get() {
+    return current.get();
+  }
+
+  @Override
+  public void run() {
+    final FileTime modified;
+    try {
+      modified = Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read configuration {}, keeping {}: {}", file, current.get(), e.getMessage());
+      return;
+    }
+    if (modified.equals(lastModified)) {
+      return;
+    }
+    final Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      props.load(in);
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read configuration {}, keeping {}: {}", file, current.get(), e.getMessage());
+      return;
+    }
+    // settings found invalid are not retried until the file changes again
+    lastModified = modified;
+    try {
+      final TimeKeeperConfig loaded = TimeKeeperConfig.fromProperties(props, defaults);
+      current.set(loaded);
+      LOGGER.info("Loaded configuration {}: {}", file, loaded);
+    } catch (TimeKeeperException e) {
+      LOGGER.warn("Invalid configuration {}, keeping {}: {}", file, current.get(), e.getMessage());
+    }
+  }
+}
@@ -22,6 +22,11 @@ public final class EventConstants {
    */
   public static final String TIMEKEEPER_MICROS_ATTRIBUTE = "micros";
 
+  /**
+   * Events for a named time domain will have this attribute set to the domain name.
+   */
+  public static final String TIMEKEEPER_DOMAIN_ATTRIBUTE = "domain";
+
   /**
    * Event type for DamlLogEntry events.
    */
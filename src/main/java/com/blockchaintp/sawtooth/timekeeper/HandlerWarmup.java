@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.blockchaintp.utils.VersionedEnvelopeUtils;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.util.Timestamps;
+
+import sawtooth.sdk.processor.Context;
+import sawtooth.sdk.processor.TransactionHandler;
+import sawtooth.sdk.processor.exceptions.InternalError;
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+import sawtooth.sdk.protobuf.TransactionHeader;
+
+/**
+ * Runs synthetic updates through a TransactionHandler against state held in memory, so that the
+ * apply path is loaded and compiled before the processor registers with a validator rather than
+ * while the validator waits on the first real transactions.
+ *
+ * <p>
+ * The updates cover the paths a live network takes: participants advancing the global time, repeat
+ * updates within the same second, and updates rejected for being too far behind.
+ * </p>
+ */
+public final class HandlerWarmup {
+
+  private static final int PARTICIPANTS = 16;
+  private static final long START_MILLIS = 1_600_000_000_000L;
+  private static final long SKEW_MILLIS = 500;
+  private static final long JITTER_MILLIS = 50;
+  private static final long STEP_MILLIS = 1_250;
+  private static final int MAX_DEVIATION_SECONDS = 30;
+  private static final long BEHIND_MILLIS = 3_600_000;
+  private static final int REPEAT_EVERY = 7;
+  private static final int BEHIND_EVERY = 50;
+
+  private HandlerWarmup() {
+  }
+
+  /**
+   * Apply a number of synthetic updates to the handler. The handler must not be one which records
+   * or forwards what it applies.
+   *
+   * @param handler
+   *          the handler to warm up
+   * @param updates
+   *          the number of updates to apply
+   * @throws InternalError
+   *           if the handler fails with an internal error
+   */
+  public static void run(final TransactionHandler handler, final int updates) throws InternalError {
+    final Random random = new Random(0);
+    final TimeKeeperUpdate template = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0)
+        .setMaxDeviation(MAX_DEVIATION_SECONDS).build();
+    final String[] keys = new String[PARTICIPANTS];
+    final long[] skews = new long[PARTICIPANTS];
+    for (int i = 0; i < PARTICIPANTS; i++) {
+      keys[i] = String.format("02%064x", i + 1);
+      skews[i] = Math.round((random.nextDouble() * 2 - 1) * SKEW_MILLIS);
+    }
+    final WarmupContext context = new WarmupContext();
+    long nowMillis = START_MILLIS;
+    for (int i = 0; i < updates; i++) {
+      final int participant = i % PARTICIPANTS;
+      if (i % REPEAT_EVERY != 0) {
+        nowMillis += STEP_MILLIS;
+      }
+      long readingMillis = nowMillis + skews[participant] + Math.round(random.nextGaussian() * JITTER_MILLIS);
+      if (i % BEHIND_EVERY == BEHIND_EVERY - 1) {
+        readingMillis -= BEHIND_MILLIS;
+      }
+      final TimeKeeperUpdate update = template.toBuilder().setTimeUpdate(Timestamps.fromMillis(readingMillis))
+          .build();
+      try {
+        handler.apply(toRequest(keys[participant], update, Integer.toString(i)), context);
+      } catch (InvalidTransactionException e) {
+        // expected for the updates which are too far behind
+      }
+    }
+  }
+
+  /**
+   * Build the request a validator would send for an update, with the payload wrapped as a
+   * submitter wraps it.
+   */
+  private static TpProcessRequest toRequest(final String signerPublicKey, final TimeKeeperUpdate update,
+      final String contextId) {
+    final String recordAddress = Namespace.makeParticipantAddress(Namespace.DEFAULT_DOMAIN, signerPublicKey);
+    final String globalAddress = Namespace.makeGlobalRecordAddress(Namespace.DEFAULT_DOMAIN);
+    final TransactionHeader header = TransactionHeader.newBuilder().setFamilyName(Namespace.TIMEKEEPER_FAMILY_NAME)
+        .setFamilyVersion(Namespace.TIMEKEEPER_FAMILY_VERSION_1_0).setSignerPublicKey(signerPublicKey)
+        .setBatcherPublicKey(signerPublicKey).addInputs(recordAddress).addInputs(globalAddress)
+        .addOutputs(recordAddress).addOutputs(globalAddress)
+        .addOutputs(Namespace.makeCheckpointPrefix(Namespace.DEFAULT_DOMAIN)).build();
+    return TpProcessRequest.newBuilder().setHeader(header)
+        .setPayload(VersionedEnvelopeUtils.wrap(update.toByteString())).setSignature(contextId)
+        .setContextId(contextId).build();
+  }
+
+  /**
+   * State kept in a map, with events and receipts discarded.
+   */
+  private static final class WarmupContext implements Context {
+
+    private final Map<String, ByteString> state = new HashMap<>();
+
+    @Override
+    public Map<String, ByteString> getState(final Collection<String> addresses) {
+      final Map<String, ByteString> results = new HashMap<>();
+      for (final String address : addresses) {
+        final ByteString value = state.get(address);
+        if (value != null) {
+          results.put(address, value);
+        }
+      }
+      return results;
+    }
+
+    @Override
+    public Collection<String> setState(final Collection<Map.Entry<String, ByteString>> addressValuePairs) {
+      final List<String> addresses = new ArrayList<>(addressValuePairs.size());
+      for (final Map.Entry<String, ByteString> e : addressValuePairs) {
+        state.put(e.getKey(), e.getValue());
+        addresses.add(e.getKey());
+      }
+      return addresses;
+    }
+
+    @Override
+    public void addReceiptData(final ByteString data) {
+      // not kept
+    }
+
+    @Override
+    public void addEvent(final String eventType, final Collection<Map.Entry<String, String>> attributes,
+        final ByteString extraData) {
+      // not kept
+    }
+
+    @Override
+    public Collection<String> deleteState(final Collection<String> addresses) {
+      final List<String> deleted = new ArrayList<>();
+      for (final String address : addresses) {
+        if (state.remove(address) != null) {
+          deleted.add(address);
+        }
+      }
+      return deleted;
+    }
+  }
+}
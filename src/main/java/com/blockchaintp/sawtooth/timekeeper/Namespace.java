@@ -13,6 +13,10 @@
  */
 package com.blockchaintp.sawtooth.timekeeper;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import com.blockchaintp.sawtooth.SawtoothClientUtils;
 
 /**
@@ -42,15 +46,92 @@ public final class Namespace {
    */
   public static final String TIMEKEEPER_FAMILY_VERSION_1_0 = "1.0";
 
+  /**
+   * Maximum number of participant addresses held in the address cache.
+   */
+  public static final int ADDRESS_CACHE_SIZE = 4096;
+
+  /**
+   * The name of the default time domain, whose records keep the addresses they had before domains.
+   */
+  public static final String DEFAULT_DOMAIN = "";
+
+  private static final int DOMAIN_CACHE_SIZE = 256;
+
+  private static final int DOMAIN_TAG_LENGTH = 12;
+
+  private static final String DOMAIN_PARTICIPANT_PART = "00";
+
+  private static final String DOMAIN_GLOBAL_PART = "01";
+
+  private static final String DOMAIN_CHECKPOINT_PART = "02";
+
+  private static final String GLOBAL_RECORD_NAME = "Global Record";
+
+  private static final String HASH_ALGORITHM = "SHA-512";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final int NIBBLE_BITS = 4;
+
+  private static final int NIBBLE_MASK = 0x0f;
+
+  /**
+   * Hex digits of the bucket start at the end of a checkpoint address, enough for any long.
+   */
+  private static final int CHECKPOINT_SECONDS_DIGITS = Long.SIZE / NIBBLE_BITS;
+
+  private static final String FAMILY_NAMESPACE = SawtoothClientUtils.getHash(TIMEKEEPER_FAMILY_NAME).substring(0,
+      NAMESPACE_LENGTH);
+
   /**
    * Address space for individual TimeKeeper records.
    */
-  public static final String TIMEKEEPER_RECORD_NS = getNameSpace() + "00";
+  public static final String TIMEKEEPER_RECORD_NS = FAMILY_NAMESPACE + "00";
 
   /**
    * Address for global timekeeper record.
    */
-  public static final String TIMEKEEPER_GLOBAL_RECORD = makeAddress(TIMEKEEPER_RECORD_NS, "Global Record");
+  public static final String TIMEKEEPER_GLOBAL_RECORD = makeAddress(TIMEKEEPER_RECORD_NS, GLOBAL_RECORD_NAME);
+
+  /**
+   * Address space for checkpoints of the global time, which sort in time order. Participant
+   * addresses are hashes directly under the family namespace and so fall under any short prefix,
+   * so the checkpoint prefix runs on in zeros up to the bucket start, where a hashed address has no
+   * real chance of matching it.
+   */
+  public static final String TIMEKEEPER_CHECKPOINT_NS = TIMEKEEPER_RECORD_NS + "01"
+      + "0".repeat(ADDRESS_LENGTH - TIMEKEEPER_RECORD_NS.length() - 2 - CHECKPOINT_SECONDS_DIGITS);
+
+  private static final String CHECKPOINT_FORMAT = "%0" + CHECKPOINT_SECONDS_DIGITS + "x";
+
+  /**
+   * Address space for named time domains. Each domain has a prefix of this followed by a tag of the
+   * domain name, then its participant records, global record and checkpoints each under their own
+   * two characters, the checkpoints padded with zeros as those of the default domain are.
+   *
+   * <p>
+   * Participant addresses of the default domain are hashes directly under the family namespace, so
+   * they also fall under this prefix and under every domain prefix. The participant addresses of a
+   * domain cannot be told apart from them by address. Global records and checkpoints can, by
+   * their exact shape, see {@link #isGlobalRecordAddress(String)} and
+   * {@link #isCheckpointAddress(String)}.
+   * </p>
+   */
+  public static final String TIMEKEEPER_DOMAIN_NS = FAMILY_NAMESPACE + "02";
+
+  private static final int DOMAIN_PREFIX_LENGTH = TIMEKEEPER_DOMAIN_NS.length() + DOMAIN_TAG_LENGTH;
+
+  private static final String DOMAIN_CHECKPOINT_PADDING = DOMAIN_CHECKPOINT_PART
+      + "0".repeat(ADDRESS_LENGTH - DOMAIN_PREFIX_LENGTH - DOMAIN_CHECKPOINT_PART.length() - CHECKPOINT_SECONDS_DIGITS);
+
+  private static final String DOMAIN_GLOBAL_RECORD_SUFFIX = makeAddress(
+      TIMEKEEPER_DOMAIN_NS + "0".repeat(DOMAIN_TAG_LENGTH) + DOMAIN_GLOBAL_PART, GLOBAL_RECORD_NAME)
+      .substring(DOMAIN_PREFIX_LENGTH);
+
+  private static final AddressCache PARTICIPANT_ADDRESSES = new AddressCache(ADDRESS_CACHE_SIZE);
+
+  private static final AddressCache DOMAIN_PREFIXES = new AddressCache(DOMAIN_CACHE_SIZE);
 
   /**
    * The first 6 characters of the family name hash.
@@ -58,7 +139,140 @@ public final class Namespace {
    * @return The first 6 characters of the family name hash
    */
   public static String getNameSpace() {
-    return SawtoothClientUtils.getHash(TIMEKEEPER_FAMILY_NAME).substring(0, NAMESPACE_LENGTH);
+    return FAMILY_NAMESPACE;
+  }
+
+  /**
+   * Return the address of the TimeKeeperRecord for the given participant, consulting a bounded
+   * cache before hashing.
+   *
+   * @param signerPublicKey
+   *          the public key of the participant in hex
+   * @return the address of the participant record
+   */
+  public static String makeParticipantAddress(final String signerPublicKey) {
+    return PARTICIPANT_ADDRESSES.computeIfAbsent(signerPublicKey,
+        k -> makeAddress(FAMILY_NAMESPACE, k.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Return the address of the TimeKeeperRecord for the given participant in a time domain.
+   *
+   * @param domain
+   *          the name of the time domain, DEFAULT_DOMAIN for the default
+   * @param signerPublicKey
+   *          the public key of the participant in hex
+   * @return the address of the participant record
+   */
+  public static String makeParticipantAddress(final String domain, final String signerPublicKey) {
+    if (domain.isEmpty()) {
+      return makeParticipantAddress(signerPublicKey);
+    }
+    final String prefix = makeDomainPrefix(domain);
+    // the prefix has a fixed length, so prefix and key together are unique
+    return PARTICIPANT_ADDRESSES.computeIfAbsent(prefix + signerPublicKey,
+        k -> makeAddress(prefix + DOMAIN_PARTICIPANT_PART, signerPublicKey.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Return the address of the global record of a time domain.
+   *
+   * @param domain
+   *          the name of the time domain, DEFAULT_DOMAIN for the default
+   * @return the address of the global record
+   */
+  public static String makeGlobalRecordAddress(final String domain) {
+    if (domain.isEmpty()) {
+      return TIMEKEEPER_GLOBAL_RECORD;
+    }
+    return makeDomainPrefix(domain) + DOMAIN_GLOBAL_RECORD_SUFFIX;
+  }
+
+  /**
+   * Return the address prefix of the checkpoints of a time domain.
+   *
+   * @param domain
+   *          the name of the time domain, DEFAULT_DOMAIN for the default
+   * @return the prefix of all checkpoint addresses of the domain
+   */
+  public static String makeCheckpointPrefix(final String domain) {
+    if (domain.isEmpty()) {
+      return TIMEKEEPER_CHECKPOINT_NS;
+    }
+    return makeDomainPrefix(domain) + DOMAIN_CHECKPOINT_PADDING;
+  }
+
+  /**
+   * Return the address of the checkpoint of a time domain for the bucket starting at a time.
+   *
+   * @param domain
+   *          the name of the time domain, DEFAULT_DOMAIN for the default
+   * @param bucketStartSeconds
+   *          the start of the checkpoint bucket in seconds since the epoch
+   * @return the address of the checkpoint
+   */
+  public static String makeCheckpointAddress(final String domain, final long bucketStartSeconds) {
+    if (domain.isEmpty()) {
+      return makeCheckpointAddress(bucketStartSeconds);
+    }
+    return makeCheckpointPrefix(domain) + String.format(CHECKPOINT_FORMAT, bucketStartSeconds);
+  }
+
+  /**
+   * Return the address prefix under which all the records of a named time domain lie.
+   *
+   * @param domain
+   *          the name of the time domain
+   * @return the prefix of the domain
+   */
+  public static String makeDomainPrefix(final String domain) {
+    return DOMAIN_PREFIXES.computeIfAbsent(domain,
+        d -> TIMEKEEPER_DOMAIN_NS + SawtoothClientUtils.getHash(d).substring(0, DOMAIN_TAG_LENGTH));
+  }
+
+  /**
+   * Return whether an address is that of the global record of the default or a named time domain,
+   * which for a named domain is told by the hashed suffix all their global records share.
+   *
+   * @param address
+   *          the address
+   * @return true for a global record address
+   */
+  public static boolean isGlobalRecordAddress(final String address) {
+    if (address.startsWith(TIMEKEEPER_DOMAIN_NS)) {
+      return address.length() == ADDRESS_LENGTH && address.endsWith(DOMAIN_GLOBAL_RECORD_SUFFIX);
+    }
+    return address.equals(TIMEKEEPER_GLOBAL_RECORD);
+  }
+
+  /**
+   * Return whether an address is that of a checkpoint of the default or a named time domain. Only
+   * the zero padding before the bucket start tells a checkpoint from a participant address whose
+   * hash happens to begin with the same digits.
+   *
+   * @param address
+   *          the address
+   * @return true for a checkpoint address
+   */
+  public static boolean isCheckpointAddress(final String address) {
+    if (address.length() != ADDRESS_LENGTH) {
+      return false;
+    }
+    if (address.startsWith(TIMEKEEPER_DOMAIN_NS)) {
+      return address.startsWith(DOMAIN_CHECKPOINT_PADDING, DOMAIN_PREFIX_LENGTH);
+    }
+    return address.startsWith(TIMEKEEPER_CHECKPOINT_NS);
+  }
+
+  /**
+   * Return the address of the checkpoint of the bucket starting at the given time.
+   *
+   * @param bucketStartSeconds
+   *          the start of the checkpoint bucket in seconds since the epoch
+   * @return the address of the checkpoint
+   */
+  public static String makeCheckpointAddress(final long bucketStartSeconds) {
+    return TIMEKEEPER_CHECKPOINT_NS + String.format(CHECKPOINT_FORMAT, bucketStartSeconds);
   }
 
   /**
@@ -81,6 +295,42 @@ public final class Namespace {
     return ns + hash;
   }
 
+  /**
+   * Make an address given a namespace and the raw bytes to hash. This produces the same address
+   * as {@link #makeAddress(String, String...)} for the UTF-8 encoding of the parts, but hex encodes
+   * only the tail of the digest that is actually used.
+   *
+   * @param ns
+   *          the namespace
+   * @param part
+   *          the bytes to hash
+   * @return the hash of the collected address
+   */
+  public static String makeAddress(final String ns, final byte[] part) {
+    final byte[] digest = newDigest().digest(part);
+    final char[] address = new char[ADDRESS_LENGTH];
+    ns.getChars(0, ns.length(), address, 0);
+    // the address takes the last (ADDRESS_LENGTH - ns.length()) hex digits of the digest
+    int nibble = digest.length * 2 - (ADDRESS_LENGTH - ns.length());
+    for (int i = ns.length(); i < ADDRESS_LENGTH; i++, nibble++) {
+      final int b = digest[nibble / 2];
+      if (nibble % 2 == 0) {
+        address[i] = HEX_DIGITS[(b >> NIBBLE_BITS) & NIBBLE_MASK];
+      } else {
+        address[i] = HEX_DIGITS[b & NIBBLE_MASK];
+      }
+    }
+    return new String(address);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(String.format("%s is not available", HASH_ALGORITHM), e);
+    }
+  }
+
   private Namespace() {
   }
 
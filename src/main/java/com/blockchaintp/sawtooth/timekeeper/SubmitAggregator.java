@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import sawtooth.sdk.messaging.Stream;
+import sawtooth.sdk.processor.exceptions.ValidatorConnectionError;
+import sawtooth.sdk.protobuf.Batch;
+import sawtooth.sdk.protobuf.ClientBatchSubmitRequest;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+import sawtooth.sdk.protobuf.Message;
+
+/**
+ * Collects the batch submissions of submitters on the same host and forwards them to the validator
+ * together, so that many local participants share one connection and one round trip per period.
+ *
+ * <p>
+ * The aggregator binds a ZMQ ROUTER socket, by default on an ipc:// endpoint, and answers the
+ * CLIENT_BATCH_SUBMIT_REQUEST messages of the validator protocol, so an unmodified submitter is
+ * pointed at it in place of the validator. The first submission opens a window, and when it closes
+ * every batch received is sent upstream in a single request. The status of that request is returned
+ * to each submitter.
+ * </p>
+ *
+ * <p>
+ * The validator checks every batch of a request before it queues any of them, and rejects the
+ * request as a whole if one is invalid. When a combined request is rejected so, the submissions are
+ * split in halves and each half is sent again, and a half which is rejected again is split in turn,
+ * until each submitter at fault is left alone with its own status. One malformed batch among n
+ * submissions so costs about 2 log n further requests rather than n. The resends share one upstream
+ * timeout between them, and submissions whose turn comes after it has run out are answered with
+ * INTERNAL_ERROR, so a slow validator cannot hold the aggregator for a timeout per submitter. Other
+ * failures, such as a full queue, are the validator's and are returned to every submitter.
+ * </p>
+ *
+ * <p>
+ * Batches are forwarded as they were signed rather than merged into one, since the validator only
+ * accepts transactions in a batch signed by the key they name as their batcher, and a batch fails
+ * as a whole, so one participant's rejected update would otherwise fail all of them.
+ * </p>
+ */
+public final class SubmitAggregator implements Runnable, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubmitAggregator.class);
+
+  /**
+   * The default time in milliseconds submissions are collected before they are forwarded.
+   */
+  public static final long DEFAULT_WINDOW_MILLIS = 200;
+
+  /**
+   * The default number of batches which are forwarded without waiting for the window to close.
+   */
+  public static final int DEFAULT_MAX_BATCHES = 256;
+
+  private static final long IDLE_POLL_MILLIS = 100;
+
+  private static final long UPSTREAM_TIMEOUT_MILLIS = 10_000;
+
+  private final String endpoint;
+  private final Stream upstream;
+  private final long windowMillis;
+  private final int maxBatches;
+  private final long upstreamTimeoutMillis;
+
+  private final List<PendingSubmit> pending = new ArrayList<>();
+  private int pendingBatches;
+  private long windowEndNanos;
+
+  private final AtomicLong upstreamSubmits = new AtomicLong();
+  private final AtomicLong forwardedBatches = new AtomicLong();
+
+  private volatile boolean running = true;
+
+  /**
+   * Create an aggregator which will bind to the given endpoint when run.
+   *
+   * @param bindEndpoint
+   *          the ZMQ endpoint local submitters connect to, e.g. ipc:///run/timekeeper.sock
+   * @param upstreamStream
+   *          the stream connected to the validator
+   * @param window
+   *          the milliseconds to collect submissions for before forwarding them
+   * @param batchLimit
+   *          the number of batches at which they are forwarded before the window closes
+   */
+  public SubmitAggregator(final String bindEndpoint, final Stream upstreamStream, final long window,
+      final int batchLimit) {
+    this(bindEndpoint, upstreamStream, window, batchLimit, UPSTREAM_TIMEOUT_MILLIS);
+  }
+
+  SubmitAggregator(final String bindEndpoint, final Stream upstreamStream, final long window, final int batchLimit,
+      final long upstreamTimeout) {
+    this.endpoint = bindEndpoint;
+    this.upstream = upstreamStream;
+    this.windowMillis = window;
+    this.maxBatches = batchLimit;
+    this.upstreamTimeoutMillis = upstreamTimeout;
+  }
+
+  /**
+   * Return the number of requests sent to the validator, including those resending part of the
+   * submissions after a combined request was rejected.
+   *
+   * @return the number of upstream submissions
+   */
+  public long getUpstreamSubmits() {
+    return upstreamSubmits.get();
+  }
+
+  /**
+   * Return the number of batches forwarded to the validator.
+   *
+   * @return the number of batches
+   */
+  public long getForwardedBatches() {
+    return forwardedBatches.get();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+  }
+
+  @Override
+  public void run() {
+    try (ZContext zmq = new ZContext()) {
+      final ZMQ.Socket socket = zmq.createSocket(SocketType.ROUTER);
+      socket.bind(endpoint);
+      LOGGER.info("Aggregating submissions on {}", endpoint);
+      final ZMQ.Poller poller = zmq.createPoller(1);
+      poller.register(socket, ZMQ.Poller.POLLIN);
+      while (running && !Thread.currentThread().isInterrupted()) {
+        poller.poll(pollTimeout());
+        if (poller.pollin(0)) {
+          receiveAll(socket);
+        }
+        if (!pending.isEmpty() && (pendingBatches >= maxBatches || System.nanoTime() - windowEndNanos >= 0)) {
+          forward(socket);
+        }
+      }
+      poller.close();
+    }
+  }
+
+  private long pollTimeout() {
+    if (pending.isEmpty()) {
+      return IDLE_POLL_MILLIS;
+    }
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(windowEndNanos - System.nanoTime()));
+  }
+
+  private void receiveAll(final ZMQ.Socket socket) {
+    byte[] identity = socket.recv(ZMQ.DONTWAIT);
+    while (identity != null) {
+      final byte[] body = socket.recv();
+      try {
+        receive(identity, Message.parseFrom(body));
+      } catch (InvalidProtocolBufferException e) {
+        LOGGER.warn("Discarding unparseable message: {}", e.getMessage());
+      }
+      identity = socket.recv(ZMQ.DONTWAIT);
+    }
+  }
+
+  private void receive(final byte[] identity, final Message message) throws InvalidProtocolBufferException {
+    if (message.getMessageType() != Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST) {
+      LOGGER.debug("Ignoring message of type {}", message.getMessageType());
+      return;
+    }
+    final ClientBatchSubmitRequest request = ClientBatchSubmitRequest.parseFrom(message.getContent());
+    if (pending.isEmpty()) {
+      windowEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+    pending.add(new PendingSubmit(identity, message.getCorrelationId(), request.getBatchesList()));
+    pendingBatches += request.getBatchesCount();
+  }
+
+  private void forward(final ZMQ.Socket socket) {
+    final ClientBatchSubmitResponse.Status status = submitUpstream(pending, upstreamTimeoutMillis);
+    LOGGER.debug("Forwarded {} batches from {} submissions, status {}", pendingBatches, pending.size(), status);
+    if (status == ClientBatchSubmitResponse.Status.INVALID_BATCH && pending.size() > 1) {
+      resendHalves(socket, pending, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(upstreamTimeoutMillis));
+    } else {
+      replyAll(socket, pending, status);
+    }
+    forwardedBatches.addAndGet(pendingBatches);
+    pending.clear();
+    pendingBatches = 0;
+  }
+
+  private void resendHalves(final ZMQ.Socket socket, final List<PendingSubmit> submits, final long deadlineNanos) {
+    final int middle = submits.size() / 2;
+    resend(socket, submits.subList(0, middle), deadlineNanos);
+    resend(socket, submits.subList(middle, submits.size()), deadlineNanos);
+  }
+
+  private void resend(final ZMQ.Socket socket, final List<PendingSubmit> submits, final long deadlineNanos) {
+    final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    if (remainingMillis <= 0) {
+      LOGGER.warn("No time left to resend {} rejected submissions", submits.size());
+      replyAll(socket, submits, ClientBatchSubmitResponse.Status.INTERNAL_ERROR);
+      return;
+    }
+    final ClientBatchSubmitResponse.Status status = submitUpstream(submits, remainingMillis);
+    if (status == ClientBatchSubmitResponse.Status.INVALID_BATCH && submits.size() > 1) {
+      resendHalves(socket, submits, deadlineNanos);
+      return;
+    }
+    if (status != ClientBatchSubmitResponse.Status.OK) {
+      LOGGER.warn("Batches from {} submissions not accepted, status {}", submits.size(), status);
+    }
+    replyAll(socket, submits, status);
+  }
+
+  private static void replyAll(final ZMQ.Socket socket, final List<PendingSubmit> submits,
+      final ClientBatchSubmitResponse.Status status) {
+    for (final PendingSubmit submit : submits) {
+      reply(socket, submit, status);
+    }
+  }
+
+  private static void reply(final ZMQ.Socket socket, final PendingSubmit submit,
+      final ClientBatchSubmitResponse.Status status) {
+    final Message reply = Message.newBuilder().setMessageType(Message.MessageType.CLIENT_BATCH_SUBMIT_RESPONSE)
+        .setCorrelationId(submit.correlationId)
+        .setContent(ClientBatchSubmitResponse.newBuilder().setStatus(status).build().toByteString()).build();
+    socket.send(submit.identity, ZMQ.SNDMORE);
+    socket.send(reply.toByteArray());
+  }
+
+  private ClientBatchSubmitResponse.Status submitUpstream(final List<PendingSubmit> submits,
+      final long timeoutMillis) {
+    final ClientBatchSubmitRequest.Builder request = ClientBatchSubmitRequest.newBuilder();
+    for (final PendingSubmit submit : submits) {
+      request.addAllBatches(submit.batches);
+    }
+    upstreamSubmits.incrementAndGet();
+    try {
+      final ByteString result = upstream
+          .send(Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST, request.build().toByteString())
+          .getResult(timeoutMillis);
+      return ClientBatchSubmitResponse.parseFrom(result).getStatus();
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted forwarding batches");
+      Thread.currentThread().interrupt();
+    } catch (TimeoutException | ValidatorConnectionError e) {
+      LOGGER.warn("Error forwarding batches: {}", e.getMessage());
+    } catch (InvalidProtocolBufferException e) {
+      LOGGER.warn("Invalid submit response from validator: {}", e.getMessage());
+    }
+    return ClientBatchSubmitResponse.Status.INTERNAL_ERROR;
+  }
+
+  /**
+   * A submission from a local submitter waiting to be forwarded.
+   */
+  private static final class PendingSubmit {
+    private final byte[] identity;
+    private final String correlationId;
+    private final List<Batch> batches;
+
+    PendingSubmit(final byte[] id, final String correlation, final List<Batch> submitted) {
+      this.identity = id;
+      this.correlationId = correlation;
+      this.batches = submitted;
+    }
+  }
+}
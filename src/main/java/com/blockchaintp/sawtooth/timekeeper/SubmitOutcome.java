@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+/**
+ * The outcome of a submission to the validator, as seen by a SubmitRateControl.
+ */
+public enum SubmitOutcome {
+  /**
+   * The validator accepted the batches.
+   */
+  OK,
+  /**
+   * The validator's pending queue is full, it is under pressure.
+   */
+  QUEUE_FULL,
+  /**
+   * The validator rejected the batches themselves.
+   */
+  INVALID_BATCH,
+  /**
+   * The validator failed to handle the request, or its response could not be read.
+   */
+  INTERNAL_ERROR,
+  /**
+   * The connection to the validator failed.
+   */
+  CONNECTION_LOST
+}
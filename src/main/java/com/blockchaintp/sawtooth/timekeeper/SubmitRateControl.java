@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+/**
+ * Decides which rounds of a TimeKeeperRunnable submit, from the outcomes and latencies of its
+ * previous submissions. Implementations are called from the single thread running the submitter.
+ */
+public interface SubmitRateControl {
+
+  /**
+   * Return whether this round should submit. Called once per round.
+   *
+   * @return true to submit
+   */
+  boolean shouldSubmit();
+
+  /**
+   * Record the outcome of a submission.
+   *
+   * @param outcome
+   *          the outcome
+   * @param latencyNanos
+   *          the nanoseconds from sending the request to its response or failure
+   */
+  void onOutcome(SubmitOutcome outcome, long latencyNanos);
+}
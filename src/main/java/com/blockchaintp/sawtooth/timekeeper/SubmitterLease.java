@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A lease on a local lock file which lets a pair of submitters for one participant run as active
+ * and standby, so that only one of them submits.
+ *
+ * <p>
+ * The lease is an exclusive lock on the file, which the operating system releases when the holder
+ * exits. A standby tries to take the lease before each run of its submitter, so it takes over
+ * within one update period of the active submitter going away.
+ * </p>
+ *
+ * <p>
+ * Both submitters are given the same key, so a takeover keeps the participant, its record and its
+ * phase of the update period, rather than adding a participant and leaving the old one in the
+ * global record until it expires. The key should be in place before the pair are first started, as
+ * both would otherwise generate one.
+ * </p>
+ */
+public final class SubmitterLease implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubmitterLease.class);
+
+  private final Path file;
+  private FileChannel channel;
+  private FileLock lock;
+
+  /**
+   * Create a lease on the given file. The lease is not taken until it is first tried.
+   *
+   * @param lockFile
+   *          the lock file, created if it does not exist
+   */
+  public SubmitterLease(final Path lockFile) {
+    this.file = lockFile;
+  }
+
+  /**
+   * Return whether this process holds the lease, taking it if it is free.
+   *
+   * @return true if the lease is held
+   */
+  public synchronized boolean tryAcquire() {
+    if (lock != null && lock.isValid()) {
+      return true;
+    }
+    try {
+      if (channel == null || !channel.isOpen()) {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // another lease in this process holds the lock
+      lock = null;
+    } catch (IOException e) {
+      LOGGER.warn("Cannot take the submitter lease {}: {}", file, e.getMessage());
+      lock = null;
+    }
+    if (lock != null) {
+      LOGGER.info("Took the submitter lease {}, now active", file);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Return a task which runs the given task only while this lease is held.
+   *
+   * @param task
+   *          the task, usually the submitter
+   * @return the guarded task
+   */
+  public Runnable guard(final Runnable task) {
+    return () -> {
+      if (tryAcquire()) {
+        task.run();
+      } else {
+        LOGGER.debug("Standing by, the submitter lease {} is held elsewhere", file);
+      }
+    };
+  }
+
+  /**
+   * Release the lease, if it is held.
+   *
+   * @throws IOException
+   *           if the lock file cannot be closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    lock = null;
+    if (channel != null) {
+      // closing the channel releases the lock
+      channel.close();
+      channel = null;
+    }
+  }
+}
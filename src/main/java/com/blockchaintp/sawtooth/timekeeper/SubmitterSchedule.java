@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.blockchaintp.sawtooth.SawtoothClientUtils;
+
+/**
+ * Runs a submitter repeatedly on a scheduled executor, reading the delay before each run from the
+ * current configuration, so that a change of period applies from the next round without
+ * restarting the submitter.
+ *
+ * <p>
+ * A schedule created for a participant runs at a fixed phase of the period on the wall clock,
+ * derived from the participant's public key, plus a bounded random jitter. Participants then
+ * submit spread across the period however they were started, rather than all together after a
+ * coordinated restart, where their updates would conflict on the global record.
+ * </p>
+ */
+public final class SubmitterSchedule implements Runnable {
+
+  /**
+   * The default bound on the random delay added to each run of a participant's schedule.
+   */
+  public static final long DEFAULT_JITTER_MILLIS = 1000;
+
+  private static final int PHASE_HEX_DIGITS = 8;
+
+  private static final int HEX_RADIX = 16;
+
+  private static final double PHASE_RANGE = 0x1p32;
+
+  private final ScheduledExecutorService executor;
+  private final Runnable submitter;
+  private final Supplier<TimeKeeperConfig> config;
+  private final boolean aligned;
+  private final double phase;
+  private final long jitterMillis;
+  private final Random random = new Random();
+
+  /**
+   * Create a schedule. Nothing runs until it is started.
+   *
+   * @param scheduler
+   *          the executor to run the submitter on
+   * @param task
+   *          the submitter
+   * @param configSupplier
+   *          the source of the current period
+   */
+  public SubmitterSchedule(final ScheduledExecutorService scheduler, final Runnable task,
+      final Supplier<TimeKeeperConfig> configSupplier) {
+    this.executor = scheduler;
+    this.submitter = task;
+    this.config = configSupplier;
+    this.aligned = false;
+    this.phase = 0;
+    this.jitterMillis = 0;
+  }
+
+  /**
+   * Create a schedule which runs at the phase of the period given by the participant's key. Nothing
+   * runs until it is started.
+   *
+   * @param scheduler
+   *          the executor to run the submitter on
+   * @param task
+   *          the submitter
+   * @param configSupplier
+   *          the source of the current period
+   * @param publicKey
+   *          the public key of the participant in hex
+   * @param jitter
+   *          the most milliseconds each run is delayed by at random, limited to half the period
+   */
+  public SubmitterSchedule(final ScheduledExecutorService scheduler, final Runnable task,
+      final Supplier<TimeKeeperConfig> configSupplier, final String publicKey, final long jitter) {
+    this.executor = scheduler;
+    this.submitter = task;
+    this.config = configSupplier;
+    this.aligned = true;
+    this.phase = phaseOf(publicKey);
+    this.jitterMillis = Math.max(0, jitter);
+  }
+
+  /**
+   * Return the phase of a participant as a fraction of the period.
+   *
+   * @param publicKey
+   *          the public key of the participant in hex
+   * @return the phase in [0, 1)
+   */
+  static double phaseOf(final String publicKey) {
+    final String hash = SawtoothClientUtils.getHash(publicKey);
+    return Long.parseLong(hash.substring(0, PHASE_HEX_DIGITS), HEX_RADIX) / PHASE_RANGE;
+  }
+
+  /**
+   * Return the milliseconds from now until the next time strictly after now which falls at the
+   * given offset into the period.
+   *
+   * @param nowMillis
+   *          the current time in milliseconds since the epoch
+   * @param periodMillis
+   *          the period in milliseconds
+   * @param phaseMillis
+   *          the offset into the period in milliseconds
+   * @return the delay in milliseconds
+   */
+  static long delayToPhase(final long nowMillis, final long periodMillis, final long phaseMillis) {
+    final long intoPeriod = Math.floorMod(nowMillis - phaseMillis, periodMillis);
+    return periodMillis - intoPeriod;
+  }
+
+  /**
+   * Schedule the first run, one period from now or, for a participant, at its next phase.
+   */
+  public void start() {
+    scheduleNext();
+  }
+
+  @Override
+  public void run() {
+    try {
+      submitter.run();
+    } finally {
+      scheduleNext();
+    }
+  }
+
+  private void scheduleNext() {
+    try {
+      if (aligned) {
+        final long periodMillis = TimeUnit.SECONDS.toMillis(config.get().getUpdatePeriod());
+        final long phaseMillis = (long) (phase * periodMillis);
+        final long jitter = (long) (random.nextDouble() * Math.min(jitterMillis, periodMillis / 2));
+        final long delay = delayToPhase(System.currentTimeMillis(), periodMillis, phaseMillis) + jitter;
+        executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+      } else {
+        executor.schedule(this, config.get().getUpdatePeriod(), TimeUnit.SECONDS);
+      }
+    } catch (RejectedExecutionException e) {
+      // the executor is shutting down
+    }
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import java.util.Properties;
+
+import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperHistoryMode;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+
+/**
+ * An immutable snapshot of the settings of a submitter which may be changed while it runs.
+ *
+ * <p>
+ * Settings which decide the global time, such as the participant expiry window, must be the same on
+ * every validator and are never read from local configuration. Instead they are carried on the
+ * updates a submitter sends, and are recorded on chain.
+ * </p>
+ */
+public final class TimeKeeperConfig {
+
+  /**
+   * The property giving the seconds between updates.
+   */
+  public static final String PERIOD = "period";
+
+  /**
+   * The property giving the maxDeviation to send on updates, 0 to leave unset.
+   */
+  public static final String MAX_DEVIATION = "maxDeviation";
+
+  /**
+   * The property giving the maxHistory to send on updates, 0 to leave unset.
+   */
+  public static final String MAX_HISTORY = "maxHistory";
+
+  /**
+   * The property giving the participant expiry in seconds to send on updates, 0 to leave unset.
+   */
+  public static final String EXPIRY_SECONDS = "expirySeconds";
+
+  /**
+   * The property giving the maximum participants to send on updates, 0 to leave unset.
+   */
+  public static final String MAX_PARTICIPANTS = "maxParticipants";
+
+  /**
+   * The property giving the history mode to send on updates, HISTORY_UNSET to leave unset.
+   */
+  public static final String HISTORY_MODE = "historyMode";
+
+  /**
+   * The property giving the seconds between global time checkpoints to send on updates, 0 to leave
+   * unset.
+   */
+  public static final String CHECKPOINT_SECONDS = "checkpointSeconds";
+
+  /**
+   * The property giving the version of the updates sent, V_2_0 or V_3_0 for microsecond precision.
+   */
+  public static final String VERSION = "version";
+
+  /**
+   * The property giving the aggregation of participant times to send on updates, AGGREGATION_UNSET
+   * to leave unset.
+   */
+  public static final String AGGREGATION = "aggregation";
+
+  /**
+   * The property giving whether updates ask for the global record to keep its participants in a
+   * compact table in insertion order, true or false.
+   */
+  public static final String COMPACT_PARTICIPANTS = "compactParticipants";
+
+  private final int updatePeriod;
+  private final int maxDeviation;
+  private final int maxHistory;
+  private final int expirySeconds;
+  private final int maxParticipants;
+  private final TimeKeeperHistoryMode historyMode;
+  private final int checkpointSeconds;
+  private final TimeKeeperVersion version;
+  private final boolean compactParticipants;
+  private final TimeKeeperAggregation aggregation;
+
+  /**
+   * Create a configuration.
+   *
+   * @param period
+   *          the seconds between updates
+   * @param deviation
+   *          the maxDeviation to send on updates, 0 to leave unset
+   * @param history
+   *          the maxHistory to send on updates, 0 to leave unset
+   */
+  public TimeKeeperConfig(final int period, final int deviation, final int history) {
+    this(period, deviation, history, 0, 0, TimeKeeperHistoryMode.HISTORY_UNSET, 0);
+  }
+
+  /**
+   * Create a configuration including the settings of the global record.
+   *
+   * @param period
+   *          the seconds between updates
+   * @param deviation
+   *          the maxDeviation to send on updates, 0 to leave unset
+   * @param history
+   *          the maxHistory to send on updates, 0 to leave unset
+   * @param expiry
+   *          the participant expiry in seconds to send on updates, 0 to leave unset
+   * @param participants
+   *          the maximum participants to send on updates, 0 to leave unset
+   * @param mode
+   *          the participant history mode to send on updates, HISTORY_UNSET to leave unset
+   * @param checkpoint
+   *          the seconds between global time checkpoints to send on updates, 0 to leave unset
+   */
+  public TimeKeeperConfig(final int period, final int deviation, final int history, final int expiry,
+      final int participants, final TimeKeeperHistoryMode mode, final int checkpoint) {
+    this.updatePeriod = period;
+    this.maxDeviation = deviation;
+    this.maxHistory = history;
+    this.expirySeconds = expiry;
+    this.maxParticipants = participants;
+    this.historyMode = mode;
+    this.checkpointSeconds = checkpoint;
+    this.version = TimeKeeperVersion.V_2_0;
+    this.compactParticipants = false;
+    this.aggregation = TimeKeeperAggregation.AGGREGATION_UNSET;
+  }
+
+  private TimeKeeperConfig(final TimeKeeperConfig base, final TimeKeeperVersion updateVersion,
+      final boolean compact, final TimeKeeperAggregation aggregationType) {
+    this.updatePeriod = base.updatePeriod;
+    this.maxDeviation = base.maxDeviation;
+    this.maxHistory = base.maxHistory;
+    this.expirySeconds = base.expirySeconds;
+    this.maxParticipants = base.maxParticipants;
+    this.historyMode = base.historyMode;
+    this.checkpointSeconds = base.checkpointSeconds;
+    this.version = updateVersion;
+    this.compactParticipants = compact;
+    this.aggregation = aggregationType;
+  }
+
+  /**
+   * Return a copy of this configuration sending updates of the given version.
+   *
+   * @param updateVersion
+   *          the version of the updates to send
+   * @return the configuration
+   */
+  public TimeKeeperConfig withVersion(final TimeKeeperVersion updateVersion) {
+    return new TimeKeeperConfig(this, updateVersion, compactParticipants, aggregation);
+  }
+
+  /**
+   * Return a copy of this configuration whose updates ask, or do not ask, for compact participants.
+   *
+   * @param compact
+   *          whether updates ask for compact participants
+   * @return the configuration
+   */
+  public TimeKeeperConfig withCompactParticipants(final boolean compact) {
+    return new TimeKeeperConfig(this, version, compact, aggregation);
+  }
+
+  /**
+   * Return a copy of this configuration whose updates ask for the given aggregation.
+   *
+   * @param aggregationType
+   *          the aggregation, AGGREGATION_UNSET to leave unset
+   * @return the configuration
+   */
+  public TimeKeeperConfig withAggregation(final TimeKeeperAggregation aggregationType) {
+    return new TimeKeeperConfig(this, version, compactParticipants, aggregationType);
+  }
+
+  /**
+   * Read a configuration from properties, taking any setting which is not given from a default.
+   *
+   * @param props
+   *          the properties
+   * @param defaults
+   *          the configuration to take missing settings from
+   * @return the configuration
+   * @throws TimeKeeperException
+   *           if a setting is not a number or is out of range
+   */
+  public static TimeKeeperConfig fromProperties(final Properties props, final TimeKeeperConfig defaults)
+      throws TimeKeeperException {
+    final int period = intProperty(props, PERIOD, defaults.updatePeriod);
+    if (period <= 0) {
+      throw new TimeKeeperException(String.format("%s must be positive, was %d", PERIOD, period));
+    }
+    return new TimeKeeperConfig(period, intProperty(props, MAX_DEVIATION, defaults.maxDeviation),
+        intProperty(props, MAX_HISTORY, defaults.maxHistory),
+        intProperty(props, EXPIRY_SECONDS, defaults.expirySeconds),
+        intProperty(props, MAX_PARTICIPANTS, defaults.maxParticipants),
+        historyModeProperty(props, defaults.historyMode),
+        intProperty(props, CHECKPOINT_SECONDS, defaults.checkpointSeconds))
+            .withVersion(versionProperty(props, defaults.version))
+            .withCompactParticipants(booleanProperty(props, COMPACT_PARTICIPANTS, defaults.compactParticipants))
+            .withAggregation(aggregationProperty(props, defaults.aggregation));
+  }
+
+  private static TimeKeeperAggregation aggregationProperty(final Properties props,
+      final TimeKeeperAggregation defaultValue) throws TimeKeeperException {
+    final String value = props.getProperty(AGGREGATION);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      final TimeKeeperAggregation parsed = TimeKeeperAggregation.valueOf(value.trim());
+      if (parsed != TimeKeeperAggregation.UNRECOGNIZED) {
+        return parsed;
+      }
+    } catch (IllegalArgumentException e) {
+      // reported below
+    }
+    throw new TimeKeeperException(String.format("%s is not an aggregation: %s", AGGREGATION, value));
+  }
+
+  private static boolean booleanProperty(final Properties props, final String name, final boolean defaultValue)
+      throws TimeKeeperException {
+    final String value = props.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    switch (value.trim()) {
+    case "true":
+      return true;
+    case "false":
+      return false;
+    default:
+      throw new TimeKeeperException(String.format("%s must be true or false, was %s", name, value));
+    }
+  }
+
+  private static TimeKeeperVersion versionProperty(final Properties props, final TimeKeeperVersion defaultValue)
+      throws TimeKeeperException {
+    final String value = props.getProperty(VERSION);
+    if (value == null) {
+      return defaultValue;
+    }
+    switch (value.trim()) {
+    case "V_2_0":
+      return TimeKeeperVersion.V_2_0;
+    case "V_3_0":
+      return TimeKeeperVersion.V_3_0;
+    default:
+      throw new TimeKeeperException(String.format("%s must be V_2_0 or V_3_0, was %s", VERSION, value));
+    }
+  }
+
+  private static TimeKeeperHistoryMode historyModeProperty(final Properties props,
+      final TimeKeeperHistoryMode defaultValue) throws TimeKeeperException {
+    final String value = props.getProperty(HISTORY_MODE);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return TimeKeeperHistoryMode.valueOf(value.trim());
+    } catch (IllegalArgumentException e) {
+      throw new TimeKeeperException(String.format("%s is not a history mode: %s", HISTORY_MODE, value));
+    }
+  }
+
+  private static int intProperty(final Properties props, final String name, final int defaultValue)
+      throws TimeKeeperException {
+    final String value = props.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    final int parsed;
+    try {
+      parsed = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new TimeKeeperException(String.format("%s is not a number: %s", name, value));
+    }
+    if (parsed < 0) {
+      throw new TimeKeeperException(String.format("%s must not be negative, was %d", name, parsed));
+    }
+    return parsed;
+  }
+
+  /**
+   * @return the seconds between updates
+   */
+  public int getUpdatePeriod() {
+    return updatePeriod;
+  }
+
+  /**
+   * @return the maxDeviation to send on updates, 0 to leave unset
+   */
+  public int getMaxDeviation() {
+    return maxDeviation;
+  }
+
+  /**
+   * @return the maxHistory to send on updates, 0 to leave unset
+   */
+  public int getMaxHistory() {
+    return maxHistory;
+  }
+
+  /**
+   * @return the participant expiry in seconds to send on updates, 0 to leave unset
+   */
+  public int getExpirySeconds() {
+    return expirySeconds;
+  }
+
+  /**
+   * @return the maximum participants to send on updates, 0 to leave unset
+   */
+  public int getMaxParticipants() {
+    return maxParticipants;
+  }
+
+  /**
+   * @return the participant history mode to send on updates, HISTORY_UNSET to leave unset
+   */
+  public TimeKeeperHistoryMode getHistoryMode() {
+    return historyMode;
+  }
+
+  /**
+   * @return the seconds between global time checkpoints to send on updates, 0 to leave unset
+   */
+  public int getCheckpointSeconds() {
+    return checkpointSeconds;
+  }
+
+  /**
+   * @return the version of the updates to send
+   */
+  public TimeKeeperVersion getVersion() {
+    return version;
+  }
+
+  /**
+   * @return whether updates ask for the global record to keep its participants compact
+   */
+  public boolean isCompactParticipants() {
+    return compactParticipants;
+  }
+
+  /**
+   * @return the aggregation to send on updates, AGGREGATION_UNSET to leave unset
+   */
+  public TimeKeeperAggregation getAggregation() {
+    return aggregation;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s=%d %s=%d %s=%d %s=%d %s=%d %s=%s %s=%d %s=%s %s=%s %s=%s", PERIOD, updatePeriod,
+        MAX_DEVIATION, maxDeviation, MAX_HISTORY, maxHistory, EXPIRY_SECONDS, expirySeconds, MAX_PARTICIPANTS,
+        maxParticipants, HISTORY_MODE, historyMode, CHECKPOINT_SECONDS, checkpointSeconds, VERSION, version,
+        COMPACT_PARTICIPANTS, compactParticipants, AGGREGATION, aggregation);
+  }
+}
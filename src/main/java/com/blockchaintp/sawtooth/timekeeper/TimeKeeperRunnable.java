@@ -15,15 +15,16 @@ package com.blockchaintp.sawtooth.timekeeper;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 
 import com.blockchaintp.keymanager.KeyManager;
 import com.blockchaintp.sawtooth.SawtoothClientUtils;
 import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
-import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Timestamp;
@@ -49,18 +50,18 @@ public final class TimeKeeperRunnable implements Runnable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TimeKeeperRunnable.class);
 
-  /**
-   * The maximum number of rounds that may be skipped.
-   */
-  private static final int MAX_SKIPS = 32;
+  private static final int DEFAULT_UPDATE_PERIOD = 20;
+
+  private static final TimeKeeperConfig DEFAULT_CONFIG = new TimeKeeperConfig(DEFAULT_UPDATE_PERIOD, 0, 0);
 
   private final KeyManager keyManager;
-  private final String recordAddress;
+  private final List<String> domains;
 
   private final Stream stream;
 
-  private int backoffCounter;
-  private int skipCounter;
+  private final Supplier<TimeKeeperConfig> config;
+
+  private final SubmitRateControl rateControl;
 
   /**
    * Main constructor.
@@ -71,78 +72,187 @@ public final class TimeKeeperRunnable implements Runnable {
    *          the stream connecting to the validator.
    */
   public TimeKeeperRunnable(final KeyManager kmgr, final Stream argStream) {
+    this(kmgr, argStream, () -> DEFAULT_CONFIG);
+  }
+
+  /**
+   * Create a submitter whose updates carry the maxDeviation and maxHistory of the current
+   * configuration.
+   *
+   * @param kmgr
+   *          A key manager implementation which will provide a keys for the transactions,
+   * @param argStream
+   *          the stream connecting to the validator.
+   * @param configSupplier
+   *          the source of the current configuration, read on every run
+   */
+  public TimeKeeperRunnable(final KeyManager kmgr, final Stream argStream,
+      final Supplier<TimeKeeperConfig> configSupplier) {
+    this(kmgr, argStream, configSupplier, List.of(Namespace.DEFAULT_DOMAIN));
+  }
+
+  /**
+   * Create a submitter which updates each of the given time domains on every run. Each domain is
+   * sent as a batch of its own, all in one request. The validator rejects such a request as a whole
+   * if any batch is invalid, so the batches are then sent again one by one, and a domain being
+   * rejected does not hold back the others.
+   *
+   * @param kmgr
+   *          A key manager implementation which will provide a keys for the transactions,
+   * @param argStream
+   *          the stream connecting to the validator.
+   * @param configSupplier
+   *          the source of the current configuration, read on every run
+   * @param timeDomains
+   *          the names of the time domains to update, Namespace.DEFAULT_DOMAIN for the default
+   */
+  public TimeKeeperRunnable(final KeyManager kmgr, final Stream argStream,
+      final Supplier<TimeKeeperConfig> configSupplier, final List<String> timeDomains) {
+    this(kmgr, argStream, configSupplier, timeDomains, new BackoffRateControl());
+  }
+
+  /**
+   * Create a submitter which updates each of the given time domains in the rounds allowed by a rate
+   * control.
+   *
+   * @param kmgr
+   *          A key manager implementation which will provide a keys for the transactions,
+   * @param argStream
+   *          the stream connecting to the validator.
+   * @param configSupplier
+   *          the source of the current configuration, read on every run
+   * @param timeDomains
+   *          the names of the time domains to update, Namespace.DEFAULT_DOMAIN for the default
+   * @param control
+   *          decides which rounds submit from the outcomes of earlier submissions
+   */
+  public TimeKeeperRunnable(final KeyManager kmgr, final Stream argStream,
+      final Supplier<TimeKeeperConfig> configSupplier, final List<String> timeDomains,
+      final SubmitRateControl control) {
     this.keyManager = kmgr;
     this.stream = argStream;
-    this.recordAddress = Namespace.makeAddress(Namespace.getNameSpace(), this.keyManager.getPublicKeyInHex());
+    this.config = configSupplier;
+    this.domains = List.copyOf(timeDomains);
+    this.rateControl = control;
   }
 
   @Override
   public void run() {
+    // rounds the rate control skips neither sign nor send anything
+    if (!rateControl.shouldSubmit()) {
+      return;
+    }
     final Clock clock = Clock.systemUTC();
     final Instant instant = clock.instant();
     final Timestamp ts = Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano())
         .build();
-    final TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0).setTimeUpdate(ts)
-        .build();
+    final TimeKeeperConfig current = this.config.get();
+    final TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setVersion(current.getVersion()).setTimeUpdate(ts)
+        .setMaxDeviation(current.getMaxDeviation()).setMaxHistory(current.getMaxHistory())
+        .setExpirySeconds(current.getExpirySeconds()).setMaxParticipants(current.getMaxParticipants())
+        .setHistoryMode(current.getHistoryMode()).setCheckpointSeconds(current.getCheckpointSeconds())
+        .setCompactParticipants(current.isCompactParticipants()).setAggregation(current.getAggregation()).build();
+
+    final List<Batch> batches = new ArrayList<>(this.domains.size());
+    for (final String domain : this.domains) {
+      batches.add(makeBatch(domain, update.toBuilder().setDomain(domain).build()));
+    }
+
+    LOGGER.debug("Sending a participant time update {} time={}", this.keyManager.getPublicKeyInHex(),
+        new Date(Timestamps.toMillis(ts)));
+    final long begin = System.nanoTime();
+    SubmitOutcome outcome;
+    try {
+      sendBatches(batches);
+      outcome = SubmitOutcome.OK;
+    } catch (SubmitException exc) {
+      LOGGER.debug("Submit failed: {}", exc.getMessage());
+      outcome = exc.outcome;
+    }
+    rateControl.onOutcome(outcome, System.nanoTime() - begin);
+  }
 
-    final List<String> inputAddresses = Arrays.asList(this.recordAddress, Namespace.TIMEKEEPER_GLOBAL_RECORD);
-    final List<String> outputAddresses = Arrays.asList(this.recordAddress, Namespace.TIMEKEEPER_GLOBAL_RECORD);
+  private Batch makeBatch(final String domain, final TimeKeeperUpdate update) {
+    final String recordAddress = Namespace.makeParticipantAddress(domain, this.keyManager.getPublicKeyInHex());
+    final String globalAddress = Namespace.makeGlobalRecordAddress(domain);
+    final List<String> inputAddresses = Arrays.asList(recordAddress, globalAddress);
+    final List<String> outputAddresses = Arrays.asList(recordAddress, globalAddress,
+        Namespace.makeCheckpointPrefix(domain));
     final Transaction updateTransaction = SawtoothClientUtils.makeSawtoothTransaction(this.keyManager,
         Namespace.TIMEKEEPER_FAMILY_NAME, Namespace.TIMEKEEPER_FAMILY_VERSION_1_0, inputAddresses, outputAddresses,
         Arrays.asList(), update.toByteString());
+    return SawtoothClientUtils.makeSawtoothBatch(this.keyManager, Arrays.asList(updateTransaction));
+  }
 
-    final Batch batch = SawtoothClientUtils.makeSawtoothBatch(this.keyManager, Arrays.asList(updateTransaction));
-
-    try {
-      LOGGER.debug("Sending a participant time update {} time={}", this.keyManager.getPublicKeyInHex(),
-          new Date(Timestamps.toMillis(ts)));
-      if (skipCounter < backoffCounter) {
-        skipCounter++;
-        return;
-      }
-      skipCounter = 0;
-      sendBatch(batch);
-      if (backoffCounter > 0) {
-        backoffCounter -= 1;
-        backoffCounter = Math.max(backoffCounter, 0);
-        LOGGER.warn("Successfully updated time marker after backoff, reducing backoff to {} intervals", backoffCounter);
+  private void sendBatches(final List<Batch> batches) throws SubmitException {
+    ClientBatchSubmitResponse.Status status = submit(batches);
+    if (status == ClientBatchSubmitResponse.Status.INVALID_BATCH && batches.size() > 1) {
+      // the round succeeds if any domain is accepted on its own
+      for (int i = 0; i < batches.size(); i++) {
+        final ClientBatchSubmitResponse.Status own = submit(List.of(batches.get(i)));
+        if (own == ClientBatchSubmitResponse.Status.OK) {
+          status = own;
+        } else {
+          LOGGER.warn("Batch for domain \"{}\" resulted in error: {}", this.domains.get(i), own);
+        }
       }
-    } catch (TimeKeeperException exc) {
-      backoffCounter = Math.max(1, 2 * backoffCounter);
-      backoffCounter = Math.min(MAX_SKIPS, backoffCounter);
-      LOGGER.warn("Error updating TimeKeeper records, increasing backoff to {} intervals", backoffCounter);
+    }
+    if (status != ClientBatchSubmitResponse.Status.OK) {
+      LOGGER.warn("Batch submit response resulted in error: {}", status);
+      throw new SubmitException(outcomeOf(status),
+          String.format("Batch submit response resulted in error: %s", status), null);
     }
   }
 
-  private void sendBatch(final Batch batch) throws TimeKeeperException {
-    final ClientBatchSubmitRequest cbsReq = ClientBatchSubmitRequest.newBuilder().addBatches(batch).build();
+  private ClientBatchSubmitResponse.Status submit(final List<Batch> batches) throws SubmitException {
+    final ClientBatchSubmitRequest cbsReq = ClientBatchSubmitRequest.newBuilder().addAllBatches(batches).build();
     final Future streamToValidator = this.stream.send(Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST,
         cbsReq.toByteString());
     try {
       final ByteString result = streamToValidator.getResult();
       final ClientBatchSubmitResponse submitResponse = ClientBatchSubmitResponse.parseFrom(result);
-      LOGGER.debug("Batch submitted {}", batch.getHeaderSignature());
-      if (submitResponse.getStatus() != ClientBatchSubmitResponse.Status.OK) {
-        LOGGER.warn("Batch submit response resulted in error: {}", submitResponse.getStatus());
-        throw new TimeKeeperException(
-            String.format("Batch submit response resulted in error: %s", submitResponse.getStatus()));
-      }
+      LOGGER.debug("Batches submitted {}", batches.size());
+      return submitResponse.getStatus();
     } catch (InterruptedException e) {
-      final TimeKeeperException tke = new TimeKeeperException(
-          String.format("Sawtooth validator interrupts exception. Details: %s", e.getMessage()));
-      tke.initCause(e);
       Thread.currentThread().interrupt();
-      throw tke;
+      throw new SubmitException(SubmitOutcome.CONNECTION_LOST,
+          String.format("Sawtooth validator interrupts exception. Details: %s", e.getMessage()), e);
     } catch (ValidatorConnectionError e) {
-      final TimeKeeperException tke = new TimeKeeperException(
-          String.format("Sawtooth validator connection error. Details: %s", e.getMessage()));
-      tke.initCause(e);
-      throw tke;
+      throw new SubmitException(SubmitOutcome.CONNECTION_LOST,
+          String.format("Sawtooth validator connection error. Details: %s", e.getMessage()), e);
     } catch (InvalidProtocolBufferException e) {
-      final TimeKeeperException tke = new TimeKeeperException(
-          String.format("Invalid protocol buffer exception. Details: %s", e.getMessage()));
-      tke.initCause(e);
-      throw tke;
+      throw new SubmitException(SubmitOutcome.INTERNAL_ERROR,
+          String.format("Invalid protocol buffer exception. Details: %s", e.getMessage()), e);
+    }
+  }
+
+  private static SubmitOutcome outcomeOf(final ClientBatchSubmitResponse.Status status) {
+    switch (status) {
+    case QUEUE_FULL:
+      return SubmitOutcome.QUEUE_FULL;
+    case INVALID_BATCH:
+      return SubmitOutcome.INVALID_BATCH;
+    case INTERNAL_ERROR:
+    default:
+      return SubmitOutcome.INTERNAL_ERROR;
+    }
+  }
+
+  /**
+   * A failed submission and the outcome it is reported to the rate control as.
+   */
+  private static final class SubmitException extends TimeKeeperException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SubmitOutcome outcome;
+
+    SubmitException(final SubmitOutcome submitOutcome, final String message, final Throwable cause) {
+      super(message);
+      this.outcome = submitOutcome;
+      if (cause != null) {
+        initCause(cause);
+      }
     }
   }
 }
@@ -13,14 +13,21 @@
  */
 package com.blockchaintp.sawtooth.timekeeper;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import com.blockchaintp.keymanager.DirectoryKeyManager;
 import com.blockchaintp.keymanager.InMemoryKeyManager;
 import com.blockchaintp.keymanager.KeyManager;
 import com.blockchaintp.sawtooth.messaging.ZmqStream;
+import com.blockchaintp.sawtooth.timekeeper.bench.CapturingTransactionHandler;
 import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
 import com.blockchaintp.utils.LogUtils;
 
@@ -35,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import sawtooth.sdk.messaging.Stream;
 import sawtooth.sdk.processor.TransactionHandler;
 import sawtooth.sdk.processor.TransactionProcessor;
+import sawtooth.sdk.processor.exceptions.InternalError;
 
 /**
  * A basic Main class for TimeKeeperTransactionProcessor.
@@ -42,6 +50,8 @@ import sawtooth.sdk.processor.TransactionProcessor;
 public final class TimeKeeperTransactionProcessorMain {
 
   private static final int DEFAULT_TK_UPDATE_SECONDS = 20;
+  private static final int DEFAULT_WARMUP_UPDATES = 20_000;
+  private static final int CONFIG_CHECK_SECONDS = 5;
   private static final String DEFAULT_CONNECT_STRING = "tcp://localhost:4004";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TimeKeeperTransactionProcessorMain.class);
@@ -52,12 +62,41 @@ public final class TimeKeeperTransactionProcessorMain {
   private static final String OPT_TP = "t";
   private static final String OPT_BOTH = "b";
   private static final String OPT_VERBOSE = "v";
+  private static final String OPT_CAPTURE = "capture";
+  private static final String OPT_WARMUP = "warmup";
+  private static final String OPT_WARMUP_ONLY = "warmup-only";
+  private static final String OPT_CONFIG = "config";
+  private static final String OPT_DOMAIN = "domain";
+  private static final String OPT_AGGREGATE = "a";
+  private static final String OPT_AGGREGATE_WINDOW = "aggregate-window";
+  private static final String OPT_JITTER = "jitter";
+  private static final String OPT_WORKERS = "workers";
+  private static final String OPT_LEASE = "lease";
+  private static final String OPT_KEY = "key";
+  private static final String OPT_RATE_CONTROL = "rate-control";
+
+  /**
+   * The name given on the command line for the default time domain.
+   */
+  private static final String DEFAULT_DOMAIN_NAME = "default";
 
   private int vCount = 0;
   private int updatePeriod = DEFAULT_TK_UPDATE_SECONDS;
   private String connectStr = DEFAULT_CONNECT_STRING;
   private boolean startTp = true;
   private boolean startSubmitter = true;
+  private Path capturePath;
+  private int warmupUpdates = 0;
+  private boolean warmupOnly = false;
+  private Path configPath;
+  private List<String> domains = List.of(Namespace.DEFAULT_DOMAIN);
+  private String aggregateEndpoint;
+  private long aggregateWindow = SubmitAggregator.DEFAULT_WINDOW_MILLIS;
+  private long jitterMillis = SubmitterSchedule.DEFAULT_JITTER_MILLIS;
+  private int workers = 1;
+  private Path leasePath;
+  private Path keyPath;
+  private boolean aimd = false;
 
   /**
    * A basic main method for this transaction processor.
@@ -80,30 +119,82 @@ public final class TimeKeeperTransactionProcessorMain {
   }
 
   @SuppressWarnings("java:S2095")
-  private void start() {
+  private void start() throws InvalidCommandException {
     LogUtils.setRootLogLevel(vCount);
 
+    if (warmupUpdates > 0) {
+      warmup();
+      if (warmupOnly) {
+        return;
+      }
+    }
+
     ScheduledExecutorService clockExecutor = Executors.newSingleThreadScheduledExecutor();
 
     Stream stream = new ZmqStream(connectStr);
 
+    if (aggregateEndpoint != null) {
+      LOGGER.info("Starting aggregator on {} for {}", aggregateEndpoint, connectStr);
+      final Thread thread = new Thread(
+          new SubmitAggregator(aggregateEndpoint, stream, aggregateWindow, SubmitAggregator.DEFAULT_MAX_BATCHES));
+      thread.start();
+      try {
+        thread.join();
+      } catch (InterruptedException exc) {
+        LOGGER.warn("Aggregator was interrupted");
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+
     if (startSubmitter) {
       LOGGER.info("Starting submitter to {}", connectStr);
-      KeyManager keyManager = InMemoryKeyManager.create();
-      clockExecutor.scheduleWithFixedDelay(new TimeKeeperRunnable(keyManager, stream), updatePeriod, updatePeriod,
-          TimeUnit.SECONDS);
+      KeyManager keyManager = createKeyManager(keyPath);
+      TimeKeeperConfig defaults = new TimeKeeperConfig(updatePeriod, 0, 0);
+      Supplier<TimeKeeperConfig> config = () -> defaults;
+      if (configPath != null) {
+        ConfigWatcher watcher = new ConfigWatcher(configPath, defaults);
+        clockExecutor.scheduleWithFixedDelay(watcher, CONFIG_CHECK_SECONDS, CONFIG_CHECK_SECONDS, TimeUnit.SECONDS);
+        config = watcher;
+      }
+      SubmitRateControl rateControl = new BackoffRateControl();
+      if (aimd) {
+        rateControl = new AimdRateControl();
+      }
+      Runnable submitter = new TimeKeeperRunnable(keyManager, stream, config, domains, rateControl);
+      if (leasePath != null) {
+        LOGGER.info("Submitting only while holding the lease {}", leasePath);
+        submitter = new SubmitterLease(leasePath).guard(submitter);
+      }
+      new SubmitterSchedule(clockExecutor, submitter, config, keyManager.getPublicKeyInHex(), jitterMillis).start();
     }
 
     if (startTp) {
-      LOGGER.info("Starting transaction processor against {}", connectStr);
-      TransactionProcessor transactionProcessor = new TransactionProcessor(connectStr);
+      LOGGER.info("Starting {} transaction processor worker(s) against {}", workers, connectStr);
       TransactionHandler handler = new TimeKeeperTransactionHandler();
-      transactionProcessor.addHandler(handler);
+      if (capturePath != null) {
+        LOGGER.info("Capturing transactions to {}", capturePath);
+        try {
+          handler = new CapturingTransactionHandler(handler, capturePath);
+        } catch (IOException e) {
+          throw new InvalidCommandException(String.format("Cannot open capture file: %s", e.getMessage()));
+        }
+      }
 
-      Thread thread = new Thread(transactionProcessor);
-      thread.start();
+      // each worker registers its own connection, so the validator can dispatch to them
+      // concurrently. The handler keeps its scratch state per thread and is shared between them.
+      final List<Thread> threads = new ArrayList<>(workers);
+      for (int i = 0; i < workers; i++) {
+        TransactionProcessor transactionProcessor = new TransactionProcessor(connectStr);
+        transactionProcessor.addHandler(handler);
+        Thread thread = new Thread(transactionProcessor, "timekeeper-tp-" + i);
+        thread.start();
+        threads.add(thread);
+      }
       try {
-        thread.join();
+        for (final Thread thread : threads) {
+          thread.join();
+        }
         clockExecutor.shutdownNow();
       } catch (InterruptedException exc) {
         LOGGER.warn("TransactionProcessor was interrupted");
@@ -112,8 +203,50 @@ public final class TimeKeeperTransactionProcessorMain {
     }
   }
 
-  private TimeKeeperTransactionProcessorMain() {
-    // private constructor for utility class
+  /**
+   * Return the key manager of the submitter, one generated for this process alone or, given a key
+   * directory, the key kept there, so that every submitter given the same directory submits as the
+   * same participant.
+   *
+   * @param keyDir
+   *          the key directory, or null for a key of this process alone
+   * @return the key manager
+   * @throws InvalidCommandException
+   *           if the key directory cannot be read
+   */
+  static KeyManager createKeyManager(final Path keyDir) throws InvalidCommandException {
+    if (keyDir == null) {
+      return InMemoryKeyManager.create();
+    }
+    try {
+      return DirectoryKeyManager.create(keyDir.toString());
+    } catch (IOException e) {
+      throw new InvalidCommandException(String.format("Cannot load the key from %s: %s", keyDir, e.getMessage()));
+    }
+  }
+
+  private void warmup() throws InvalidCommandException {
+    LOGGER.info("Warming up with {} synthetic updates", warmupUpdates);
+    final long begin = System.nanoTime();
+    try {
+      HandlerWarmup.run(new TimeKeeperTransactionHandler(), warmupUpdates);
+    } catch (InternalError e) {
+      throw new InvalidCommandException(String.format("Warm-up failed: %s", e.getMessage()));
+    }
+    LOGGER.info("Warm-up took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+  }
+
+  TimeKeeperTransactionProcessorMain() {
+    // constructed by main, or by tests parsing arguments
+  }
+
+  /**
+   * Return the verbosity given on the command line.
+   *
+   * @return the number of times -v was given
+   */
+  int getVerbosity() {
+    return vCount;
   }
 
   private Options createOptions() {
@@ -132,23 +265,88 @@ public final class TimeKeeperTransactionProcessorMain {
     Option both = Option.builder("b").longOpt("both").desc("Set to run both the tp and the submitter [default]")
         .build();
 
+    Option capture = Option.builder().argName("file").longOpt(OPT_CAPTURE).hasArg()
+        .desc("Append every transaction applied and the state it read to this file for replay").build();
+
+    Option warmup = Option.builder().argName("updates").longOpt(OPT_WARMUP).hasArg()
+        .desc("Apply this many synthetic updates before connecting to the validator").build();
+
+    Option warmupOnlyOpt = Option.builder().longOpt(OPT_WARMUP_ONLY)
+        .desc("Only run the warm-up and exit, e.g. to record a class list").build();
+
+    Option config = Option.builder().argName("file").longOpt(OPT_CONFIG).hasArg()
+        .desc("Properties file of submitter settings (period, maxDeviation, maxHistory, expirySeconds,"
+            + " maxParticipants, historyMode, checkpointSeconds, version, compactParticipants, aggregation),"
+            + " reloaded on change")
+        .build();
+
+    Option domain = Option.builder().argName("names").longOpt(OPT_DOMAIN).hasArg()
+        .desc("Comma separated time domains to submit updates for, \"" + DEFAULT_DOMAIN_NAME
+            + "\" being the default domain [default]")
+        .build();
+
+    Option aggregate = Option.builder(OPT_AGGREGATE).argName("endpoint").longOpt("aggregate").hasArg()
+        .desc("Run only an aggregator which accepts the submissions of local submitters on this endpoint,"
+            + " e.g. ipc:///run/timekeeper.sock, and forwards them together to the validator")
+        .build();
+
+    Option aggregateWindowOpt = Option.builder().argName("millis").longOpt(OPT_AGGREGATE_WINDOW).hasArg()
+        .desc("Milliseconds the aggregator collects submissions for before forwarding them").build();
+
+    Option jitter = Option.builder().argName("millis").longOpt(OPT_JITTER).hasArg()
+        .desc("Most milliseconds each submission is delayed by at random after the participant's phase"
+            + " of the period [default " + SubmitterSchedule.DEFAULT_JITTER_MILLIS + "]")
+        .build();
+
+    Option workersOpt = Option.builder().argName("count").longOpt(OPT_WORKERS).hasArg()
+        .desc("Number of transaction processor connections to register, each applying on its own thread"
+            + " [default 1]")
+        .build();
+
+    Option lease = Option.builder().argName("file").longOpt(OPT_LEASE).hasArg()
+        .desc("Lock file shared with a standby submitter on this host; only the submitter holding the lock"
+            + " submits, and the other takes over within a period of it exiting")
+        .build();
+
+    Option key = Option.builder().argName("dir").longOpt(OPT_KEY).hasArg()
+        .desc("Directory holding the submitter's key, created with a new key if empty; required with --"
+            + OPT_LEASE + " so the active and standby submitters share it and submit as one participant")
+        .build();
+
+    Option rateControlOpt = Option.builder().argName("policy").longOpt(OPT_RATE_CONTROL).hasArg()
+        .desc("How the submitter backs off when submissions fail: backoff, doubling the rounds skipped on"
+            + " any failure [default], or aimd, reacting to each kind of failure and to slow responses")
+        .build();
+
     OptionGroup mode = new OptionGroup();
     mode.setRequired(false);
     mode.addOption(submitter);
     mode.addOption(both);
     mode.addOption(tp);
+    mode.addOption(aggregate);
 
     Options options = new Options();
     options.addOption(connect);
     options.addOption(period);
     options.addOption(verbose);
+    options.addOption(capture);
+    options.addOption(config);
+    options.addOption(domain);
+    options.addOption(aggregateWindowOpt);
+    options.addOption(jitter);
+    options.addOption(workersOpt);
+    options.addOption(lease);
+    options.addOption(key);
+    options.addOption(rateControlOpt);
+    options.addOption(warmup);
+    options.addOption(warmupOnlyOpt);
     options.addOptionGroup(mode);
 
     return options;
   }
 
   @SuppressWarnings("java:S4165")
-  private void parseArgs(final String[] args) throws InvalidCommandException {
+  void parseArgs(final String[] args) throws InvalidCommandException {
     Options options = createOptions();
 
     CommandLineParser parser = new org.apache.commons.cli.DefaultParser();
@@ -172,9 +370,107 @@ public final class TimeKeeperTransactionProcessorMain {
       }
     }
 
+    if (cmd.hasOption(OPT_CAPTURE)) {
+      capturePath = Paths.get(cmd.getOptionValue(OPT_CAPTURE));
+    }
+
+    if (cmd.hasOption(OPT_CONFIG)) {
+      configPath = Paths.get(cmd.getOptionValue(OPT_CONFIG));
+    }
+
+    if (cmd.hasOption(OPT_DOMAIN)) {
+      domains = new ArrayList<>();
+      for (final String name : cmd.getOptionValue(OPT_DOMAIN).split(",")) {
+        final String trimmed = name.trim();
+        if (trimmed.isEmpty()) {
+          throw new InvalidCommandException("Empty domain name");
+        }
+        String domainName = trimmed;
+        if (trimmed.equals(DEFAULT_DOMAIN_NAME)) {
+          domainName = Namespace.DEFAULT_DOMAIN;
+        }
+        if (!domains.contains(domainName)) {
+          domains.add(domainName);
+        }
+      }
+    }
+
+    if (cmd.hasOption(OPT_AGGREGATE)) {
+      aggregateEndpoint = cmd.getOptionValue(OPT_AGGREGATE);
+    }
+
+    if (cmd.hasOption(OPT_AGGREGATE_WINDOW)) {
+      final String windowStr = cmd.getOptionValue(OPT_AGGREGATE_WINDOW);
+      try {
+        aggregateWindow = Long.parseLong(windowStr);
+      } catch (NumberFormatException nfe) {
+        throw new InvalidCommandException(
+            String.format("Invalid format specified for aggregate window: %s", windowStr));
+      }
+    }
+
+    if (cmd.hasOption(OPT_JITTER)) {
+      final String jitterStr = cmd.getOptionValue(OPT_JITTER);
+      try {
+        jitterMillis = Long.parseLong(jitterStr);
+      } catch (NumberFormatException nfe) {
+        throw new InvalidCommandException(String.format("Invalid format specified for jitter: %s", jitterStr));
+      }
+    }
+
+    if (cmd.hasOption(OPT_RATE_CONTROL)) {
+      final String rateControlStr = cmd.getOptionValue(OPT_RATE_CONTROL);
+      if ("aimd".equals(rateControlStr)) {
+        aimd = true;
+      } else if (!"backoff".equals(rateControlStr)) {
+        throw new InvalidCommandException(String.format("Unknown rate control: %s", rateControlStr));
+      }
+    }
+
+    if (cmd.hasOption(OPT_KEY)) {
+      keyPath = Paths.get(cmd.getOptionValue(OPT_KEY));
+    }
+
+    if (cmd.hasOption(OPT_LEASE)) {
+      leasePath = Paths.get(cmd.getOptionValue(OPT_LEASE));
+      if (keyPath == null) {
+        throw new InvalidCommandException(String.format(
+            "--%s needs --%s, so that the standby submitter takes over as the same participant", OPT_LEASE, OPT_KEY));
+      }
+    }
+
+    if (cmd.hasOption(OPT_WORKERS)) {
+      final String workersStr = cmd.getOptionValue(OPT_WORKERS);
+      try {
+        workers = Integer.parseInt(workersStr);
+      } catch (NumberFormatException nfe) {
+        throw new InvalidCommandException(String.format("Invalid format specified for workers: %s", workersStr));
+      }
+      if (workers < 1) {
+        throw new InvalidCommandException(String.format("Workers must be at least 1, was %d", workers));
+      }
+    }
+
+    if (cmd.hasOption(OPT_WARMUP)) {
+      final String warmupStr = cmd.getOptionValue(OPT_WARMUP);
+      try {
+        warmupUpdates = Integer.parseInt(warmupStr);
+      } catch (NumberFormatException nfe) {
+        throw new InvalidCommandException(String.format("Invalid format specified for warmup: %s", warmupStr));
+      }
+    }
+
+    if (cmd.hasOption(OPT_WARMUP_ONLY)) {
+      warmupOnly = true;
+      if (warmupUpdates <= 0) {
+        warmupUpdates = DEFAULT_WARMUP_UPDATES;
+      }
+    }
+
     if (cmd.hasOption(OPT_VERBOSE)) {
       for (Option o : cmd.getOptions()) {
-        if (o.getOpt().equals(OPT_VERBOSE)) {
+        // long only options have no short name
+        if (OPT_VERBOSE.equals(o.getOpt())) {
           vCount++;
         }
       }
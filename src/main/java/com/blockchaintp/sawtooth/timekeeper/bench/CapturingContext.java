@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCapture;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCaptureEntry;
+import com.google.protobuf.ByteString;
+
+import sawtooth.sdk.processor.Context;
+import sawtooth.sdk.processor.exceptions.InternalError;
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.Event;
+
+/**
+ * A Context which passes every call through to another Context and records the state read, the
+ * state written and the events added in a TimeKeeperCapture.
+ */
+public final class CapturingContext implements Context {
+
+  private final Context delegate;
+  private final TimeKeeperCapture.Builder capture;
+
+  /**
+   * Record the calls made to the given context.
+   *
+   * @param context
+   *          the context to pass the calls to
+   * @param captureBuilder
+   *          the capture to record the calls in
+   */
+  public CapturingContext(final Context context, final TimeKeeperCapture.Builder captureBuilder) {
+    this.delegate = context;
+    this.capture = captureBuilder;
+  }
+
+  @Override
+  public Map<String, ByteString> getState(final Collection<String> addresses)
+      throws InternalError, InvalidTransactionException {
+    final Map<String, ByteString> results = delegate.getState(addresses);
+    for (final Map.Entry<String, ByteString> e : results.entrySet()) {
+      capture.addReads(entry(e.getKey(), e.getValue()));
+    }
+    return results;
+  }
+
+  @Override
+  public Collection<String> setState(final Collection<Map.Entry<String, ByteString>> addressValuePairs)
+      throws InternalError, InvalidTransactionException {
+    for (final Map.Entry<String, ByteString> e : addressValuePairs) {
+      capture.addWrites(entry(e.getKey(), e.getValue()));
+    }
+    return delegate.setState(addressValuePairs);
+  }
+
+  @Override
+  public void addReceiptData(final ByteString data) throws InternalError {
+    delegate.addReceiptData(data);
+  }
+
+  @Override
+  public void addEvent(final String eventType, final Collection<Map.Entry<String, String>> attributes,
+      final ByteString extraData) throws InternalError {
+    final Event.Builder builder = Event.newBuilder().setEventType(eventType).setData(extraData);
+    for (final Map.Entry<String, String> a : attributes) {
+      builder.addAttributes(Event.Attribute.newBuilder().setKey(a.getKey()).setValue(a.getValue()));
+    }
+    capture.addEvents(builder.build().toByteString());
+    delegate.addEvent(eventType, attributes, extraData);
+  }
+
+  @Override
+  public Collection<String> deleteState(final Collection<String> addresses)
+      throws InternalError, InvalidTransactionException {
+    capture.addAllDeletes(addresses);
+    return delegate.deleteState(addresses);
+  }
+
+  private static TimeKeeperCaptureEntry entry(final String address, final ByteString data) {
+    return TimeKeeperCaptureEntry.newBuilder().setAddress(address).setData(data).build();
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCapture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sawtooth.sdk.processor.Context;
+import sawtooth.sdk.processor.TransactionHandler;
+import sawtooth.sdk.processor.exceptions.InternalError;
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+
+/**
+ * A TransactionHandler which applies each transaction with another handler and appends the
+ * request, the state it read and the resulting writes and events to a capture file, for replay with
+ * the ReplayBenchmark.
+ *
+ * <p>
+ * Each transaction is written as a length delimited TimeKeeperCapture. Transactions which fail with
+ * an InternalError are not written, as the validator will send them again.
+ * </p>
+ */
+public final class CapturingTransactionHandler implements TransactionHandler, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CapturingTransactionHandler.class);
+
+  private final TransactionHandler delegate;
+  private final OutputStream out;
+
+  /**
+   * Capture the transactions applied by a handler to the end of a file.
+   *
+   * @param handler
+   *          the handler to apply the transactions
+   * @param file
+   *          the capture file, created if it does not exist
+   * @throws IOException
+   *           if the file cannot be opened
+   */
+  public CapturingTransactionHandler(final TransactionHandler handler, final Path file) throws IOException {
+    this(handler, new BufferedOutputStream(
+        Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+  }
+
+  /**
+   * Capture the transactions applied by a handler to a stream.
+   *
+   * @param handler
+   *          the handler to apply the transactions
+   * @param stream
+   *          the stream to write to
+   */
+  public CapturingTransactionHandler(final TransactionHandler handler, final OutputStream stream) {
+    this.delegate = handler;
+    this.out = stream;
+  }
+
+  @Override
+  public String transactionFamilyName() {
+    return delegate.transactionFamilyName();
+  }
+
+  @Override
+  public String getVersion() {
+    return delegate.getVersion();
+  }
+
+  @Override
+  public Collection<String> getNameSpaces() {
+    return delegate.getNameSpaces();
+  }
+
+  @Override
+  public void apply(final TpProcessRequest transactionRequest, final Context state)
+      throws InvalidTransactionException, InternalError {
+    final TimeKeeperCapture.Builder capture = TimeKeeperCapture.newBuilder()
+        .setRequest(transactionRequest.toByteString());
+    try {
+      delegate.apply(transactionRequest, new CapturingContext(state, capture));
+    } catch (InvalidTransactionException e) {
+      capture.setInvalid(true).setMessage(String.valueOf(e.getMessage()));
+      write(capture.build());
+      throw e;
+    }
+    write(capture.build());
+  }
+
+  private synchronized void write(final TimeKeeperCapture capture) {
+    try {
+      capture.writeDelimitedTo(out);
+      out.flush();
+    } catch (IOException e) {
+      // capturing is diagnostic, a failure to write must not fail the transaction
+      LOGGER.warn("Failed to write transaction capture: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
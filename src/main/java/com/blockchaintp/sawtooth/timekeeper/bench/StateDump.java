@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.blockchaintp.sawtooth.timekeeper.InvalidCommandException;
+import com.blockchaintp.sawtooth.timekeeper.Namespace;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Streams an export of state and summarizes the timekeeper records in it, for diagnosing the
+ * growth of the records on a live chain.
+ *
+ * <p>
+ * The export has one entry per line, the address first and the base64 encoded data last, separated
+ * by commas or whitespace, so that any columns between them, and a header line, are ignored.
+ * Entries outside the prefix, by default the timekeeper namespace, are skipped. Entries are decoded
+ * on a pool of threads fed through a bounded queue and only their totals are kept, so memory does
+ * not grow with the size of the export.
+ * </p>
+ */
+public final class StateDump {
+
+  private static final int BUCKETS = Long.SIZE + 1;
+  private static final int QUEUE_PER_THREAD = 64;
+  private static final long SECONDS_PER_DAY = TimeUnit.DAYS.toSeconds(1);
+
+  private static final String OPT_INPUT = "i";
+  private static final String OPT_THREADS = "threads";
+  private static final String OPT_PREFIX = "prefix";
+
+  private final String prefix;
+  private final int threads;
+
+  private final LongAdder lines = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder undecodable = new LongAdder();
+  private final Stats global = new Stats();
+  private final Stats participants = new Stats();
+  private final Stats checkpoints = new Stats();
+  private final LongAdder globalParticipants = new LongAdder();
+  private final LongAccumulator maxGlobalParticipants = new LongAccumulator(Math::max, 0);
+  private final AtomicLongArray historyLengths = new AtomicLongArray(BUCKETS);
+  private final LongAccumulator maxHistory = new LongAccumulator(Math::max, 0);
+  private final Map<Long, LongAdder> lastUpdateDays = new ConcurrentHashMap<>();
+
+  /**
+   * Create a dump of the entries under a prefix.
+   *
+   * @param addressPrefix
+   *          the prefix of the addresses to decode
+   * @param threadCount
+   *          the number of threads to decode on
+   */
+  public StateDump(final String addressPrefix, final int threadCount) {
+    this.prefix = addressPrefix;
+    this.threads = threadCount;
+  }
+
+  /**
+   * Run the dump.
+   *
+   * @param args
+   *          the command line arguments
+   */
+  @SuppressWarnings("java:S106")
+  public static void main(final String[] args) {
+    final Options options = new Options();
+    options.addOption(Option.builder(OPT_INPUT).longOpt("input").hasArg().argName("file")
+        .desc("State export to read [default stdin]").build());
+    options.addOption(Option.builder().longOpt(OPT_THREADS).hasArg()
+        .desc("Threads to decode on [default the number of processors]").build());
+    options.addOption(Option.builder().longOpt(OPT_PREFIX).hasArg()
+        .desc("Only decode addresses with this prefix [default the timekeeper namespace]").build());
+    try {
+      final CommandLineParser parser = new DefaultParser();
+      final CommandLine cmd = parser.parse(options, args);
+      int threadCount = Runtime.getRuntime().availableProcessors();
+      if (cmd.hasOption(OPT_THREADS)) {
+        threadCount = Integer.parseInt(cmd.getOptionValue(OPT_THREADS));
+      }
+      if (threadCount <= 0) {
+        throw new InvalidCommandException("threads must be positive");
+      }
+      final StateDump dump = new StateDump(cmd.getOptionValue(OPT_PREFIX, Namespace.getNameSpace()), threadCount);
+      final Reader in;
+      if (cmd.hasOption(OPT_INPUT)) {
+        in = Files.newBufferedReader(Paths.get(cmd.getOptionValue(OPT_INPUT)), StandardCharsets.UTF_8);
+      } else {
+        in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+      }
+      try (BufferedReader reader = new BufferedReader(in)) {
+        dump.scan(reader);
+      }
+      System.out.println(dump.report());
+    } catch (ParseException | IllegalArgumentException | InvalidCommandException e) {
+      System.err.println(String.format("Invalid command line arguments: %s", e.getMessage()));
+      System.exit(-1);
+    } catch (IOException e) {
+      System.err.println(String.format("Cannot read the export: %s", e.getMessage()));
+      System.exit(-1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Read every entry of an export, returning once all of them are decoded.
+   *
+   * @param reader
+   *          the export
+   * @throws IOException
+   *           if the export cannot be read
+   * @throws InterruptedException
+   *           if interrupted while waiting for the decoding to finish
+   */
+  public void scan(final BufferedReader reader) throws IOException, InterruptedException {
+    // a full queue makes the reading thread decode the entry itself, which bounds the entries held
+    final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      String line = reader.readLine();
+      while (line != null) {
+        lines.increment();
+        final String entry = line;
+        pool.execute(() -> decode(entry));
+        line = reader.readLine();
+      }
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void decode(final String line) {
+    final String trimmed = line.trim();
+    final int addressEnd = indexOfSeparator(trimmed, 0);
+    final int dataStart = lastIndexOfSeparator(trimmed) + 1;
+    if (addressEnd <= 0 || dataStart <= addressEnd) {
+      skipped.increment();
+      return;
+    }
+    final String address = trimmed.substring(0, addressEnd);
+    if (address.length() != Namespace.ADDRESS_LENGTH || !address.startsWith(prefix)) {
+      skipped.increment();
+      return;
+    }
+    final byte[] data;
+    try {
+      data = Base64.getDecoder().decode(trimmed.substring(dataStart));
+    } catch (IllegalArgumentException e) {
+      undecodable.increment();
+      return;
+    }
+    try {
+      // participant addresses share their prefixes with the others, so anything not shaped exactly
+      // as a global record or checkpoint is a participant; the records cannot tell, as a checkpoint
+      // would decode as a participant record just as well
+      final boolean globalAddress = Namespace.isGlobalRecordAddress(address);
+      if (!globalAddress && !Namespace.isCheckpointAddress(address)) {
+        final TimeKeeperRecord participantRecord = TimeKeeperRecord.parseFrom(data);
+        participants.add(data.length);
+        final int history = participantRecord.getTimeHistoryCount();
+        historyLengths.incrementAndGet(bucket(history));
+        maxHistory.accumulate(history);
+        final Timestamp last = participantRecord.getLastCalculatedTime();
+        lastUpdateDays.computeIfAbsent(Math.floorDiv(last.getSeconds(), SECONDS_PER_DAY), d -> new LongAdder())
+            .increment();
+      } else if (globalAddress) {
+        final TimeKeeperGlobalRecord globalRecord = TimeKeeperGlobalRecord.parseFrom(data);
+        global.add(data.length);
+        globalParticipants.add(globalRecord.getParticipantCount());
+        maxGlobalParticipants.accumulate(globalRecord.getParticipantCount());
+      } else {
+        checkpoints.add(data.length);
+      }
+    } catch (InvalidProtocolBufferException e) {
+      undecodable.increment();
+    }
+  }
+
+  private static boolean isSeparator(final char c) {
+    return c == ',' || Character.isWhitespace(c);
+  }
+
+  private static int indexOfSeparator(final String s, final int from) {
+    for (int i = from; i < s.length(); i++) {
+      if (isSeparator(s.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int lastIndexOfSeparator(final String s) {
+    for (int i = s.length() - 1; i >= 0; i--) {
+      if (isSeparator(s.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The log2 bucket of a non-negative value, 0 holding only 0 and bucket n the values from
+   * 2^(n-1) to 2^n - 1.
+   */
+  private static int bucket(final long value) {
+    return Long.SIZE - Long.numberOfLeadingZeros(value);
+  }
+
+  private static String histogram(final AtomicLongArray buckets) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < buckets.length(); i++) {
+      final long count = buckets.get(i);
+      if (count > 0) {
+        long low = 0;
+        if (i > 0) {
+          low = 1L << (i - 1);
+        }
+        sb.append(String.format("%n  >=%d: %d", low, count));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Return the report of the entries scanned so far.
+   *
+   * @return the report
+   */
+  public String report() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("lines=%d skipped=%d undecodable=%d", lines.sum(), skipped.sum(), undecodable.sum()));
+    sb.append(String.format("%nglobal_records %s participants_total=%d participants_max=%d", global,
+        globalParticipants.sum(), maxGlobalParticipants.get()));
+    sb.append(String.format("%ncheckpoints %s", checkpoints));
+    sb.append(String.format("%nparticipant_records %s history_max=%d", participants, maxHistory.get()));
+    sb.append(String.format("%nparticipant_bytes_log2:%s", histogram(participants.sizes)));
+    sb.append(String.format("%nparticipant_history_log2:%s", histogram(historyLengths)));
+    sb.append(String.format("%nparticipant_last_update_by_day:"));
+    final Map<Long, LongAdder> days = new TreeMap<>(lastUpdateDays);
+    for (final Map.Entry<Long, LongAdder> e : days.entrySet()) {
+      sb.append(String.format("%n  %s: %d", LocalDate.ofEpochDay(e.getKey()), e.getValue().sum()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The count and sizes of one kind of record.
+   */
+  private static final class Stats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator maxBytes = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray sizes = new AtomicLongArray(BUCKETS);
+
+    void add(final int size) {
+      count.increment();
+      bytes.add(size);
+      maxBytes.accumulate(size);
+      sizes.incrementAndGet(bucket(size));
+    }
+
+    @Override
+    public String toString() {
+      final long n = count.sum();
+      long average = 0;
+      if (n > 0) {
+        average = bytes.sum() / n;
+      }
+      return String.format("count=%d bytes=%d avg_bytes=%d max_bytes=%d", n, bytes.sum(), average, maxBytes.get());
+    }
+  }
+}
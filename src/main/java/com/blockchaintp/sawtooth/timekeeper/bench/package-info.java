@@ -0,0 +1,17 @@
+/* Copyright © 2023 Paravela Limited
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+     http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+------------------------------------------------------------------------------*/
+
+/**
+ * Tools for capturing the transactions a processor applies and for inspecting exported timekeeper
+ * state. The load generators and benchmarks which replay captures live in the test sources.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperEvent;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+/**
+ * Estimates the current chain time between TimeKeeperEvents.
+ *
+ * <p>
+ * The global time only moves when a timekeeper transaction commits, so read directly it advances in
+ * steps of the update period. Each chain time observed is anchored to the local monotonic clock and
+ * the estimate advances from it at the rate chain time has been seen to advance against that clock,
+ * kept within a maximum drift of real time. The estimate never runs more than the safety margin
+ * ahead of the last chain time observed, holding there until the next event, and never goes
+ * backwards.
+ * </p>
+ *
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ */
+public final class ChainTimeEstimator {
+
+  private static final long NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+  private final long safetyMarginMicros;
+  private final double maxDrift;
+  private final LongSupplier nanoClock;
+
+  private boolean anchored;
+  private long firstChainMicros;
+  private long firstLocalNanos;
+  private long anchorChainMicros;
+  private long anchorLocalNanos;
+  private double rate = 1.0;
+  private long lastEstimateMicros = Long.MIN_VALUE;
+
+  /**
+   * Create an estimator using the system monotonic clock.
+   *
+   * @param safetyMargin
+   *          the furthest the estimate may run ahead of the last chain time observed
+   * @param drift
+   *          the largest fraction by which the estimated rate of chain time may differ from the
+   *          local clock, e.g. 0.01
+   */
+  public ChainTimeEstimator(final Duration safetyMargin, final double drift) {
+    this(safetyMargin, drift, System::nanoTime);
+  }
+
+  /**
+   * Create an estimator using the given monotonic clock.
+   *
+   * @param safetyMargin
+   *          the furthest the estimate may run ahead of the last chain time observed
+   * @param drift
+   *          the largest fraction by which the estimated rate of chain time may differ from the
+   *          local clock, e.g. 0.01
+   * @param clock
+   *          the monotonic clock in nanoseconds
+   */
+  public ChainTimeEstimator(final Duration safetyMargin, final double drift, final LongSupplier clock) {
+    if (safetyMargin.isNegative()) {
+      throw new IllegalArgumentException("safetyMargin must not be negative");
+    }
+    if (drift < 0 || drift >= 1) {
+      throw new IllegalArgumentException(String.format("drift must be in [0, 1), was %s", drift));
+    }
+    this.safetyMarginMicros = TimeUnit.NANOSECONDS.toMicros(safetyMargin.toNanos());
+    this.maxDrift = drift;
+    this.nanoClock = clock;
+  }
+
+  /**
+   * Observe the time carried by a TimeKeeperEvent.
+   *
+   * @param event
+   *          the event
+   */
+  public void observe(final TimeKeeperEvent event) {
+    observe(event.getTimeUpdate());
+  }
+
+  /**
+   * Observe a chain time. Times no later than one already observed are ignored.
+   *
+   * @param chainTime
+   *          the chain time
+   */
+  public synchronized void observe(final Timestamp chainTime) {
+    final long chainMicros = Timestamps.toMicros(chainTime);
+    final long now = nanoClock.getAsLong();
+    if (!anchored) {
+      anchored = true;
+      firstChainMicros = chainMicros;
+      firstLocalNanos = now;
+    } else if (chainMicros <= anchorChainMicros) {
+      return;
+    } else if (now > firstLocalNanos) {
+      // the rate over everything seen so far, which smooths the steps of the global time
+      final double observed = (chainMicros - firstChainMicros) * (double) NANOS_PER_MICRO / (now - firstLocalNanos);
+      rate = Math.max(1 - maxDrift, Math.min(1 + maxDrift, observed));
+    }
+    anchorChainMicros = chainMicros;
+    anchorLocalNanos = now;
+  }
+
+  /**
+   * Return whether any chain time has been observed.
+   *
+   * @return true if an estimate is available
+   */
+  public synchronized boolean isAnchored() {
+    return anchored;
+  }
+
+  /**
+   * Return the last chain time observed.
+   *
+   * @return the last chain time
+   * @throws IllegalStateException
+   *           if no chain time has been observed
+   */
+  public synchronized Timestamp getLastChainTime() {
+    checkAnchored();
+    return Timestamps.fromMicros(anchorChainMicros);
+  }
+
+  /**
+   * Return the estimated current chain time.
+   *
+   * @return the estimate
+   * @throws IllegalStateException
+   *           if no chain time has been observed
+   */
+  public synchronized Timestamp estimate() {
+    checkAnchored();
+    final long elapsedNanos = Math.max(0, nanoClock.getAsLong() - anchorLocalNanos);
+    final long advanceMicros = (long) (elapsedNanos * rate / NANOS_PER_MICRO);
+    final long estimate = anchorChainMicros + Math.min(advanceMicros, safetyMarginMicros);
+    lastEstimateMicros = Math.max(lastEstimateMicros, estimate);
+    return Timestamps.fromMicros(lastEstimateMicros);
+  }
+
+  private void checkAnchored() {
+    if (!anchored) {
+      throw new IllegalStateException("No chain time has been observed");
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+
+/**
+ * Resolves the AggregationStrategy to be used for a given TimeKeeperAggregation.
+ */
+public final class AggregationStrategies {
+
+  private static final AggregationStrategy MEDIAN_OR_LAST = new MedianOrLastAggregation();
+  private static final AggregationStrategy QUICKSELECT_MEDIAN = new QuickSelectMedianAggregation();
+  private static final AggregationStrategy TRIMMED_MEAN = new TrimmedMeanAggregation();
+  private static final AggregationStrategy WEIGHTED_MEDIAN = new WeightedMedianAggregation();
+
+  /**
+   * Return the strategy for the given aggregation type. An unset or unrecognized type resolves to
+   * the original median or last calculation.
+   *
+   * @param aggregation
+   *          the aggregation type
+   * @return the strategy
+   */
+  public static AggregationStrategy forType(final TimeKeeperAggregation aggregation) {
+    switch (aggregation) {
+    case QUICKSELECT_MEDIAN:
+      return QUICKSELECT_MEDIAN;
+    case TRIMMED_MEAN:
+      return TRIMMED_MEAN;
+    case WEIGHTED_MEDIAN:
+      return WEIGHTED_MEDIAN;
+    case MEDIAN_OR_LAST:
+    case AGGREGATION_UNSET:
+    default:
+      return MEDIAN_OR_LAST;
+    }
+  }
+
+  private AggregationStrategies() {
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+/**
+ * Aggregates the participant times of a global record into a single candidate time.
+ *
+ * <p>
+ * Implementations operate directly on primitive arrays and must not allocate. They are free to
+ * reorder the first {@code count} entries of {@code values}, provided that {@code weights} is
+ * reordered in step with it. Implementations must be deterministic, since every validator has to
+ * arrive at the same result.
+ * </p>
+ */
+public interface AggregationStrategy {
+
+  /**
+   * Aggregate the first {@code count} values.
+   *
+   * @param values
+   *          the participant times, which may be reordered
+   * @param weights
+   *          the non-negative weight of each value, reordered along with the values
+   * @param count
+   *          the number of entries to consider, which must be greater than zero
+   * @return the aggregated time
+   */
+  long aggregate(long[] values, long[] weights, int count);
+}
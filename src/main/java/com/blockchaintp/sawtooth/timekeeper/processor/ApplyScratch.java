@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperEvent;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
+import com.google.protobuf.ByteString;
+
+/**
+ * Builders and buffers reused from one apply to the next by a single thread. Nothing held here may
+ * outlive the apply which filled it, built messages are immutable and so are safe to keep.
+ */
+final class ApplyScratch {
+
+  private final List<String> addresses = new ArrayList<>(2);
+  private final Map<String, ByteString> writes = new HashMap<>();
+  private final Map<String, String> attributes = new HashMap<>();
+  private final TimeKeeperEvent.Builder event = TimeKeeperEvent.newBuilder();
+  private final TimeKeeperRecord.Builder record = TimeKeeperRecord.newBuilder();
+  private final TimeKeeperGlobalRecord.Builder globalRecord = TimeKeeperGlobalRecord.newBuilder();
+  private final TimeKeeperParticipant.Builder participant = TimeKeeperParticipant.newBuilder();
+  private final ParticipantTable participantTable = new ParticipantTable();
+  private long[] times = new long[0];
+  private long[] weights = new long[0];
+  private final int[] proposal = new int[ParticipantTable.SETTINGS];
+
+  List<String> addresses() {
+    addresses.clear();
+    return addresses;
+  }
+
+  Map<String, ByteString> writes() {
+    writes.clear();
+    return writes;
+  }
+
+  Map<String, String> attributes() {
+    attributes.clear();
+    return attributes;
+  }
+
+  TimeKeeperEvent.Builder event() {
+    return event.clear();
+  }
+
+  TimeKeeperRecord.Builder record() {
+    return record.clear();
+  }
+
+  TimeKeeperGlobalRecord.Builder globalRecord() {
+    return globalRecord.clear();
+  }
+
+  TimeKeeperParticipant.Builder participant() {
+    return participant.clear();
+  }
+
+  ParticipantTable participantTable() {
+    participantTable.clear();
+    return participantTable;
+  }
+
+  /**
+   * Return an array for the settings proposed by one participant, all 0.
+   *
+   * @return the array
+   */
+  int[] proposal() {
+    Arrays.fill(proposal, 0);
+    return proposal;
+  }
+
+  /**
+   * Return an array of at least the given length for participant times, contents undefined.
+   *
+   * @param length
+   *          the length needed
+   * @return the array
+   */
+  long[] times(final int length) {
+    if (times.length < length) {
+      times = new long[length];
+    }
+    return times;
+  }
+
+  /**
+   * Return an array of at least the given length for participant weights, contents undefined.
+   *
+   * @param length
+   *          the length needed
+   * @return the array
+   */
+  long[] weights(final int length) {
+    if (weights.length < length) {
+      weights = new long[length];
+    }
+    return weights;
+  }
+}
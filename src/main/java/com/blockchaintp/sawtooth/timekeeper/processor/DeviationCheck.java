@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Applies the maxDeviation of a participant to an incoming update, working from the serialized
+ * records so that bad updates are turned away before the records are parsed in full.
+ *
+ * <p>
+ * An update which is more than maxDeviation seconds behind either the global time or the last time
+ * of its participant is rejected. Updates ahead of the global time are not, since after a network
+ * wide stall every honest update is, and the global time could never catch up. A single fast clock
+ * is instead held back by the aggregation of the participant times.
+ * </p>
+ *
+ * <p>
+ * The check only applies to V_2_0 and later updates which carry a maxDeviation, or whose
+ * participant record has one stored.
+ * </p>
+ */
+public final class DeviationCheck {
+
+  /**
+   * Check the update against the current records.
+   *
+   * @param update
+   *          the incoming update
+   * @param participantRecord
+   *          the serialized TimeKeeperRecord of the participant, may be null or empty
+   * @param globalRecord
+   *          the serialized TimeKeeperGlobalRecord, may be null or empty
+   * @throws TimeKeeperException
+   *           if the update deviates too far from the current times
+   * @throws InvalidProtocolBufferException
+   *           if either of the records is malformed
+   */
+  public static void check(final TimeKeeperUpdate update, final ByteString participantRecord,
+      final ByteString globalRecord) throws TimeKeeperException, InvalidProtocolBufferException {
+    final long maxDeviation = maxDeviation(update, participantRecord);
+    if (maxDeviation <= 0) {
+      return;
+    }
+    final long updateSeconds = update.getTimeUpdate().getSeconds();
+    final long participantSeconds = RecordFields.timestampSeconds(participantRecord,
+        TimeKeeperRecord.LASTCALCULATEDTIME_FIELD_NUMBER);
+    final long globalSeconds = RecordFields.timestampSeconds(globalRecord,
+        TimeKeeperGlobalRecord.LASTCALCULATEDTIME_FIELD_NUMBER);
+
+    if (participantSeconds > 0 && updateSeconds < participantSeconds - maxDeviation) {
+      throw new TimeKeeperException(String.format("Update time=%s is more than %s seconds behind participant time=%s",
+          updateSeconds, maxDeviation, participantSeconds));
+    }
+    if (globalSeconds > 0 && updateSeconds < globalSeconds - maxDeviation) {
+      throw new TimeKeeperException(String.format("Update time=%s is more than %s seconds behind global time=%s",
+          updateSeconds, maxDeviation, globalSeconds));
+    }
+  }
+
+  private static long maxDeviation(final TimeKeeperUpdate update, final ByteString participantRecord)
+      throws InvalidProtocolBufferException {
+    if (TimeKeeperVersion.V_1_0.equals(update.getVersion())) {
+      return 0;
+    }
+    if (update.getMaxDeviation() > 0) {
+      return update.getMaxDeviation();
+    }
+    return RecordFields.int32Field(participantRecord, TimeKeeperRecord.MAXDEVIATION_FIELD_NUMBER);
+  }
+
+  private DeviationCheck() {
+  }
+}
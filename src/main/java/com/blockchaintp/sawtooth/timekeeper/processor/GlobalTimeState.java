@@ -13,19 +13,30 @@
  */
 package com.blockchaintp.sawtooth.timekeeper.processor;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCheckpoint;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord.Builder;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
 import com.google.protobuf.util.Timestamps;
 
 import org.slf4j.Logger;
@@ -33,6 +44,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Encapsulates and anages the calculations fot TimekeeperGlobalRecords.
+ *
+ * <p>
+ * The aggregation, expiry window, participant cap and checkpoint interval of the record are not
+ * taken from any single update. Each participant's entry keeps the settings its last update asked
+ * for, and a setting changes only once a strict majority of the participants in the record ask for
+ * the same value. Without such a majority the setting stays as it is, so submitters with differing
+ * configurations cannot flip it back and forth, and no single participant can shrink the cap or the
+ * window to evict the others.
+ * </p>
  */
 public final class GlobalTimeState {
 
@@ -50,10 +70,78 @@ public final class GlobalTimeState {
    */
   private static final int PERIOD_FLOOR = 10;
 
+  private static final long MICROS_PER_SECOND = 1_000_000L;
+
+  private static final int NANOS_PER_MICRO = 1_000;
+
+  // the settings participants propose, as indexes into a proposal
+  private static final int AGGREGATION_SETTING = 0;
+  private static final int EXPIRY_SETTING = 1;
+  private static final int MAX_PARTICIPANTS_SETTING = 2;
+  private static final int CHECKPOINT_SETTING = 3;
+  private static final int SETTINGS = ParticipantTable.SETTINGS;
+
+  /**
+   * The TimeKeeperParticipant field of each setting, all of which are written as int32 varints.
+   */
+  private static final int[] SETTING_FIELDS = {TimeKeeperParticipant.AGGREGATION_FIELD_NUMBER,
+      TimeKeeperParticipant.EXPIRYSECONDS_FIELD_NUMBER, TimeKeeperParticipant.MAXPARTICIPANTS_FIELD_NUMBER,
+      TimeKeeperParticipant.CHECKPOINTSECONDS_FIELD_NUMBER};
+
+  // the tags of the fields read straight from a serialized record, as the generated parsers match
+  private static final int TAG_TYPE_BITS = 3;
+  private static final int LENGTH_DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int VARINT = WireFormat.WIRETYPE_VARINT;
+  private static final int TIME_TAG = TimeKeeperGlobalRecord.LASTCALCULATEDTIME_FIELD_NUMBER << TAG_TYPE_BITS
+      | LENGTH_DELIMITED;
+  private static final int HISTORY_TAG = TimeKeeperGlobalRecord.TIMEHISTORY_FIELD_NUMBER << TAG_TYPE_BITS
+      | LENGTH_DELIMITED;
+  private static final int PARTICIPANT_TAG = TimeKeeperGlobalRecord.PARTICIPANT_FIELD_NUMBER << TAG_TYPE_BITS
+      | LENGTH_DELIMITED;
+  private static final int VERSION_TAG = TimeKeeperGlobalRecord.VERSION_FIELD_NUMBER << TAG_TYPE_BITS | VARINT;
+  private static final int AGGREGATION_TAG = TimeKeeperGlobalRecord.AGGREGATION_FIELD_NUMBER << TAG_TYPE_BITS
+      | VARINT;
+  private static final int EXPIRY_TAG = TimeKeeperGlobalRecord.EXPIRYSECONDS_FIELD_NUMBER << TAG_TYPE_BITS | VARINT;
+  private static final int MAX_PARTICIPANTS_TAG = TimeKeeperGlobalRecord.MAXPARTICIPANTS_FIELD_NUMBER << TAG_TYPE_BITS
+      | VARINT;
+  private static final int CHECKPOINT_TAG = TimeKeeperGlobalRecord.CHECKPOINTSECONDS_FIELD_NUMBER << TAG_TYPE_BITS
+      | VARINT;
+  private static final int LAST_CHECKPOINT_TAG = TimeKeeperGlobalRecord.LASTCHECKPOINTSECONDS_FIELD_NUMBER
+      << TAG_TYPE_BITS | VARINT;
+  private static final int COMPACT_TAG = TimeKeeperGlobalRecord.COMPACTPARTICIPANTS_FIELD_NUMBER << TAG_TYPE_BITS
+      | VARINT;
+  private static final int KEY_TAG = TimeKeeperParticipant.PARTICIPANTPUBLICKEY_FIELD_NUMBER << TAG_TYPE_BITS
+      | LENGTH_DELIMITED;
+  private static final int PARTICIPANT_TIME_TAG = TimeKeeperParticipant.LASTCALCULATEDTIME_FIELD_NUMBER
+      << TAG_TYPE_BITS | LENGTH_DELIMITED;
+  private static final int SECONDS_TAG = Timestamp.SECONDS_FIELD_NUMBER << TAG_TYPE_BITS | VARINT;
+  private static final int NANOS_TAG = Timestamp.NANOS_FIELD_NUMBER << TAG_TYPE_BITS | VARINT;
+
+  /**
+   * Orders participants from the stalest to the most recent, ties broken by their key.
+   */
+  private static final Comparator<Map.Entry<ByteString, Timestamp>> STALEST_FIRST = Comparator
+      .<Map.Entry<ByteString, Timestamp>, Timestamp>comparing(Map.Entry::getValue, Timestamps.comparator())
+      .thenComparing(Map.Entry::getKey, ByteString.unsignedLexicographicalComparator());
+
   private Timestamp currentTime;
+  private Timestamp recordTime;
   private List<Timestamp> history;
   private Map<ByteString, Timestamp> participantTimes;
+  /**
+   * The settings proposed by the participants in participantTimes, for those proposing any.
+   */
+  private final Map<ByteString, int[]> proposals;
+  private final ParticipantTable table;
+  private boolean compact;
   private TimeKeeperVersion version;
+  private TimeKeeperAggregation aggregation;
+  private int expirySeconds;
+  private int maxParticipants;
+  private int checkpointSeconds;
+  private long lastCheckpointSeconds;
+  private final ApplyScratch scratch;
+  private boolean changed;
 
   /**
    * Create a new global time state object and initialize with the provided record.
@@ -62,25 +150,245 @@ public final class GlobalTimeState {
    *          the current TimeKeeperGlobal record
    */
   public GlobalTimeState(final TimeKeeperGlobalRecord globalRecord) {
-    this();
+    this(globalRecord, new ApplyScratch());
+  }
+
+  /**
+   * Create a new global time state object from the provided record, building with the builders and
+   * buffers of the calling thread.
+   *
+   * @param globalRecord
+   *          the current TimeKeeperGlobal record
+   * @param applyScratch
+   *          the builders and buffers of the calling thread
+   */
+  GlobalTimeState(final TimeKeeperGlobalRecord globalRecord, final ApplyScratch applyScratch) {
+    this(applyScratch);
     this.currentTime = globalRecord.getLastCalculatedTime();
+    this.recordTime = this.currentTime;
     this.history.addAll(globalRecord.getTimeHistoryList());
     this.version = globalRecord.getVersion();
+    this.aggregation = globalRecord.getAggregation();
+    this.expirySeconds = globalRecord.getExpirySeconds();
+    this.maxParticipants = globalRecord.getMaxParticipants();
+    this.checkpointSeconds = globalRecord.getCheckpointSeconds();
+    this.lastCheckpointSeconds = globalRecord.getLastCheckpointSeconds();
+    this.compact = globalRecord.getCompactParticipants();
     for (final TimeKeeperParticipant p : globalRecord.getParticipantList()) {
-      participantTimes.put(p.getParticipantPublicKey(), p.getLastCalculatedTime());
+      if (compact) {
+        final int entry = table.put(p.getParticipantPublicKey(), Timestamps.toMicros(p.getLastCalculatedTime()));
+        for (int setting = 0; setting < SETTINGS; setting++) {
+          table.setSetting(entry, setting, proposed(p, setting));
+        }
+      } else {
+        participantTimes.put(p.getParticipantPublicKey(), p.getLastCalculatedTime());
+        final int[] proposal = new int[SETTINGS];
+        for (int setting = 0; setting < SETTINGS; setting++) {
+          proposal[setting] = proposed(p, setting);
+        }
+        if (!isEmpty(proposal)) {
+          proposals.put(p.getParticipantPublicKey(), proposal);
+        }
+      }
     }
+    this.changed = false;
     // do nothing else as this TimeKeeperRecord is presumed to already be
     // incorporated into the TimeKeeperGlobalRecord
   }
 
+  /**
+   * Create a global time state from a serialized record.
+   *
+   * @param globalRecord
+   *          the serialized TimeKeeperGlobalRecord
+   * @return the state
+   * @throws InvalidProtocolBufferException
+   *           if the record is malformed
+   */
+  public static GlobalTimeState parseFrom(final ByteString globalRecord) throws InvalidProtocolBufferException {
+    return parseFrom(globalRecord, new ApplyScratch());
+  }
+
+  /**
+   * Create a global time state from a serialized record, building with the builders and buffers of
+   * the calling thread. The record is read straight into the participant table, without a message
+   * being built for each participant. Only a record which turns out not to have compact
+   * participants, whose times are kept exactly rather than in microseconds, is then parsed whole.
+   *
+   * @param globalRecord
+   *          the serialized TimeKeeperGlobalRecord
+   * @param applyScratch
+   *          the builders and buffers of the calling thread
+   * @return the state
+   * @throws InvalidProtocolBufferException
+   *           if the record is malformed
+   */
+  static GlobalTimeState parseFrom(final ByteString globalRecord, final ApplyScratch applyScratch)
+      throws InvalidProtocolBufferException {
+    final GlobalTimeState state = new GlobalTimeState(applyScratch);
+    try {
+      state.readCompact(globalRecord);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+    if (state.compact) {
+      return state;
+    }
+    final CodedInputStream input = globalRecord.newCodedInput();
+    input.enableAliasing(true);
+    return new GlobalTimeState(TimeKeeperGlobalRecord.parser().parseFrom(input), applyScratch);
+  }
+
+  /**
+   * Read a record into this state as one with compact participants, as the record constructor
+   * would read it.
+   */
+  private void readCompact(final ByteString record) throws IOException {
+    final CodedInputStream input = record.newCodedInput();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (tag) {
+      case TIME_TAG:
+        currentTime = input.readMessage(Timestamp.parser(), ExtensionRegistryLite.getEmptyRegistry());
+        break;
+      case HISTORY_TAG:
+        history.add(input.readMessage(Timestamp.parser(), ExtensionRegistryLite.getEmptyRegistry()));
+        break;
+      case PARTICIPANT_TAG:
+        readParticipant(record, input);
+        break;
+      case VERSION_TAG:
+        version = TimeKeeperVersion.forNumber(input.readEnum());
+        if (version == null) {
+          version = TimeKeeperVersion.UNRECOGNIZED;
+        }
+        break;
+      case AGGREGATION_TAG:
+        aggregation = TimeKeeperAggregation.forNumber(input.readEnum());
+        if (aggregation == null) {
+          aggregation = TimeKeeperAggregation.UNRECOGNIZED;
+        }
+        break;
+      case EXPIRY_TAG:
+        expirySeconds = input.readInt32();
+        break;
+      case MAX_PARTICIPANTS_TAG:
+        maxParticipants = input.readInt32();
+        break;
+      case CHECKPOINT_TAG:
+        checkpointSeconds = input.readInt32();
+        break;
+      case LAST_CHECKPOINT_TAG:
+        lastCheckpointSeconds = input.readInt64();
+        break;
+      case COMPACT_TAG:
+        compact = input.readBool();
+        break;
+      default:
+        input.skipField(tag);
+        break;
+      }
+    }
+    recordTime = currentTime;
+    changed = false;
+  }
+
+  /**
+   * Read a TimeKeeperParticipant into the table, its key copied from the record and its time kept
+   * in microseconds.
+   */
+  private void readParticipant(final ByteString record, final CodedInputStream input) throws IOException {
+    final int limit = input.pushLimit(input.readRawVarint32());
+    final int[] proposal = scratch.proposal();
+    int keyOffset = 0;
+    int keyLength = 0;
+    long micros = 0;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (tag == KEY_TAG) {
+        keyLength = input.readRawVarint32();
+        keyOffset = input.getTotalBytesRead();
+        input.skipRawBytes(keyLength);
+      } else if (tag == PARTICIPANT_TIME_TAG) {
+        micros = readMicros(input);
+      } else {
+        final int setting = settingOfField(WireFormat.getTagFieldNumber(tag));
+        if (setting >= 0 && WireFormat.getTagWireType(tag) == VARINT) {
+          proposal[setting] = input.readInt32();
+        } else {
+          input.skipField(tag);
+        }
+      }
+    }
+    input.popLimit(limit);
+    final int entry = table.put(record, keyOffset, keyLength, micros);
+    for (int setting = 0; setting < SETTINGS; setting++) {
+      table.setSetting(entry, setting, proposal[setting]);
+    }
+  }
+
+  /**
+   * Return the setting a TimeKeeperParticipant field holds the proposal of, -1 for none.
+   */
+  private static int settingOfField(final int fieldNumber) {
+    for (int setting = 0; setting < SETTINGS; setting++) {
+      if (SETTING_FIELDS[setting] == fieldNumber) {
+        return setting;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read a Timestamp as microseconds, as {@link Timestamps#toMicros(Timestamp)} converts it.
+   */
+  private static long readMicros(final CodedInputStream input) throws IOException {
+    final int limit = input.pushLimit(input.readRawVarint32());
+    long seconds = 0;
+    int nanos = 0;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (tag == SECONDS_TAG) {
+        seconds = input.readInt64();
+      } else if (tag == NANOS_TAG) {
+        nanos = input.readInt32();
+      } else {
+        input.skipField(tag);
+      }
+    }
+    input.popLimit(limit);
+    return seconds * MICROS_PER_SECOND + nanos / NANOS_PER_MICRO;
+  }
+
   /**
    * Create a new global timestate object from the beginning of EPOCH.
    */
   public GlobalTimeState() {
+    this(new ApplyScratch());
+  }
+
+  /**
+   * Create a new global time state object from the beginning of EPOCH, building with the builders
+   * and buffers of the calling thread.
+   *
+   * @param applyScratch
+   *          the builders and buffers of the calling thread
+   */
+  GlobalTimeState(final ApplyScratch applyScratch) {
     this.currentTime = Timestamps.EPOCH;
+    this.recordTime = Timestamps.EPOCH;
     this.history = new ArrayList<>();
     this.participantTimes = new HashMap<>();
+    this.proposals = new HashMap<>();
     this.version = TimeKeeperVersion.V_1_0;
+    this.aggregation = TimeKeeperAggregation.AGGREGATION_UNSET;
+    this.expirySeconds = 0;
+    this.maxParticipants = 0;
+    this.checkpointSeconds = 0;
+    this.lastCheckpointSeconds = 0;
+    this.scratch = applyScratch;
+    this.table = applyScratch.participantTable();
+    this.compact = false;
+    this.changed = true;
   }
 
   /**
@@ -92,10 +400,28 @@ public final class GlobalTimeState {
    *          the update
    */
   public void addUpdate(final ByteString participant, final TimeKeeperUpdate update) {
-    if (update.getVersion().equals(TimeKeeperVersion.V_2_0)) {
-      this.version = TimeKeeperVersion.V_2_0;
+    if (isLaterVersion(update.getVersion(), this.version)) {
+      this.version = update.getVersion();
+      this.changed = true;
     }
-    addUpdate(participant, update.getTimeUpdate());
+    if (update.getCompactParticipants() && !compact) {
+      // the participants keep the order they had in the hash map, and new ones go on the end
+      for (final Map.Entry<ByteString, Timestamp> e : participantTimes.entrySet()) {
+        final int entry = table.put(e.getKey(), Timestamps.toMicros(e.getValue()));
+        final int[] proposal = proposals.get(e.getKey());
+        for (int setting = 0; proposal != null && setting < SETTINGS; setting++) {
+          table.setSetting(entry, setting, proposal[setting]);
+        }
+      }
+      participantTimes.clear();
+      proposals.clear();
+      this.compact = true;
+      this.changed = true;
+    }
+    upsert(participant, update.getTimeUpdate());
+    propose(participant, update);
+    agreeSettings();
+    limitAndAggregate();
   }
 
   /**
@@ -107,20 +433,31 @@ public final class GlobalTimeState {
    *          the timestamp to use for update
    */
   public void addUpdate(final ByteString participant, final Timestamp update) {
-    if (LOGGER.isDebugEnabled() && !participantTimes.containsKey(participant)) {
-      LOGGER.info("New TimeKeeper particpant detected {}", participant.toStringUtf8());
+    upsert(participant, update);
+    limitAndAggregate();
+  }
+
+  private void upsert(final ByteString participant, final Timestamp update) {
+    if (compact) {
+      upsertTable(participant, update);
+    } else {
+      upsertMap(participant, update);
     }
-    Timestamp prevPartTime = participantTimes.getOrDefault(participant, Timestamps.EPOCH);
+  }
 
-    Timestamp newTime = TimestampUtils.max(prevPartTime, List.of(update));
-    if (LOGGER.isDebugEnabled() && newTime.getSeconds() != prevPartTime.getSeconds()) {
-      LOGGER.debug("Particpant {} new time={}", participant.toStringUtf8(), new Date(Timestamps.toMillis(newTime)));
+  /**
+   * Expire and evict participants as the settings require, then aggregate the remaining times.
+   */
+  private void limitAndAggregate() {
+    if (compact) {
+      limitTable();
+    } else {
+      limitMap();
     }
-    participantTimes.put(participant, newTime);
-    pruneExpiredParticipants(participantTimes);
     final Timestamp previousTime = currentTime;
-    currentTime = TimestampUtils.medianOrLast(currentTime, participantTimes.values());
-    if (previousTime.getSeconds() != currentTime.getSeconds()) {
+    currentTime = aggregate(currentTime);
+    if (!sameTime(previousTime, currentTime)) {
+      changed = true;
       history.add(currentTime);
       if (history.size() > MAX_TIME_HISTORY) {
         history.subList(history.size() - MAX_TIME_HISTORY, history.size());
@@ -129,20 +466,406 @@ public final class GlobalTimeState {
 
   }
 
-  private void pruneExpiredParticipants(final Map<ByteString, Timestamp> participants) {
-    final List<ByteString> toRemove = new ArrayList<>();
-    final long currentSeconds = currentTime.getSeconds();
-    final long bottomThreshold = currentSeconds - (PERIOD_FLOOR * LEGACY_DEFAULT_UPDATE_PERIOD);
+  private void upsertMap(final ByteString participant, final Timestamp update) {
+    final boolean newParticipant = !participantTimes.containsKey(participant);
+    if (LOGGER.isDebugEnabled() && newParticipant) {
+      LOGGER.info("New TimeKeeper particpant detected {}", participant.toStringUtf8());
+    }
+    Timestamp prevPartTime = participantTimes.getOrDefault(participant, Timestamps.EPOCH);
+
+    Timestamp newTime;
+    if (isMicros()) {
+      newTime = TimestampUtils.maxMicros(prevPartTime, List.of(update));
+    } else {
+      newTime = TimestampUtils.max(prevPartTime, List.of(update));
+    }
+    if (LOGGER.isDebugEnabled() && newTime.getSeconds() != prevPartTime.getSeconds()) {
+      LOGGER.debug("Particpant {} new time={}", participant.toStringUtf8(), new Date(Timestamps.toMillis(newTime)));
+    }
+    if (newParticipant || !newTime.equals(prevPartTime)) {
+      participantTimes.put(participant, newTime);
+      changed = true;
+    }
+  }
+
+  private void limitMap() {
+    if (pruneExpiredParticipants(participantTimes)) {
+      changed = true;
+    }
+    if (evictStalestParticipants(participantTimes)) {
+      changed = true;
+    }
+  }
+
+  /**
+   * Apply an update to the participant table as {@link #upsertMap(ByteString, Timestamp)} does to
+   * the map, with the times held in microseconds.
+   */
+  private void upsertTable(final ByteString participant, final Timestamp update) {
+    long updateMicros = update.getSeconds() * MICROS_PER_SECOND;
+    if (isMicros()) {
+      updateMicros = Timestamps.toMicros(update);
+    }
+    final int entry = table.indexOf(participant);
+    if (entry < 0) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("New TimeKeeper particpant detected {}", participant.toStringUtf8());
+      }
+      table.put(participant, Math.max(0, updateMicros));
+      changed = true;
+    } else if (updateMicros > table.micros(entry)) {
+      table.put(participant, updateMicros);
+      changed = true;
+    }
+  }
+
+  private void limitTable() {
+    // a participant whose time in whole seconds is at or before the threshold has expired
+    final long bottomThreshold = currentTime.getSeconds() - expiryWindow();
+    if (table.removeBefore((bottomThreshold + 1) * MICROS_PER_SECOND)) {
+      changed = true;
+    }
+    if (maxParticipants > 0 && table.removeStalest(table.size() - maxParticipants)) {
+      changed = true;
+    }
+  }
+
+  /**
+   * Record the settings an update asks for against its participant, if it is still in the record.
+   */
+  private void propose(final ByteString participant, final TimeKeeperUpdate update) {
+    if (compact) {
+      final int entry = table.indexOf(participant);
+      for (int setting = 0; entry >= 0 && setting < SETTINGS; setting++) {
+        final int value = proposed(update, setting);
+        if (table.setting(entry, setting) != value) {
+          table.setSetting(entry, setting, value);
+          changed = true;
+        }
+      }
+      return;
+    }
+    final int[] proposal = new int[SETTINGS];
+    for (int setting = 0; setting < SETTINGS; setting++) {
+      proposal[setting] = proposed(update, setting);
+    }
+    final int[] previous = proposals.get(participant);
+    if (isEmpty(proposal)) {
+      if (previous != null) {
+        proposals.remove(participant);
+        changed = true;
+      }
+    } else if (previous == null || !Arrays.equals(previous, proposal)) {
+      proposals.put(participant, proposal);
+      changed = true;
+    }
+  }
+
+  /**
+   * Change each setting which a strict majority of the participants propose the same value for.
+   */
+  private void agreeSettings() {
+    if (!compact && proposals.isEmpty()) {
+      return;
+    }
+    final int count = participantCount();
+    final long[] values = scratch.times(count);
+    for (int setting = 0; setting < SETTINGS; setting++) {
+      loadProposals(values, setting);
+      final int agreed = (int) majority(values, count);
+      if (agreed != 0 && agreed != setting(setting)) {
+        setSetting(setting, agreed);
+        changed = true;
+      }
+    }
+  }
+
+  /**
+   * Return the value held by more than half of the values, or 0 if there is none.
+   *
+   * @param values
+   *          the values
+   * @param count
+   *          the number of values to consider
+   * @return the majority value
+   */
+  static long majority(final long[] values, final int count) {
+    long candidate = 0;
+    int votes = 0;
+    for (int i = 0; i < count; i++) {
+      if (votes == 0) {
+        candidate = values[i];
+        votes = 1;
+      } else if (values[i] == candidate) {
+        votes++;
+      } else {
+        votes--;
+      }
+    }
+    int held = 0;
+    for (int i = 0; i < count; i++) {
+      if (values[i] == candidate) {
+        held++;
+      }
+    }
+    if (held * 2 > count) {
+      return candidate;
+    }
+    return 0;
+  }
+
+  /**
+   * Copy the value of a setting proposed by each participant, 0 for none, into the array.
+   */
+  private void loadProposals(final long[] values, final int setting) {
+    if (compact) {
+      for (int entry = 0; entry < table.size(); entry++) {
+        values[entry] = table.setting(entry, setting);
+      }
+      return;
+    }
+    int i = 0;
+    for (final ByteString participant : participantTimes.keySet()) {
+      final int[] proposal = proposals.get(participant);
+      values[i] = 0;
+      if (proposal != null) {
+        values[i] = proposal[setting];
+      }
+      i++;
+    }
+  }
+
+  private int setting(final int setting) {
+    switch (setting) {
+    case AGGREGATION_SETTING:
+      return aggregation.getNumber();
+    case EXPIRY_SETTING:
+      return expirySeconds;
+    case MAX_PARTICIPANTS_SETTING:
+      return maxParticipants;
+    default:
+      return checkpointSeconds;
+    }
+  }
+
+  private void setSetting(final int setting, final int value) {
+    switch (setting) {
+    case AGGREGATION_SETTING:
+      aggregation = TimeKeeperAggregation.forNumber(value);
+      break;
+    case EXPIRY_SETTING:
+      expirySeconds = value;
+      break;
+    case MAX_PARTICIPANTS_SETTING:
+      maxParticipants = value;
+      break;
+    default:
+      checkpointSeconds = value;
+      break;
+    }
+  }
+
+  /**
+   * Return a setting an update asks for, 0 for none or for a value this processor cannot use.
+   */
+  private static int proposed(final TimeKeeperUpdate update, final int setting) {
+    switch (setting) {
+    case AGGREGATION_SETTING:
+      if (TimeKeeperAggregation.forNumber(update.getAggregationValue()) == null) {
+        return 0;
+      }
+      return update.getAggregationValue();
+    case EXPIRY_SETTING:
+      return Math.max(0, update.getExpirySeconds());
+    case MAX_PARTICIPANTS_SETTING:
+      return Math.max(0, update.getMaxParticipants());
+    default:
+      return Math.max(0, update.getCheckpointSeconds());
+    }
+  }
+
+  /**
+   * Return a setting a participant entry of the record asks for, 0 for none.
+   */
+  private static int proposed(final TimeKeeperParticipant participant, final int setting) {
+    switch (setting) {
+    case AGGREGATION_SETTING:
+      return participant.getAggregationValue();
+    case EXPIRY_SETTING:
+      return participant.getExpirySeconds();
+    case MAX_PARTICIPANTS_SETTING:
+      return participant.getMaxParticipants();
+    default:
+      return participant.getCheckpointSeconds();
+    }
+  }
+
+  private static boolean isEmpty(final int[] proposal) {
+    for (final int value : proposal) {
+      if (value != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int participantCount() {
+    if (compact) {
+      return table.size();
+    }
+    return participantTimes.size();
+  }
+
+  /**
+   * Copy the participant times, in seconds or in microseconds, into the array.
+   */
+  private void loadTimes(final long[] times, final boolean inMicros) {
+    if (compact) {
+      for (int entry = 0; entry < table.size(); entry++) {
+        if (inMicros) {
+          times[entry] = table.micros(entry);
+        } else {
+          times[entry] = Math.floorDiv(table.micros(entry), MICROS_PER_SECOND);
+        }
+      }
+      return;
+    }
+    int i = 0;
+    for (final Timestamp t : participantTimes.values()) {
+      if (inMicros) {
+        times[i] = Timestamps.toMicros(t);
+      } else {
+        times[i] = t.getSeconds();
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Return whether a version is a later one than another. Versions are never downgraded, and one
+   * this processor does not recognize is ignored.
+   */
+  private static boolean isLaterVersion(final TimeKeeperVersion candidate, final TimeKeeperVersion current) {
+    if (candidate == TimeKeeperVersion.UNRECOGNIZED || current == TimeKeeperVersion.UNRECOGNIZED) {
+      return false;
+    }
+    return candidate.getNumber() > current.getNumber();
+  }
+
+  /**
+   * Return whether this record aggregates in microseconds rather than whole seconds.
+   */
+  private boolean isMicros() {
+    return this.version == TimeKeeperVersion.V_3_0;
+  }
+
+  private boolean sameTime(final Timestamp a, final Timestamp b) {
+    if (isMicros()) {
+      return a.equals(b);
+    }
+    return a.getSeconds() == b.getSeconds();
+  }
+
+  /**
+   * Aggregate the participant times according to the aggregation of this record, never going back
+   * before the last calculated time.
+   */
+  private Timestamp aggregate(final Timestamp last) {
+    if (isMicros()) {
+      return aggregateMicros(last);
+    }
+    final int count = participantCount();
+    if (count == 0) {
+      return Timestamp.newBuilder().setSeconds(last.getSeconds()).build();
+    }
+    final long[] scratchTimes = scratch.times(count);
+    final long[] scratchWeights = scratch.weights(count);
+    // participants falling towards expiry carry less weight, those at or beyond the current time
+    // carry the full expiry window
+    final long window = expiryWindow();
+    final long bottomThreshold = last.getSeconds() - window;
+    loadTimes(scratchTimes, false);
+    for (int i = 0; i < count; i++) {
+      scratchWeights[i] = Math.min(window, scratchTimes[i] - bottomThreshold);
+    }
+    final long aggregated = AggregationStrategies.forType(aggregation).aggregate(scratchTimes, scratchWeights, count);
+    return Timestamp.newBuilder().setSeconds(Math.max(last.getSeconds(), aggregated)).build();
+  }
+
+  /**
+   * Aggregate as {@link #aggregate(Timestamp)}, but on the participant times in microseconds.
+   */
+  private Timestamp aggregateMicros(final Timestamp last) {
+    final long lastMicros = Timestamps.toMicros(last);
+    final int count = participantCount();
+    if (count == 0) {
+      return Timestamps.fromMicros(lastMicros);
+    }
+    final long[] scratchTimes = scratch.times(count);
+    final long[] scratchWeights = scratch.weights(count);
+    final long window = expiryWindow() * MICROS_PER_SECOND;
+    final long bottomThreshold = lastMicros - window;
+    loadTimes(scratchTimes, true);
+    for (int i = 0; i < count; i++) {
+      scratchWeights[i] = Math.min(window, scratchTimes[i] - bottomThreshold);
+    }
+    final long aggregated = AggregationStrategies.forType(aggregation).aggregate(scratchTimes, scratchWeights, count);
+    return Timestamps.fromMicros(Math.max(lastMicros, aggregated));
+  }
 
+  private boolean pruneExpiredParticipants(final Map<ByteString, Timestamp> participants) {
+    final long currentSeconds = currentTime.getSeconds();
+    final long bottomThreshold = currentSeconds - expiryWindow();
+    // nearly every update expires nobody, so only allocate once somebody has
+    List<ByteString> toRemove = null;
     for (final Map.Entry<ByteString, Timestamp> e : participants.entrySet()) {
       final long seconds = e.getValue().getSeconds();
       if (seconds <= bottomThreshold) {
+        if (toRemove == null) {
+          toRemove = new ArrayList<>();
+        }
         toRemove.add(e.getKey());
       }
     }
+    if (toRemove == null) {
+      return false;
+    }
     for (final ByteString k : toRemove) {
       participants.remove(k);
     }
+    return true;
+  }
+
+  /**
+   * Evict the stalest participants until no more than the maximum remain. Participants with equal
+   * times are evicted in order of their keys, so every validator evicts the same ones.
+   */
+  private boolean evictStalestParticipants(final Map<ByteString, Timestamp> participants) {
+    if (maxParticipants <= 0 || participants.size() <= maxParticipants) {
+      return false;
+    }
+    final List<Map.Entry<ByteString, Timestamp>> entries = new ArrayList<>(participants.entrySet());
+    entries.sort(STALEST_FIRST);
+    final int excess = participants.size() - maxParticipants;
+    final List<ByteString> toRemove = new ArrayList<>(excess);
+    for (int i = 0; i < excess; i++) {
+      toRemove.add(entries.get(i).getKey());
+    }
+    for (final ByteString k : toRemove) {
+      participants.remove(k);
+    }
+    return true;
+  }
+
+  /**
+   * The seconds behind the current time after which a participant expires, as set on the record or
+   * else the legacy window.
+   */
+  private long expiryWindow() {
+    if (expirySeconds > 0) {
+      return expirySeconds;
+    }
+    return (long) PERIOD_FLOOR * LEGACY_DEFAULT_UPDATE_PERIOD;
   }
 
   /**
@@ -151,19 +874,232 @@ public final class GlobalTimeState {
    * @return a record representing the current state of this object
    */
   public TimeKeeperGlobalRecord toTimeKeeperGlobalRecord() {
-    final Builder builder = TimeKeeperGlobalRecord.newBuilder().setLastCalculatedTime(currentTime);
+    final Builder builder = scratch.globalRecord().setLastCalculatedTime(currentTime);
     if (this.version.equals(TimeKeeperVersion.V_1_0)) {
       builder.addAllTimeHistory(history);
     }
     for (final Map.Entry<ByteString, Timestamp> e : participantTimes.entrySet()) {
-      final TimeKeeperParticipant part = TimeKeeperParticipant.newBuilder().setParticipantPublicKey(e.getKey())
-          .setLastCalculatedTime(e.getValue()).build();
-      builder.addParticipant(part);
+      final TimeKeeperParticipant.Builder participant = scratch.participant().setParticipantPublicKey(e.getKey())
+          .setLastCalculatedTime(e.getValue());
+      final int[] proposal = proposals.get(e.getKey());
+      if (proposal != null) {
+        participant.setAggregationValue(proposal[AGGREGATION_SETTING]).setExpirySeconds(proposal[EXPIRY_SETTING])
+            .setMaxParticipants(proposal[MAX_PARTICIPANTS_SETTING])
+            .setCheckpointSeconds(proposal[CHECKPOINT_SETTING]);
+      }
+      builder.addParticipant(participant);
+    }
+    if (compact) {
+      for (int entry = 0; entry < table.size(); entry++) {
+        builder.addParticipant(scratch.participant().setParticipantPublicKey(table.key(entry))
+            .setLastCalculatedTime(Timestamps.fromMicros(table.micros(entry)))
+            .setAggregationValue(table.setting(entry, AGGREGATION_SETTING))
+            .setExpirySeconds(table.setting(entry, EXPIRY_SETTING))
+            .setMaxParticipants(table.setting(entry, MAX_PARTICIPANTS_SETTING))
+            .setCheckpointSeconds(table.setting(entry, CHECKPOINT_SETTING)));
+      }
     }
     builder.setVersion(this.version);
+    builder.setAggregation(this.aggregation);
+    builder.setExpirySeconds(this.expirySeconds);
+    builder.setMaxParticipants(this.maxParticipants);
+    builder.setCheckpointSeconds(this.checkpointSeconds);
+    builder.setLastCheckpointSeconds(this.lastCheckpointSeconds);
+    builder.setCompactParticipants(this.compact);
     return builder.build();
   }
 
+  /**
+   * Serialize this state as a TimeKeeperGlobalRecord. A record with compact participants is written
+   * straight from the participant table, without building a message for each participant, and
+   * serializes exactly as {@link #toTimeKeeperGlobalRecord()} would.
+   *
+   * @return the serialized record
+   */
+  public ByteString toByteString() {
+    if (!compact) {
+      return toTimeKeeperGlobalRecord().toByteString();
+    }
+    final byte[] bytes = new byte[compactRecordSize()];
+    final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+    try {
+      output.writeMessage(TimeKeeperGlobalRecord.LASTCALCULATEDTIME_FIELD_NUMBER, currentTime);
+      if (this.version.equals(TimeKeeperVersion.V_1_0)) {
+        for (final Timestamp t : history) {
+          output.writeMessage(TimeKeeperGlobalRecord.TIMEHISTORY_FIELD_NUMBER, t);
+        }
+      }
+      for (int entry = 0; entry < table.size(); entry++) {
+        output.writeTag(TimeKeeperGlobalRecord.PARTICIPANT_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(participantSize(entry));
+        table.writeKey(output, TimeKeeperParticipant.PARTICIPANTPUBLICKEY_FIELD_NUMBER, entry);
+        final long micros = table.micros(entry);
+        output.writeTag(TimeKeeperParticipant.LASTCALCULATEDTIME_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(timestampSize(micros));
+        writeTimestampFields(output, micros);
+        for (int setting = 0; setting < SETTINGS; setting++) {
+          final int value = table.setting(entry, setting);
+          if (value != 0) {
+            output.writeInt32(SETTING_FIELDS[setting], value);
+          }
+        }
+      }
+      if (version.getNumber() != 0) {
+        output.writeEnum(TimeKeeperGlobalRecord.VERSION_FIELD_NUMBER, version.getNumber());
+      }
+      if (aggregation.getNumber() != 0) {
+        output.writeEnum(TimeKeeperGlobalRecord.AGGREGATION_FIELD_NUMBER, aggregation.getNumber());
+      }
+      if (expirySeconds != 0) {
+        output.writeInt32(TimeKeeperGlobalRecord.EXPIRYSECONDS_FIELD_NUMBER, expirySeconds);
+      }
+      if (maxParticipants != 0) {
+        output.writeInt32(TimeKeeperGlobalRecord.MAXPARTICIPANTS_FIELD_NUMBER, maxParticipants);
+      }
+      if (checkpointSeconds != 0) {
+        output.writeInt32(TimeKeeperGlobalRecord.CHECKPOINTSECONDS_FIELD_NUMBER, checkpointSeconds);
+      }
+      if (lastCheckpointSeconds != 0) {
+        output.writeInt64(TimeKeeperGlobalRecord.LASTCHECKPOINTSECONDS_FIELD_NUMBER, lastCheckpointSeconds);
+      }
+      output.writeBool(TimeKeeperGlobalRecord.COMPACTPARTICIPANTS_FIELD_NUMBER, true);
+      output.checkNoSpaceLeft();
+    } catch (IOException e) {
+      // the array is sized to the record, so it can neither overflow nor be left short
+      throw new IllegalStateException("Global record size miscalculated", e);
+    }
+    return UnsafeByteOperations.unsafeWrap(bytes);
+  }
+
+  /**
+   * The serialized size of the record written by {@link #toByteString()}, field by field.
+   */
+  private int compactRecordSize() {
+    int size = CodedOutputStream.computeMessageSize(TimeKeeperGlobalRecord.LASTCALCULATEDTIME_FIELD_NUMBER,
+        currentTime);
+    if (this.version.equals(TimeKeeperVersion.V_1_0)) {
+      for (final Timestamp t : history) {
+        size += CodedOutputStream.computeMessageSize(TimeKeeperGlobalRecord.TIMEHISTORY_FIELD_NUMBER, t);
+      }
+    }
+    final int participantTagSize = CodedOutputStream.computeTagSize(TimeKeeperGlobalRecord.PARTICIPANT_FIELD_NUMBER);
+    for (int entry = 0; entry < table.size(); entry++) {
+      final int participantSize = participantSize(entry);
+      size += participantTagSize + CodedOutputStream.computeUInt32SizeNoTag(participantSize) + participantSize;
+    }
+    if (version.getNumber() != 0) {
+      size += CodedOutputStream.computeEnumSize(TimeKeeperGlobalRecord.VERSION_FIELD_NUMBER, version.getNumber());
+    }
+    if (aggregation.getNumber() != 0) {
+      size += CodedOutputStream.computeEnumSize(TimeKeeperGlobalRecord.AGGREGATION_FIELD_NUMBER,
+          aggregation.getNumber());
+    }
+    if (expirySeconds != 0) {
+      size += CodedOutputStream.computeInt32Size(TimeKeeperGlobalRecord.EXPIRYSECONDS_FIELD_NUMBER, expirySeconds);
+    }
+    if (maxParticipants != 0) {
+      size += CodedOutputStream.computeInt32Size(TimeKeeperGlobalRecord.MAXPARTICIPANTS_FIELD_NUMBER,
+          maxParticipants);
+    }
+    if (checkpointSeconds != 0) {
+      size += CodedOutputStream.computeInt32Size(TimeKeeperGlobalRecord.CHECKPOINTSECONDS_FIELD_NUMBER,
+          checkpointSeconds);
+    }
+    if (lastCheckpointSeconds != 0) {
+      size += CodedOutputStream.computeInt64Size(TimeKeeperGlobalRecord.LASTCHECKPOINTSECONDS_FIELD_NUMBER,
+          lastCheckpointSeconds);
+    }
+    return size + CodedOutputStream.computeBoolSize(TimeKeeperGlobalRecord.COMPACTPARTICIPANTS_FIELD_NUMBER, true);
+  }
+
+  /**
+   * The serialized size of the TimeKeeperParticipant of an entry of the table, without its tag.
+   */
+  private int participantSize(final int entry) {
+    final int timestampSize = timestampSize(table.micros(entry));
+    int size = table.keyFieldSize(TimeKeeperParticipant.PARTICIPANTPUBLICKEY_FIELD_NUMBER, entry)
+        + CodedOutputStream.computeTagSize(TimeKeeperParticipant.LASTCALCULATEDTIME_FIELD_NUMBER)
+        + CodedOutputStream.computeUInt32SizeNoTag(timestampSize) + timestampSize;
+    for (int setting = 0; setting < SETTINGS; setting++) {
+      final int value = table.setting(entry, setting);
+      if (value != 0) {
+        size += CodedOutputStream.computeInt32Size(SETTING_FIELDS[setting], value);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * The serialized size of a Timestamp of the given microseconds, without its tag.
+   */
+  private static int timestampSize(final long micros) {
+    final long seconds = Math.floorDiv(micros, MICROS_PER_SECOND);
+    final int nanos = (int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO;
+    int size = 0;
+    if (seconds != 0) {
+      size += CodedOutputStream.computeInt64Size(Timestamp.SECONDS_FIELD_NUMBER, seconds);
+    }
+    if (nanos != 0) {
+      size += CodedOutputStream.computeInt32Size(Timestamp.NANOS_FIELD_NUMBER, nanos);
+    }
+    return size;
+  }
+
+  private static void writeTimestampFields(final CodedOutputStream output, final long micros) throws IOException {
+    final long seconds = Math.floorDiv(micros, MICROS_PER_SECOND);
+    final int nanos = (int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO;
+    if (seconds != 0) {
+      output.writeInt64(Timestamp.SECONDS_FIELD_NUMBER, seconds);
+    }
+    if (nanos != 0) {
+      output.writeInt32(Timestamp.NANOS_FIELD_NUMBER, nanos);
+    }
+  }
+
+  /**
+   * Return whether checkpoints are enabled and the current time has entered a bucket which has no
+   * checkpoint yet.
+   *
+   * @return true if a checkpoint should be written
+   */
+  public boolean isCheckpointDue() {
+    return checkpointSeconds > 0 && checkpointStart() > lastCheckpointSeconds;
+  }
+
+  /**
+   * Return the start of the checkpoint bucket holding the current time.
+   *
+   * @return the bucket start in seconds since the epoch
+   */
+  public long checkpointStart() {
+    if (checkpointSeconds <= 0) {
+      return currentTime.getSeconds();
+    }
+    return Math.floorDiv(currentTime.getSeconds(), checkpointSeconds) * checkpointSeconds;
+  }
+
+  /**
+   * Record that a checkpoint is written for the current bucket and return it.
+   *
+   * @return the checkpoint of the current time
+   */
+  public TimeKeeperCheckpoint markCheckpoint() {
+    lastCheckpointSeconds = checkpointStart();
+    changed = true;
+    return TimeKeeperCheckpoint.newBuilder().setBucketStart(Timestamps.fromSeconds(lastCheckpointSeconds))
+        .setGlobalTime(currentTime).setParticipantCount(participantCount()).build();
+  }
+
+  /**
+   * Return whether this state differs from the record it was created from. A state which was not
+   * created from a record is always changed.
+   *
+   * @return true if the record needs to be rewritten
+   */
+  public boolean isChanged() {
+    return changed;
+  }
+
   /**
    * Return the curent time.
    *
@@ -172,4 +1108,72 @@ public final class GlobalTimeState {
   public Timestamp getCurrentTime() {
     return currentTime;
   }
+
+  /**
+   * Return the time of the record this state was created from, before any updates.
+   *
+   * @return the previous time, EPOCH for a new record
+   */
+  public Timestamp getPreviousTime() {
+    return recordTime;
+  }
+
+  /**
+   * Return the number of participants currently in the record.
+   *
+   * @return the participant count
+   */
+  public int getParticipantCount() {
+    return participantCount();
+  }
+
+  /**
+   * Return the earliest time of the participants in the record.
+   *
+   * @return the earliest time, EPOCH if there are none
+   */
+  public Timestamp getMinParticipantTime() {
+    if (compact) {
+      if (table.size() == 0) {
+        return Timestamps.EPOCH;
+      }
+      long minMicros = table.micros(0);
+      for (int entry = 1; entry < table.size(); entry++) {
+        minMicros = Math.min(minMicros, table.micros(entry));
+      }
+      return Timestamps.fromMicros(minMicros);
+    }
+    Timestamp min = null;
+    for (final Timestamp t : participantTimes.values()) {
+      if (min == null || Timestamps.compare(t, min) < 0) {
+        min = t;
+      }
+    }
+    if (min == null) {
+      return Timestamps.EPOCH;
+    }
+    return min;
+  }
+
+  /**
+   * Return the latest time of the participants in the record.
+   *
+   * @return the latest time, EPOCH if there are none
+   */
+  public Timestamp getMaxParticipantTime() {
+    if (compact) {
+      long maxMicros = 0;
+      for (int entry = 0; entry < table.size(); entry++) {
+        maxMicros = Math.max(maxMicros, table.micros(entry));
+      }
+      return Timestamps.fromMicros(maxMicros);
+    }
+    Timestamp max = Timestamps.EPOCH;
+    for (final Timestamp t : participantTimes.values()) {
+      if (Timestamps.compare(t, max) > 0) {
+        max = t;
+      }
+    }
+    return max;
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import java.util.Arrays;
+
+/**
+ * The original median calculation of {@link TimestampUtils#median(java.util.Collection)}, carried
+ * over to primitive arrays. It sorts the values and, for an odd number of values greater than one,
+ * selects the entry just above the midpoint. It must remain bit for bit compatible with the
+ * Timestamp based implementation as existing chains depend upon it.
+ */
+final class MedianOrLastAggregation implements AggregationStrategy {
+
+  @Override
+  public long aggregate(final long[] values, final long[] weights, final int count) {
+    if (count == 1) {
+      return values[0];
+    }
+    Arrays.sort(values, 0, count);
+    final int half = count / 2;
+    if (count % 2 == 0) {
+      return (values[half - 1] + values[half]) / 2;
+    }
+    return values[half + 1];
+  }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A compact table of participant keys to times in microseconds and proposed settings, kept in
+ * insertion order.
+ *
+ * <p>
+ * The keys are copied into one shared byte array and the times and settings held in parallel
+ * arrays, with
+ * an open addressing index of the entries by the hash of their key. Removing entries closes the gap
+ * in place, so the order of the remaining entries never changes. A table is cleared and refilled
+ * from one apply to the next, and only grows, so once it has reached the size of the record nothing
+ * more is allocated.
+ * </p>
+ */
+final class ParticipantTable {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int KEY_BYTES_PER_ENTRY = 64;
+
+  private static final int HASH_SPREAD_BITS = 16;
+
+  private static final int HASH_MULTIPLIER = 31;
+
+  /**
+   * Number of settings each entry may propose.
+   */
+  static final int SETTINGS = 4;
+
+  private byte[] keyBytes = new byte[INITIAL_CAPACITY * KEY_BYTES_PER_ENTRY];
+  private int keyBytesUsed;
+  private int[] keyOffsets = new int[INITIAL_CAPACITY];
+  private int[] keyLengths = new int[INITIAL_CAPACITY];
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private long[] micros = new long[INITIAL_CAPACITY];
+  private int[] settings = new int[INITIAL_CAPACITY * SETTINGS];
+  private int size;
+
+  /**
+   * The index of each entry plus one at the slot of its hash or after, 0 for an empty slot. Kept at
+   * least twice the number of entries so that probes stay short.
+   */
+  private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+  /**
+   * Scratch for {@link #removeStalest(int)}, a heap of the entries to remove and a mark per entry.
+   */
+  private int[] heap = new int[INITIAL_CAPACITY];
+  private boolean[] marked = new boolean[INITIAL_CAPACITY];
+
+  /**
+   * Remove every entry.
+   */
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(slots, 0);
+    }
+    size = 0;
+    keyBytesUsed = 0;
+  }
+
+  /**
+   * Return the number of entries.
+   *
+   * @return the size
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Return the index of the entry of a key.
+   *
+   * @param key
+   *          the key
+   * @return the index, or -1 if there is no entry for the key
+   */
+  int indexOf(final ByteString key) {
+    final int hash = hash(key);
+    final int mask = slots.length - 1;
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      final int entry = slots[slot] - 1;
+      if (entry < 0) {
+        return -1;
+      }
+      if (hashes[entry] == hash && keyEquals(entry, key)) {
+        return entry;
+      }
+    }
+  }
+
+  /**
+   * Set the time of a key, adding an entry at the end with no settings proposed if there is none.
+   *
+   * @param key
+   *          the key
+   * @param time
+   *          the time in microseconds
+   * @return the index of the entry
+   */
+  int put(final ByteString key, final long time) {
+    return put(key, 0, key.size(), time);
+  }
+
+  /**
+   * Set the time of a key held in part of a larger byte string, such as a serialized record, as
+   * {@link #put(ByteString, long)} does, copying the key straight into the table.
+   *
+   * @param source
+   *          the bytes holding the key
+   * @param offset
+   *          the offset of the key in the bytes
+   * @param length
+   *          the length of the key
+   * @param time
+   *          the time in microseconds
+   * @return the index of the entry
+   */
+  int put(final ByteString source, final int offset, final int length, final long time) {
+    ensureCapacity(size + 1, keyBytesUsed + length);
+    // the key is copied after the keys of the table, and only kept there if it is a new one
+    source.copyTo(keyBytes, offset, keyBytesUsed, length);
+    final int hash = hash(keyBytes, keyBytesUsed, length);
+    final int mask = slots.length - 1;
+    int slot = hash & mask;
+    for (int entry = slots[slot] - 1; entry >= 0; entry = slots[slot] - 1) {
+      if (hashes[entry] == hash && Arrays.equals(keyBytes, keyOffsets[entry], keyOffsets[entry] + keyLengths[entry],
+          keyBytes, keyBytesUsed, keyBytesUsed + length)) {
+        micros[entry] = time;
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+    final int entry = size++;
+    keyOffsets[entry] = keyBytesUsed;
+    keyLengths[entry] = length;
+    keyBytesUsed += length;
+    hashes[entry] = hash;
+    micros[entry] = time;
+    Arrays.fill(settings, entry * SETTINGS, (entry + 1) * SETTINGS, 0);
+    slots[slot] = entry + 1;
+    return entry;
+  }
+
+  /**
+   * Return the time of an entry.
+   *
+   * @param entry
+   *          the index of the entry
+   * @return the time in microseconds
+   */
+  long micros(final int entry) {
+    return micros[entry];
+  }
+
+  /**
+   * Return a setting proposed by an entry.
+   *
+   * @param entry
+   *          the index of the entry
+   * @param setting
+   *          the index of the setting
+   * @return the value proposed, 0 for none
+   */
+  int setting(final int entry, final int setting) {
+    return settings[entry * SETTINGS + setting];
+  }
+
+  /**
+   * Set a setting proposed by an entry.
+   *
+   * @param entry
+   *          the index of the entry
+   * @param setting
+   *          the index of the setting
+   * @param value
+   *          the value proposed, 0 for none
+   */
+  void setSetting(final int entry, final int setting, final int value) {
+    settings[entry * SETTINGS + setting] = value;
+  }
+
+  /**
+   * Return a copy of the key of an entry.
+   *
+   * @param entry
+   *          the index of the entry
+   * @return the key
+   */
+  ByteString key(final int entry) {
+    return ByteString.copyFrom(keyBytes, keyOffsets[entry], keyLengths[entry]);
+  }
+
+  /**
+   * Return the serialized size of the key of an entry as a bytes field.
+   *
+   * @param fieldNumber
+   *          the field number
+   * @param entry
+   *          the index of the entry
+   * @return the size in bytes
+   */
+  int keyFieldSize(final int fieldNumber, final int entry) {
+    if (keyLengths[entry] == 0) {
+      return 0;
+    }
+    return CodedOutputStream.computeTagSize(fieldNumber)
+        + CodedOutputStream.computeUInt32SizeNoTag(keyLengths[entry]) + keyLengths[entry];
+  }
+
+  /**
+   * Write the key of an entry as a bytes field, omitting it if empty as for an unset proto3 field.
+   *
+   * @param output
+   *          the stream to write to
+   * @param fieldNumber
+   *          the field number
+   * @param entry
+   *          the index of the entry
+   * @throws IOException
+   *           if the stream cannot be written
+   */
+  void writeKey(final CodedOutputStream output, final int fieldNumber, final int entry) throws IOException {
+    if (keyLengths[entry] > 0) {
+      output.writeByteArray(fieldNumber, keyBytes, keyOffsets[entry], keyLengths[entry]);
+    }
+  }
+
+  /**
+   * Compare the keys of two entries as unsigned bytes, as
+   * {@link ByteString#unsignedLexicographicalComparator()} does.
+   *
+   * @param a
+   *          the index of the first entry
+   * @param b
+   *          the index of the second entry
+   * @return negative, zero or positive as the first key sorts before, with or after the second
+   */
+  int compareKeys(final int a, final int b) {
+    return Arrays.compareUnsigned(keyBytes, keyOffsets[a], keyOffsets[a] + keyLengths[a], keyBytes, keyOffsets[b],
+        keyOffsets[b] + keyLengths[b]);
+  }
+
+  /**
+   * Remove every entry with a time before a limit, keeping the others in order.
+   *
+   * @param limit
+   *          the earliest time kept in microseconds
+   * @return true if any entry was removed
+   */
+  boolean removeBefore(final long limit) {
+    int kept = 0;
+    int keptBytes = 0;
+    for (int entry = 0; entry < size; entry++) {
+      if (micros[entry] >= limit) {
+        keptBytes = move(entry, kept, keptBytes);
+        kept++;
+      }
+    }
+    return truncate(kept, keptBytes);
+  }
+
+  /**
+   * Remove a number of the entries with the earliest times, those with equal times in order of
+   * their keys, keeping the others in order. The entries are chosen in one pass over the table and
+   * removed in another.
+   *
+   * @param count
+   *          the number of entries to remove
+   * @return true if any entry was removed
+   */
+  boolean removeStalest(final int count) {
+    if (count <= 0) {
+      return false;
+    }
+    if (count >= size) {
+      return truncate(0, 0);
+    }
+    if (heap.length < count) {
+      heap = new int[Math.max(count, heap.length * 2)];
+    }
+    if (marked.length < size) {
+      marked = new boolean[Math.max(size, marked.length * 2)];
+    }
+    // a heap of the stalest entries seen so far, the least stale of them at the top
+    for (int entry = 0; entry < count; entry++) {
+      heap[entry] = entry;
+      siftUp(entry);
+    }
+    for (int entry = count; entry < size; entry++) {
+      if (isStaler(entry, heap[0])) {
+        heap[0] = entry;
+        siftDown(count);
+      }
+    }
+    Arrays.fill(marked, 0, size, false);
+    for (int i = 0; i < count; i++) {
+      marked[heap[i]] = true;
+    }
+    int kept = 0;
+    int keptBytes = 0;
+    for (int entry = 0; entry < size; entry++) {
+      if (!marked[entry]) {
+        keptBytes = move(entry, kept, keptBytes);
+        kept++;
+      }
+    }
+    return truncate(kept, keptBytes);
+  }
+
+  /**
+   * Return whether an entry has an earlier time than another, or the same time and a lower key.
+   */
+  private boolean isStaler(final int a, final int b) {
+    return micros[a] < micros[b] || micros[a] == micros[b] && compareKeys(a, b) < 0;
+  }
+
+  private void siftUp(final int from) {
+    int child = from;
+    while (child > 0) {
+      final int parent = (child - 1) / 2;
+      if (!isStaler(heap[parent], heap[child])) {
+        return;
+      }
+      swap(parent, child);
+      child = parent;
+    }
+  }
+
+  private void siftDown(final int heapSize) {
+    int parent = 0;
+    for (int child = 1; child < heapSize; child = parent * 2 + 1) {
+      if (child + 1 < heapSize && isStaler(heap[child], heap[child + 1])) {
+        child++;
+      }
+      if (!isStaler(heap[parent], heap[child])) {
+        return;
+      }
+      swap(parent, child);
+      parent = child;
+    }
+  }
+
+  private void swap(final int i, final int j) {
+    final int entry = heap[i];
+    heap[i] = heap[j];
+    heap[j] = entry;
+  }
+
+  /**
+   * Move an entry down to a lower index, its key to the given offset, returning the end of its key.
+   */
+  private int move(final int from, final int to, final int keyOffset) {
+    if (from != to) {
+      System.arraycopy(keyBytes, keyOffsets[from], keyBytes, keyOffset, keyLengths[from]);
+      keyOffsets[to] = keyOffset;
+      keyLengths[to] = keyLengths[from];
+      hashes[to] = hashes[from];
+      micros[to] = micros[from];
+      System.arraycopy(settings, from * SETTINGS, settings, to * SETTINGS, SETTINGS);
+    }
+    return keyOffset + keyLengths[to];
+  }
+
+  private boolean truncate(final int kept, final int keptBytes) {
+    if (kept == size) {
+      return false;
+    }
+    size = kept;
+    keyBytesUsed = keptBytes;
+    Arrays.fill(slots, 0);
+    for (int entry = 0; entry < size; entry++) {
+      index(entry);
+    }
+    return true;
+  }
+
+  private void index(final int entry) {
+    final int mask = slots.length - 1;
+    int slot = hashes[entry] & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = entry + 1;
+  }
+
+  private void ensureCapacity(final int entries, final int bytes) {
+    if (bytes > keyBytes.length) {
+      keyBytes = Arrays.copyOf(keyBytes, Math.max(bytes, keyBytes.length * 2));
+    }
+    if (entries > keyOffsets.length) {
+      final int capacity = Math.max(entries, keyOffsets.length * 2);
+      keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+      keyLengths = Arrays.copyOf(keyLengths, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+      micros = Arrays.copyOf(micros, capacity);
+      settings = Arrays.copyOf(settings, capacity * SETTINGS);
+    }
+    if (entries * 2 > slots.length) {
+      slots = new int[Integer.highestOneBit(entries * 2) * 2];
+      for (int entry = 0; entry < size; entry++) {
+        index(entry);
+      }
+    }
+  }
+
+  private boolean keyEquals(final int entry, final ByteString key) {
+    final int length = keyLengths[entry];
+    if (key.size() != length) {
+      return false;
+    }
+    final int offset = keyOffsets[entry];
+    for (int i = 0; i < length; i++) {
+      if (keyBytes[offset + i] != key.byteAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(final ByteString key) {
+    int h = 1;
+    for (int i = 0; i < key.size(); i++) {
+      h = HASH_MULTIPLIER * h + key.byteAt(i);
+    }
+    return h ^ (h >>> HASH_SPREAD_BITS);
+  }
+
+  /**
+   * Return the same hash of a key held in an array as {@link #hash(ByteString)} does.
+   */
+  private static int hash(final byte[] bytes, final int offset, final int length) {
+    int h = 1;
+    for (int i = offset; i < offset + length; i++) {
+      h = HASH_MULTIPLIER * h + bytes[i];
+    }
+    return h ^ (h >>> HASH_SPREAD_BITS);
+  }
+}
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperHistoryMode;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord.Builder;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
@@ -25,6 +26,12 @@ import com.google.protobuf.Timestamp;
 
 /**
  * Handles the time values of a given participant.
+ *
+ * <p>
+ * By default a participant record keeps the history of the times it was sent. In the SUMMARY
+ * history modes it keeps only the update count, the first and last times sent and, with
+ * SUMMARY_SKETCH, a histogram of the intervals between updates, since only their maximum is used.
+ * </p>
  */
 public final class ParticipantTimeState {
 
@@ -35,6 +42,11 @@ public final class ParticipantTimeState {
 
   private static final int DEFAULT_MAX_DEVIATION = 200;
 
+  /**
+   * Number of log2 buckets of the interval sketch, the last holding all longer intervals.
+   */
+  public static final int SKETCH_BUCKETS = 8;
+
   private Timestamp currentTime;
 
   private List<Timestamp> history;
@@ -45,6 +57,24 @@ public final class ParticipantTimeState {
 
   private int maxDeviation;
 
+  /**
+   * Whether maxDeviation was sent explicitly, in which case it is stored even when it equals the
+   * default so that it goes on being enforced.
+   */
+  private boolean maxDeviationSet;
+
+  private TimeKeeperHistoryMode historyMode;
+
+  private long updateCount;
+
+  private Timestamp firstSeen;
+
+  private Timestamp lastSeen;
+
+  private long[] sketch;
+
+  private final ApplyScratch scratch;
+
   /**
    * Create a new ParticipantTimeState based on the provided record.
    *
@@ -52,12 +82,43 @@ public final class ParticipantTimeState {
    *          the record of this participant
    */
   public ParticipantTimeState(final TimeKeeperRecord tkRecord) {
+    this(tkRecord, new ApplyScratch());
+  }
+
+  /**
+   * Create a new ParticipantTimeState based on the provided record, building with the builders of
+   * the calling thread.
+   *
+   * @param tkRecord
+   *          the record of this participant
+   * @param applyScratch
+   *          the builders of the calling thread
+   */
+  ParticipantTimeState(final TimeKeeperRecord tkRecord, final ApplyScratch applyScratch) {
+    this.scratch = applyScratch;
     this.history = new ArrayList<>();
     this.currentTime = tkRecord.getLastCalculatedTime();
     history.addAll(tkRecord.getTimeHistoryList());
     this.version = tkRecord.getVersion();
     this.maxDeviation = DEFAULT_MAX_DEVIATION;
     this.maxHistory = DEFAULT_MAX_HISTORY;
+    if (tkRecord.getMaxDeviation() > 0) {
+      // retain the deviation so that it continues to be enforced
+      this.maxDeviation = tkRecord.getMaxDeviation();
+      this.maxDeviationSet = true;
+    }
+    this.historyMode = tkRecord.getHistoryMode();
+    if (isSummary()) {
+      this.updateCount = tkRecord.getUpdateCount();
+      this.firstSeen = tkRecord.getFirstSeen();
+      this.lastSeen = tkRecord.getLastSeen();
+    }
+    if (historyMode == TimeKeeperHistoryMode.SUMMARY_SKETCH) {
+      this.sketch = new long[SKETCH_BUCKETS];
+      for (int i = 0; i < Math.min(SKETCH_BUCKETS, tkRecord.getIntervalSketchCount()); i++) {
+        sketch[i] = tkRecord.getIntervalSketch(i);
+      }
+    }
   }
 
   /**
@@ -67,9 +128,24 @@ public final class ParticipantTimeState {
    *          the update to initialize with
    */
   public ParticipantTimeState(final TimeKeeperUpdate update) {
+    this(update, new ApplyScratch());
+  }
+
+  /**
+   * Create an initial state from an individual TimeKeeperUpdate, building with the builders of the
+   * calling thread.
+   *
+   * @param update
+   *          the update to initialize with
+   * @param applyScratch
+   *          the builders of the calling thread
+   */
+  ParticipantTimeState(final TimeKeeperUpdate update, final ApplyScratch applyScratch) {
+    this.scratch = applyScratch;
     currentTime = update.getTimeUpdate();
     history = new ArrayList<>(List.of(update.getTimeUpdate()));
     this.version = update.getVersion();
+    this.historyMode = TimeKeeperHistoryMode.HISTORY_UNSET;
 
     if (TimeKeeperVersion.V_1_0.equals(this.version)) {
       this.maxHistory = DEFAULT_MAX_HISTORY;
@@ -77,6 +153,8 @@ public final class ParticipantTimeState {
     } else {
       this.maxHistory = update.getMaxHistory();
       this.maxDeviation = update.getMaxDeviation();
+      this.maxDeviationSet = update.getMaxDeviation() > 0;
+      setHistoryMode(update.getHistoryMode());
     }
   }
 
@@ -99,23 +177,95 @@ public final class ParticipantTimeState {
       }
     } else {
       // then this is other than TimeKeeperVersion.V_1_0 update
-      if (this.version.equals(TimeKeeperVersion.V_1_0)) {
+      if (this.version.equals(TimeKeeperVersion.V_1_0)
+          || this.version == TimeKeeperVersion.V_2_0 && update.getVersion() == TimeKeeperVersion.V_3_0) {
         // upgrade the record
         this.version = update.getVersion();
       }
       if (update.getMaxDeviation() > 0) {
         this.maxDeviation = update.getMaxDeviation();
+        this.maxDeviationSet = true;
       }
       if (update.getMaxHistory() > 0) {
         this.maxHistory = update.getMaxHistory();
       }
+      if (update.getHistoryMode() != TimeKeeperHistoryMode.HISTORY_UNSET) {
+        setHistoryMode(update.getHistoryMode());
+      }
+    }
+    if (isSummary()) {
+      summarize(update.getTimeUpdate());
+      currentTime = max(currentTime, List.of(update.getTimeUpdate()));
+    } else {
+      history.add(update.getTimeUpdate());
+      currentTime = max(currentTime, history);
+      pruneHistory();
     }
-    history.add(update.getTimeUpdate());
-    currentTime = TimestampUtils.max(currentTime, history);
-    pruneHistory();
 
   }
 
+  private Timestamp max(final Timestamp last, final List<Timestamp> timestamps) {
+    if (this.version == TimeKeeperVersion.V_3_0) {
+      return TimestampUtils.maxMicros(last, timestamps);
+    }
+    return TimestampUtils.max(last, timestamps);
+  }
+
+  private boolean isSummary() {
+    return historyMode == TimeKeeperHistoryMode.SUMMARY || historyMode == TimeKeeperHistoryMode.SUMMARY_SKETCH;
+  }
+
+  /**
+   * Switch history mode, carrying over what the new mode keeps from the times held so far.
+   */
+  private void setHistoryMode(final TimeKeeperHistoryMode mode) {
+    if (mode == historyMode) {
+      return;
+    }
+    final boolean wasSummary = isSummary();
+    historyMode = mode;
+    if (isSummary() && !wasSummary) {
+      updateCount = history.size();
+      if (!history.isEmpty()) {
+        firstSeen = history.get(0);
+        lastSeen = history.get(history.size() - 1);
+      }
+      history = new ArrayList<>();
+    } else if (!isSummary() && wasSummary) {
+      updateCount = 0;
+      firstSeen = null;
+      lastSeen = null;
+    }
+    if (mode == TimeKeeperHistoryMode.SUMMARY_SKETCH) {
+      sketch = new long[SKETCH_BUCKETS];
+    }
+  }
+
+  private void summarize(final Timestamp time) {
+    if (historyMode == TimeKeeperHistoryMode.SUMMARY_SKETCH && lastSeen != null) {
+      sketch[sketchBucket(time.getSeconds() - lastSeen.getSeconds())]++;
+    }
+    if (firstSeen == null) {
+      firstSeen = time;
+    }
+    lastSeen = time;
+    updateCount++;
+  }
+
+  /**
+   * The sketch bucket of an interval: 0 for none or negative, then 1, 2-3, 4-7 and so on, with the
+   * last bucket holding everything longer.
+   *
+   * @param intervalSeconds seconds between two updates
+   * @return the bucket index
+   */
+  static int sketchBucket(final long intervalSeconds) {
+    if (intervalSeconds <= 0) {
+      return 0;
+    }
+    return Math.min(SKETCH_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(intervalSeconds));
+  }
+
   private void pruneHistory() {
     if (history.size() > maxHistory) {
       history = history.subList(history.size() - maxHistory, history.size());
@@ -128,15 +278,24 @@ public final class ParticipantTimeState {
    * @return the record
    */
   public TimeKeeperRecord toTimeKeeperRecord() {
-    Builder builder = TimeKeeperRecord.newBuilder().setLastCalculatedTime(currentTime).addAllTimeHistory(history);
+    Builder builder = scratch.record().setLastCalculatedTime(currentTime).addAllTimeHistory(history);
     if (!version.equals(TimeKeeperVersion.V_1_0)) {
       builder = builder.setVersion(this.version);
-      if (maxDeviation != DEFAULT_MAX_DEVIATION) {
+      if (maxDeviationSet) {
         builder = builder.setMaxDeviation(maxDeviation);
       }
       if (maxHistory != DEFAULT_MAX_HISTORY) {
         builder = builder.setMaxHistory(maxHistory);
       }
+      builder.setHistoryMode(historyMode);
+      if (isSummary()) {
+        builder.setUpdateCount(updateCount).setFirstSeen(firstSeen).setLastSeen(lastSeen);
+      }
+      if (historyMode == TimeKeeperHistoryMode.SUMMARY_SKETCH) {
+        for (final long count : sketch) {
+          builder.addIntervalSketch((int) Math.min(Integer.MAX_VALUE, count));
+        }
+      }
     }
     return builder.build();
   }
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+/**
+ * In place, allocation free selection over primitive arrays.
+ */
+final class QuickSelect {
+
+  /**
+   * Partially order {@code values} between {@code from} and {@code to} inclusive so that the entry
+   * at index {@code k} is the one which would be there if the range were sorted, everything before
+   * it is no greater and everything after it is no smaller.
+   *
+   * @param values
+   *          the values to reorder
+   * @param weights
+   *          weights to reorder in step with the values, may be null
+   * @param from
+   *          the first index of the range
+   * @param to
+   *          the last index of the range
+   * @param k
+   *          the index to select
+   * @return the selected value
+   */
+  static long select(final long[] values, final long[] weights, final int from, final int to, final int k) {
+    int lo = from;
+    int hi = to;
+    while (hi > lo) {
+      final long pivot = pivot(values, lo, hi);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (values[i] < pivot) {
+          i++;
+        }
+        while (values[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(values, weights, i, j);
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        break;
+      }
+    }
+    return values[k];
+  }
+
+  /**
+   * Return the lower weighted median of the first {@code count} values, that is the smallest value
+   * for which the total weight of the values no greater than it is at least half of the total
+   * weight.
+   *
+   * @param values
+   *          the values to reorder
+   * @param weights
+   *          the non-negative weights, reordered in step with the values
+   * @param count
+   *          the number of entries to consider
+   * @param totalWeight
+   *          the sum of the first {@code count} weights, which must be greater than zero
+   * @return the weighted median
+   */
+  static long weightedMedian(final long[] values, final long[] weights, final int count, final long totalWeight) {
+    int lo = 0;
+    int hi = count - 1;
+    long below = 0;
+    while (hi > lo) {
+      final long pivot = pivot(values, lo, hi);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (values[i] < pivot) {
+          i++;
+        }
+        while (values[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(values, weights, i, j);
+          i++;
+          j--;
+        }
+      }
+      final long leftWeight = sum(weights, lo, j);
+      if (2 * (below + leftWeight) >= totalWeight) {
+        hi = j;
+        continue;
+      }
+      final long pivotWeight = sum(weights, j + 1, i - 1);
+      if (i - 1 > j && 2 * (below + leftWeight + pivotWeight) >= totalWeight) {
+        return pivot;
+      }
+      below += leftWeight + pivotWeight;
+      lo = i;
+    }
+    return values[lo];
+  }
+
+  private static long sum(final long[] weights, final int from, final int to) {
+    long total = 0;
+    for (int i = from; i <= to; i++) {
+      total += weights[i];
+    }
+    return total;
+  }
+
+  private static long pivot(final long[] values, final int lo, final int hi) {
+    final long a = values[lo];
+    final long b = values[lo + (hi - lo) / 2];
+    final long c = values[hi];
+    return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+  }
+
+  private static void swap(final long[] values, final long[] weights, final int i, final int j) {
+    final long v = values[i];
+    values[i] = values[j];
+    values[j] = v;
+    if (weights != null) {
+      final long w = weights[i];
+      weights[i] = weights[j];
+      weights[j] = w;
+    }
+  }
+
+  private QuickSelect() {
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+/**
+ * The median of the participant times, found in expected linear time by quickselect rather than by
+ * sorting. An even number of values yields the floor of the mean of the two middle values.
+ */
+final class QuickSelectMedianAggregation implements AggregationStrategy {
+
+  @Override
+  public long aggregate(final long[] values, final long[] weights, final int count) {
+    final int half = count / 2;
+    final long upper = QuickSelect.select(values, null, 0, count - 1, half);
+    if (count % 2 != 0) {
+      return upper;
+    }
+    // everything below half is now no greater than upper, so its maximum is the lower median
+    long lower = values[0];
+    for (int i = 1; i < half; i++) {
+      lower = Math.max(lower, values[i]);
+    }
+    return lower + (upper - lower) / 2;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+import java.io.IOException;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Reads individual scalar fields from serialized records without parsing the whole message,
+ * skipping over repeated fields such as the time history.
+ */
+public final class RecordFields {
+
+  /**
+   * Return the seconds of a Timestamp field of a serialized message, without parsing the rest of
+   * the message.
+   *
+   * @param message
+   *          the serialized message, may be null
+   * @param fieldNumber
+   *          the field number of the Timestamp
+   * @return the seconds of the timestamp, or zero if the message or field is absent
+   * @throws InvalidProtocolBufferException
+   *           if the message is malformed
+   */
+  public static long timestampSeconds(final ByteString message, final int fieldNumber)
+      throws InvalidProtocolBufferException {
+    if (message == null || message.isEmpty()) {
+      return 0;
+    }
+    try {
+      final CodedInputStream input = message.newCodedInput();
+      int tag = input.readTag();
+      while (tag != 0) {
+        if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+            && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+          // records are only ever written with a single occurrence, so stop at the first
+          input.pushLimit(input.readRawVarint32());
+          return readSeconds(input);
+        }
+        input.skipField(tag);
+        tag = input.readTag();
+      }
+      return 0;
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+  }
+
+  /**
+   * Return an int32 field of a serialized message, without parsing the rest of the message.
+   *
+   * @param message
+   *          the serialized message, may be null
+   * @param fieldNumber
+   *          the field number
+   * @return the value of the field, or zero if the message or field is absent
+   * @throws InvalidProtocolBufferException
+   *           if the message is malformed
+   */
+  public static int int32Field(final ByteString message, final int fieldNumber) throws InvalidProtocolBufferException {
+    if (message == null || message.isEmpty()) {
+      return 0;
+    }
+    try {
+      final CodedInputStream input = message.newCodedInput();
+      int value = 0;
+      int tag = input.readTag();
+      while (tag != 0) {
+        if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+            && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT) {
+          value = input.readInt32();
+        } else {
+          input.skipField(tag);
+        }
+        tag = input.readTag();
+      }
+      return value;
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+  }
+
+  private static long readSeconds(final CodedInputStream input) throws IOException {
+    long seconds = 0;
+    int tag = input.readTag();
+    while (tag != 0) {
+      if (WireFormat.getTagFieldNumber(tag) == Timestamp.SECONDS_FIELD_NUMBER
+          && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT) {
+        seconds = input.readInt64();
+      } else {
+        input.skipField(tag);
+      }
+      tag = input.readTag();
+    }
+    return seconds;
+  }
+
+  private RecordFields() {
+  }
+}
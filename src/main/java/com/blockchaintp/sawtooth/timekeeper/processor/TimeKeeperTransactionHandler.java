@@ -16,16 +16,16 @@ package com.blockchaintp.sawtooth.timekeeper.processor;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.blockchaintp.sawtooth.timekeeper.EventConstants;
 import com.blockchaintp.sawtooth.timekeeper.Namespace;
 import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperEvent;
-import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
 import com.blockchaintp.utils.VersionedEnvelopeUtils;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -54,6 +54,12 @@ public final class TimeKeeperTransactionHandler implements TransactionHandler {
   private final String namespace;
   private final String version;
 
+  /**
+   * Builders and buffers for each thread applying transactions, so that an apply allocates little
+   * beyond the messages it parses and writes.
+   */
+  private final ThreadLocal<ApplyScratch> scratch = ThreadLocal.withInitial(ApplyScratch::new);
+
   /**
    * Default constructor.
    *
@@ -84,43 +90,69 @@ public final class TimeKeeperTransactionHandler implements TransactionHandler {
       throws InvalidTransactionException, InternalError {
     basicRequestChecks(txRequest);
     final String signerPublicKey = txRequest.getHeader().getSignerPublicKey();
+    final ApplyScratch applyScratch = scratch.get();
     try {
       final ByteString unwrappedPayload = VersionedEnvelopeUtils.unwrap(txRequest.getPayload());
       final TimeKeeperUpdate update = TimeKeeperUpdate.parseFrom(unwrappedPayload);
 
-      final String partRecordAddr = Namespace.makeAddress(this.namespace, signerPublicKey);
+      // each domain has its own records, so updates to different domains never share an address
+      final String domain = update.getDomain();
+      final String partRecordAddr = Namespace.makeParticipantAddress(domain, signerPublicKey);
+      final String globalRecordAddr = Namespace.makeGlobalRecordAddress(domain);
       LOGGER.debug("Getting global record state");
-      final Map<String, ByteString> sourceData = state
-          .getState(Arrays.asList(partRecordAddr, Namespace.TIMEKEEPER_GLOBAL_RECORD));
+      final List<String> readAddresses = applyScratch.addresses();
+      readAddresses.add(partRecordAddr);
+      readAddresses.add(globalRecordAddr);
+      final Map<String, ByteString> sourceData = state.getState(readAddresses);
+
+      try {
+        DeviationCheck.check(update, sourceData.get(partRecordAddr), sourceData.get(globalRecordAddr));
+      } catch (TimeKeeperException e) {
+        throw new InvalidTransactionException(e.getMessage());
+      }
 
       ParticipantTimeState partTimeState;
       if (sourceData.containsKey(partRecordAddr)) {
         final TimeKeeperRecord myRecord = TimeKeeperRecord.parseFrom(sourceData.get(partRecordAddr));
-        partTimeState = new ParticipantTimeState(myRecord);
+        partTimeState = new ParticipantTimeState(myRecord, applyScratch);
         try {
           partTimeState.addUpdate(update);
         } catch (TimeKeeperException e) {
           throw new InvalidTransactionException(e.getMessage());
         }
       } else {
-        partTimeState = new ParticipantTimeState(update);
+        partTimeState = new ParticipantTimeState(update, applyScratch);
       }
       final TimeKeeperRecord participantRecord = partTimeState.toTimeKeeperRecord();
 
       GlobalTimeState globalTimeState;
-      if (sourceData.containsKey(Namespace.TIMEKEEPER_GLOBAL_RECORD)) {
-        final TimeKeeperGlobalRecord globalRecord = TimeKeeperGlobalRecord
-            .parseFrom(sourceData.get(Namespace.TIMEKEEPER_GLOBAL_RECORD));
-        globalTimeState = new GlobalTimeState(globalRecord);
+      if (sourceData.containsKey(globalRecordAddr)) {
+        globalTimeState = GlobalTimeState.parseFrom(sourceData.get(globalRecordAddr), applyScratch);
       } else {
-        globalTimeState = new GlobalTimeState();
+        globalTimeState = new GlobalTimeState(applyScratch);
       }
       globalTimeState.addUpdate(ByteString.copyFromUtf8(signerPublicKey), update);
-      final TimeKeeperGlobalRecord newGlobalRecord = globalTimeState.toTimeKeeperGlobalRecord();
-
-      setTimeState(state, partRecordAddr, participantRecord, newGlobalRecord);
+      Map<String, ByteString> checkpoints = Map.of();
+      if (globalTimeState.isCheckpointDue()) {
+        final String checkpointAddr = Namespace.makeCheckpointAddress(domain, globalTimeState.checkpointStart());
+        // submitters which predate checkpoints cannot write them, the next one which can catches up
+        if (isOutput(txRequest.getHeader().getOutputsList(), checkpointAddr)) {
+          checkpoints = Map.of(checkpointAddr, globalTimeState.markCheckpoint().toByteString());
+        }
+      }
+      // processors which predate V_3_0 rewrite the global record and send an event for every
+      // update, so the write is only skipped for updates they cannot process
+      if (update.getVersion() == TimeKeeperVersion.V_3_0 && !globalTimeState.isChanged()) {
+        // neither this participant's time nor the global time moved, the global record would be
+        // rewritten as is and the event would repeat the last one
+        LOGGER.debug("Global time unchanged, updating participant record only");
+        setParticipantState(state, applyScratch, partRecordAddr, participantRecord);
+        return;
+      }
+      setTimeState(state, applyScratch, partRecordAddr, participantRecord, globalRecordAddr,
+          globalTimeState.toByteString(), checkpoints);
 
-      sendTimeEvent(state, globalTimeState);
+      sendTimeEvent(state, applyScratch, domain, globalTimeState);
     } catch (InvalidProtocolBufferException exc) {
       final InvalidTransactionException ite = new InvalidTransactionException(
           "Transaction has bad format " + exc.getMessage());
@@ -129,21 +161,52 @@ public final class TimeKeeperTransactionHandler implements TransactionHandler {
     }
   }
 
-  private void setTimeState(final Context state, final String recordAddr, final TimeKeeperRecord tkRecord,
-      final TimeKeeperGlobalRecord globalRecord) throws InternalError, InvalidTransactionException {
-    final Map<String, ByteString> setMap = new HashMap<>();
-    setMap.put(Namespace.TIMEKEEPER_GLOBAL_RECORD, globalRecord.toByteString());
+  private void setTimeState(final Context state, final ApplyScratch applyScratch, final String recordAddr,
+      final TimeKeeperRecord tkRecord, final String globalRecordAddr, final ByteString globalRecord,
+      final Map<String, ByteString> checkpoints) throws InternalError, InvalidTransactionException {
+    final Map<String, ByteString> setMap = applyScratch.writes();
+    setMap.putAll(checkpoints);
+    setMap.put(globalRecordAddr, globalRecord);
+    setMap.put(recordAddr, tkRecord.toByteString());
+    state.setState(setMap.entrySet());
+  }
+
+  /**
+   * Return whether the address falls under one of the output prefixes the transaction declared.
+   */
+  private boolean isOutput(final List<String> outputs, final String address) {
+    for (final String output : outputs) {
+      if (address.startsWith(output)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void setParticipantState(final Context state, final ApplyScratch applyScratch, final String recordAddr,
+      final TimeKeeperRecord tkRecord) throws InternalError, InvalidTransactionException {
+    final Map<String, ByteString> setMap = applyScratch.writes();
     setMap.put(recordAddr, tkRecord.toByteString());
     state.setState(setMap.entrySet());
   }
 
-  private void sendTimeEvent(final Context state, final GlobalTimeState globalTimeState) throws InternalError {
+  private void sendTimeEvent(final Context state, final ApplyScratch applyScratch, final String domain,
+      final GlobalTimeState globalTimeState) throws InternalError {
     final Timestamp currentGlobalTs = globalTimeState.getCurrentTime();
-    final TimeKeeperEvent updateEventData = TimeKeeperEvent.newBuilder().setTimeUpdate(currentGlobalTs).build();
+    final TimeKeeperEvent updateEventData = applyScratch.event().setTimeUpdate(currentGlobalTs).setDomain(domain)
+        .setParticipantCount(globalTimeState.getParticipantCount())
+        .setMinParticipantTime(globalTimeState.getMinParticipantTime())
+        .setMaxParticipantTime(globalTimeState.getMaxParticipantTime())
+        .setPreviousTime(globalTimeState.getPreviousTime()).build();
 
-    final Map<String, String> attrMap = new HashMap<>();
+    final Map<String, String> attrMap = applyScratch.attributes();
     attrMap.put(EventConstants.TIMEKEEPER_MICROS_ATTRIBUTE, Long.toString(Timestamps.toMicros(currentGlobalTs)));
-    LOGGER.debug("Global time now={}", new Date(Timestamps.toMillis(currentGlobalTs)));
+    if (!domain.isEmpty()) {
+      attrMap.put(EventConstants.TIMEKEEPER_DOMAIN_ATTRIBUTE, domain);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Global time now={}", new Date(Timestamps.toMillis(currentGlobalTs)));
+    }
     state.addEvent(EventConstants.TIMEKEEPER_EVENT_SUBJECT, attrMap.entrySet(), updateEventData.toByteString());
   }
 
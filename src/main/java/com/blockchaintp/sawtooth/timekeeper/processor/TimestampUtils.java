@@ -54,6 +54,24 @@ public final class TimestampUtils {
     return Timestamp.newBuilder().setSeconds(maxSeconds).build();
   }
 
+  /**
+   * Return the maximum of a previous timestamp and a list of timestamps, keeping microseconds
+   * rather than only whole seconds.
+   *
+   * @param currentMax
+   *          the current timestamp
+   * @param timestamps
+   *          the list of timestamps
+   * @return the maximum timestamp, truncated to the microsecond
+   */
+  public static Timestamp maxMicros(final Timestamp currentMax, final List<Timestamp> timestamps) {
+    long maxMicros = Timestamps.toMicros(currentMax);
+    for (final Timestamp ts : timestamps) {
+      maxMicros = Math.max(maxMicros, Timestamps.toMicros(ts));
+    }
+    return Timestamps.fromMicros(maxMicros);
+  }
+
   /**
    * Return the median of a list of timestamps.
    *
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+/**
+ * The mean of the participant times after discarding the lowest and highest fifth of them. This is
+ * less sensitive to a minority of bad clocks than a plain mean while still following the bulk of
+ * the participants more smoothly than a median.
+ */
+final class TrimmedMeanAggregation implements AggregationStrategy {
+
+  /**
+   * One in this many values is trimmed from each end.
+   */
+  private static final int TRIM_DIVISOR = 5;
+
+  @Override
+  public long aggregate(final long[] values, final long[] weights, final int count) {
+    final int trim = count / TRIM_DIVISOR;
+    final int first = trim;
+    final int last = count - 1 - trim;
+    if (trim > 0) {
+      QuickSelect.select(values, null, 0, count - 1, first);
+      QuickSelect.select(values, null, first, count - 1, last);
+    }
+    long base = values[first];
+    for (int i = first + 1; i <= last; i++) {
+      base = Math.min(base, values[i]);
+    }
+    // sum offsets from the smallest kept value so that the total cannot overflow
+    long offsets = 0;
+    for (int i = first; i <= last; i++) {
+      offsets += values[i] - base;
+    }
+    return base + offsets / (last - first + 1);
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.processor;
+
+/**
+ * The lower weighted median of the participant times. Falls back to the plain median when no value
+ * carries any weight.
+ */
+final class WeightedMedianAggregation implements AggregationStrategy {
+
+  private final AggregationStrategy unweighted = new QuickSelectMedianAggregation();
+
+  @Override
+  public long aggregate(final long[] values, final long[] weights, final int count) {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      total += weights[i];
+    }
+    if (total <= 0) {
+      return unweighted.aggregate(values, weights, count);
+    }
+    return QuickSelect.weightedMedian(values, weights, count, total);
+  }
+}
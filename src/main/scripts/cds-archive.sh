@@ -0,0 +1,25 @@
+#!/bin/sh
+# Copyright © 2023 Paravela Limited
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Record the classes loaded by a warm-up run and dump them to an AppCDS archive, which
+# entrypoint.sh uses when present. Run from the unpacked assembly with the JVM it will run on.
+
+set -e
+
+JAR=$(ls timekeeper-*.jar)
+
+java -Xshare:off -XX:DumpLoadedClassList=timekeeper.classlist -jar ${JAR} --warmup-only
+java -Xshare:dump -XX:SharedClassListFile=timekeeper.classlist -XX:SharedArchiveFile=timekeeper.jsa -cp ${JAR}
+rm -f timekeeper.classlist
@@ -13,5 +13,9 @@
 # See the License for the specific language governing permissions and
 # limitations under the License.
 
+CDS_ARGS=
+if [ -f timekeeper.jsa ]; then
+  CDS_ARGS="-XX:SharedArchiveFile=timekeeper.jsa -Xshare:auto"
+fi
 
-java ${JAVA_ARGS} -jar timekeeper-*.jar $@
+java ${CDS_ARGS} ${JAVA_ARGS} -jar timekeeper-*.jar $@
@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.blockchaintp.sawtooth.timekeeper.processor.AggregationStrategies;
+import com.blockchaintp.sawtooth.timekeeper.processor.AggregationStrategy;
+import com.blockchaintp.sawtooth.timekeeper.processor.GlobalTimeState;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimestampUtils;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class AggregationStrategyTest {
+
+  private final Random random = new Random(42);
+
+  long[] randomTimes(int count) {
+    long[] times = new long[count];
+    for (int i = 0; i < count; i++) {
+      times[i] = 1_600_000_000L + random.nextInt(50);
+    }
+    return times;
+  }
+
+  long[] randomWeights(int count) {
+    long[] weights = new long[count];
+    for (int i = 0; i < count; i++) {
+      weights[i] = random.nextInt(5);
+    }
+    return weights;
+  }
+
+  @Test
+  public void testMedianOrLastMatchesTimestampUtils() {
+    AggregationStrategy strategy = AggregationStrategies.forType(TimeKeeperAggregation.MEDIAN_OR_LAST);
+    for (int count = 1; count < 50; count++) {
+      long[] times = randomTimes(count);
+      List<Timestamp> timestamps = new ArrayList<>();
+      for (long t : times) {
+        timestamps.add(Timestamps.fromSeconds(t));
+      }
+      assertEquals(TimestampUtils.median(timestamps).getSeconds(), strategy.aggregate(times, new long[count], count));
+    }
+    assertEquals(strategy, AggregationStrategies.forType(TimeKeeperAggregation.AGGREGATION_UNSET));
+  }
+
+  @Test
+  public void testQuickSelectMedian() {
+    AggregationStrategy strategy = AggregationStrategies.forType(TimeKeeperAggregation.QUICKSELECT_MEDIAN);
+    for (int count = 1; count < 200; count++) {
+      long[] times = randomTimes(count);
+      long[] sorted = times.clone();
+      Arrays.sort(sorted);
+      long expected = sorted[count / 2];
+      if (count % 2 == 0) {
+        expected = (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+      }
+      assertEquals(expected, strategy.aggregate(times, new long[count], count));
+    }
+  }
+
+  @Test
+  public void testTrimmedMean() {
+    AggregationStrategy strategy = AggregationStrategies.forType(TimeKeeperAggregation.TRIMMED_MEAN);
+    for (int count = 1; count < 200; count++) {
+      long[] times = randomTimes(count);
+      long[] sorted = times.clone();
+      Arrays.sort(sorted);
+      int trim = count / 5;
+      long sum = 0;
+      for (int i = trim; i < count - trim; i++) {
+        sum += sorted[i];
+      }
+      assertEquals(sum / (count - 2 * trim), strategy.aggregate(times, new long[count], count));
+    }
+    // a minority of far future clocks is trimmed away
+    long[] times = new long[] {100, 101, 102, 103, 100_000};
+    assertEquals(102, strategy.aggregate(times, new long[times.length], times.length));
+  }
+
+  @Test
+  public void testWeightedMedian() {
+    AggregationStrategy strategy = AggregationStrategies.forType(TimeKeeperAggregation.WEIGHTED_MEDIAN);
+    for (int count = 1; count < 200; count++) {
+      long[] times = randomTimes(count);
+      long[] weights = randomWeights(count);
+      long total = Arrays.stream(weights).sum();
+      if (total == 0) {
+        continue;
+      }
+      long expected = Long.MAX_VALUE;
+      for (long candidate : times) {
+        long below = 0;
+        for (int i = 0; i < count; i++) {
+          if (times[i] <= candidate) {
+            below += weights[i];
+          }
+        }
+        if (2 * below >= total) {
+          expected = Math.min(expected, candidate);
+        }
+      }
+      long[] originalTimes = times.clone();
+      long[] originalWeights = weights.clone();
+      assertEquals(expected, strategy.aggregate(times, weights, count));
+      // weights must have been moved along with their times
+      long[] pairs = new long[count];
+      long[] originalPairs = new long[count];
+      for (int i = 0; i < count; i++) {
+        pairs[i] = times[i] * 10 + weights[i];
+        originalPairs[i] = originalTimes[i] * 10 + originalWeights[i];
+      }
+      Arrays.sort(pairs);
+      Arrays.sort(originalPairs);
+      assertEquals(Arrays.toString(originalPairs), Arrays.toString(pairs));
+    }
+    long[] times = new long[] {100, 200, 300};
+    assertEquals(300, strategy.aggregate(times, new long[] {1, 1, 5}, 3));
+  }
+
+  @Test
+  public void testAggregationSelectedByUpdate() {
+    GlobalTimeState gState = new GlobalTimeState();
+    for (int i = 0; i < 10; i++) {
+      TimeKeeperUpdate u = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(1000 + i))
+          .setVersion(TimeKeeperVersion.V_2_0).build();
+      gState.addUpdate(ByteString.copyFrom("participant-" + i, Charset.defaultCharset()), u);
+    }
+    TimeKeeperGlobalRecord record = gState.toTimeKeeperGlobalRecord();
+    assertEquals(TimeKeeperAggregation.AGGREGATION_UNSET, record.getAggregation());
+
+    TimeKeeperUpdate u = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(1010))
+        .setVersion(TimeKeeperVersion.V_2_0).setAggregation(TimeKeeperAggregation.TRIMMED_MEAN).build();
+    gState = new GlobalTimeState(record);
+    gState.addUpdate(ByteString.copyFrom("participant-10", Charset.defaultCharset()), u);
+    record = gState.toTimeKeeperGlobalRecord();
+    // one of eleven participants asking for it is not enough
+    assertEquals(TimeKeeperAggregation.AGGREGATION_UNSET, record.getAggregation());
+
+    // six of eleven is
+    gState = new GlobalTimeState(record);
+    for (int i = 1; i < 6; i++) {
+      gState.addUpdate(ByteString.copyFrom("participant-" + i, Charset.defaultCharset()), u);
+      assertEquals(i == 5, gState.toTimeKeeperGlobalRecord().getAggregation() == TimeKeeperAggregation.TRIMMED_MEAN);
+    }
+    record = gState.toTimeKeeperGlobalRecord();
+
+    // later updates which do not specify an aggregation leave it in place until a majority agree on
+    // another
+    u = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(1011)).setVersion(TimeKeeperVersion.V_2_0)
+        .build();
+    gState = new GlobalTimeState(record);
+    gState.addUpdate(ByteString.copyFrom("participant-0", Charset.defaultCharset()), u);
+    assertEquals(TimeKeeperAggregation.TRIMMED_MEAN, gState.toTimeKeeperGlobalRecord().getAggregation());
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.blockchaintp.sawtooth.timekeeper.client.ChainTimeEstimator;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class ChainTimeEstimatorTest {
+
+  private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+  void advance(long seconds) {
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  long estimateSeconds(ChainTimeEstimator estimator) {
+    return estimator.estimate().getSeconds();
+  }
+
+  @Test
+  public void testExtrapolatesUpToSafetyMargin() {
+    ChainTimeEstimator estimator = new ChainTimeEstimator(Duration.ofSeconds(30), 0.01, clock::get);
+    estimator.observe(Timestamps.fromSeconds(1000));
+    assertEquals(1000, estimateSeconds(estimator));
+    advance(10);
+    assertEquals(1010, estimateSeconds(estimator));
+    advance(60);
+    assertEquals(1030, estimateSeconds(estimator));
+    assertEquals(1000, estimator.getLastChainTime().getSeconds());
+  }
+
+  @Test
+  public void testNeverGoesBackwards() {
+    ChainTimeEstimator estimator = new ChainTimeEstimator(Duration.ofSeconds(30), 0.01, clock::get);
+    estimator.observe(Timestamps.fromSeconds(1000));
+    advance(40);
+    assertEquals(1030, estimateSeconds(estimator));
+    // the chain catches up less than the estimate ran ahead
+    estimator.observe(Timestamps.fromSeconds(1020));
+    assertEquals(1030, estimateSeconds(estimator));
+    advance(15);
+    assertEquals(1034, estimateSeconds(estimator));
+    // stale times are ignored
+    estimator.observe(Timestamps.fromSeconds(1010));
+    assertEquals(1020, estimator.getLastChainTime().getSeconds());
+  }
+
+  @Test
+  public void testRateBoundedByDrift() {
+    ChainTimeEstimator estimator = new ChainTimeEstimator(Duration.ofSeconds(1000), 0.1, clock::get);
+    estimator.observe(Timestamps.fromSeconds(1000));
+    // chain time appears to run at twice the local clock, the rate is held to 1.1
+    advance(100);
+    estimator.observe(Timestamps.fromSeconds(1200));
+    advance(100);
+    assertEquals(1310, estimateSeconds(estimator));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoEstimateBeforeFirstTime() {
+    new ChainTimeEstimator(Duration.ofSeconds(30), 0.01, clock::get).estimate();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.blockchaintp.sawtooth.timekeeper.processor.GlobalTimeState;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class CompactParticipantsTest {
+
+  Set<ByteString> participants(TimeKeeperGlobalRecord record) {
+    Set<ByteString> keys = new HashSet<>();
+    for (TimeKeeperParticipant p : record.getParticipantList()) {
+      keys.add(p.getParticipantPublicKey());
+    }
+    return keys;
+  }
+
+  void compareWithHashMap(TimeKeeperVersion version) throws Exception {
+    Random random = new Random(7);
+    TimeKeeperUpdate template = TimeKeeperUpdate.newBuilder().setVersion(version).setExpirySeconds(100)
+        .setMaxParticipants(20).setAggregation(TimeKeeperAggregation.WEIGHTED_MEDIAN).setCheckpointSeconds(60)
+        .build();
+    ByteString legacy = new GlobalTimeState().toTimeKeeperGlobalRecord().toByteString();
+    ByteString compact = legacy;
+    long millis = 1_600_000_000_000L;
+    for (int i = 0; i < 2000; i++) {
+      millis += random.nextInt(2000);
+      ByteString participant = ByteString.copyFromUtf8("02" + random.nextInt(40));
+      Timestamp time = Timestamps.fromMillis(millis + random.nextInt(30_000) - 15_000);
+      TimeKeeperUpdate update = template.toBuilder().setTimeUpdate(time).build();
+
+      GlobalTimeState legacyState = new GlobalTimeState(TimeKeeperGlobalRecord.parseFrom(legacy));
+      legacyState.addUpdate(participant, update);
+      legacy = legacyState.toByteString();
+
+      // a compact record read straight from its bytes matches one read from the parsed record
+      assertEquals(new GlobalTimeState(TimeKeeperGlobalRecord.parseFrom(compact)).toByteString(),
+          GlobalTimeState.parseFrom(compact).toByteString());
+      GlobalTimeState compactState = GlobalTimeState.parseFrom(compact);
+      compactState.addUpdate(participant, update.toBuilder().setCompactParticipants(true).build());
+      if (compactState.isCheckpointDue()) {
+        compactState.markCheckpoint();
+        legacyState.markCheckpoint();
+        legacy = legacyState.toByteString();
+      }
+      compact = compactState.toByteString();
+
+      assertEquals(legacyState.getCurrentTime(), compactState.getCurrentTime());
+      assertEquals(legacyState.getMinParticipantTime(), compactState.getMinParticipantTime());
+      assertEquals(legacyState.getMaxParticipantTime(), compactState.getMaxParticipantTime());
+      TimeKeeperGlobalRecord compactRecord = compactState.toTimeKeeperGlobalRecord();
+      assertEquals(compactRecord.toByteString(), compact);
+      assertEquals(participants(legacyState.toTimeKeeperGlobalRecord()), participants(compactRecord));
+    }
+    assertTrue(TimeKeeperGlobalRecord.parseFrom(compact).getCompactParticipants());
+  }
+
+  @Test
+  public void testMatchesHashMapInSeconds() throws Exception {
+    compareWithHashMap(TimeKeeperVersion.V_2_0);
+  }
+
+  @Test
+  public void testMatchesHashMapInMicros() throws Exception {
+    compareWithHashMap(TimeKeeperVersion.V_3_0);
+  }
+
+  @Test
+  public void testSwitchKeepsExistingOrder() throws Exception {
+    GlobalTimeState state = new GlobalTimeState();
+    TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0)
+        .setTimeUpdate(Timestamps.fromSeconds(1000)).build();
+    for (int i = 0; i < 10; i++) {
+      state.addUpdate(ByteString.copyFromUtf8("key" + i), update);
+    }
+    TimeKeeperGlobalRecord before = state.toTimeKeeperGlobalRecord();
+    List<ByteString> order = new ArrayList<>();
+    for (TimeKeeperParticipant p : before.getParticipantList()) {
+      order.add(p.getParticipantPublicKey());
+    }
+
+    GlobalTimeState compactState = new GlobalTimeState(before);
+    compactState.addUpdate(ByteString.copyFromUtf8("new"),
+        update.toBuilder().setCompactParticipants(true).build());
+    assertTrue(compactState.isChanged());
+    TimeKeeperGlobalRecord after = TimeKeeperGlobalRecord.parseFrom(compactState.toByteString());
+    order.add(ByteString.copyFromUtf8("new"));
+    List<ByteString> afterOrder = new ArrayList<>();
+    for (TimeKeeperParticipant p : after.getParticipantList()) {
+      afterOrder.add(p.getParticipantPublicKey());
+    }
+    assertEquals(order, afterOrder);
+    assertTrue(after.getCompactParticipants());
+  }
+
+  @Test
+  public void testCapEvictsManyAtOnce() throws Exception {
+    TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0)
+        .setCompactParticipants(true).build();
+    ByteString record = new GlobalTimeState().toByteString();
+    for (int i = 0; i < 12; i++) {
+      GlobalTimeState state = GlobalTimeState.parseFrom(record);
+      state.addUpdate(ByteString.copyFromUtf8("key" + i),
+          update.toBuilder().setTimeUpdate(Timestamps.fromSeconds(1000 + i % 4)).build());
+      record = state.toByteString();
+    }
+    // once seven of the twelve ask for a cap of five, the seven stalest go together
+    for (int i = 0; i < 7; i++) {
+      GlobalTimeState state = GlobalTimeState.parseFrom(record);
+      state.addUpdate(ByteString.copyFromUtf8("key" + i), update.toBuilder()
+          .setTimeUpdate(Timestamps.fromSeconds(1000 + i % 4)).setMaxParticipants(5).build());
+      record = state.toByteString();
+    }
+    List<ByteString> order = new ArrayList<>();
+    for (TimeKeeperParticipant p : TimeKeeperGlobalRecord.parseFrom(record).getParticipantList()) {
+      order.add(p.getParticipantPublicKey());
+    }
+    assertEquals(List.of(ByteString.copyFromUtf8("key2"), ByteString.copyFromUtf8("key3"),
+        ByteString.copyFromUtf8("key6"), ByteString.copyFromUtf8("key7"), ByteString.copyFromUtf8("key11")), order);
+  }
+}
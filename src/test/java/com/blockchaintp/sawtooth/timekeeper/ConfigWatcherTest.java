@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigWatcherTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  void write(Path file, String content, long modifiedMillis) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedMillis));
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("timekeeper.properties");
+    write(file, "period=10\nmaxDeviation=30\n", 1_000_000L);
+    ConfigWatcher watcher = new ConfigWatcher(file, new TimeKeeperConfig(20, 0, 50));
+    assertEquals(10, watcher.get().getUpdatePeriod());
+    assertEquals(30, watcher.get().getMaxDeviation());
+    assertEquals(50, watcher.get().getMaxHistory());
+
+    write(file, "period=5\n", 2_000_000L);
+    watcher.run();
+    assertEquals(5, watcher.get().getUpdatePeriod());
+    assertEquals(0, watcher.get().getMaxDeviation());
+    assertFalse(watcher.get().isCompactParticipants());
+
+    assertEquals(TimeKeeperAggregation.AGGREGATION_UNSET, watcher.get().getAggregation());
+
+    write(file, "period=5\ncompactParticipants=true\naggregation=TRIMMED_MEAN\n", 2_500_000L);
+    watcher.run();
+    assertTrue(watcher.get().isCompactParticipants());
+    assertEquals(TimeKeeperAggregation.TRIMMED_MEAN, watcher.get().getAggregation());
+    write(file, "period=5\naggregation=UNRECOGNIZED\n", 2_600_000L);
+    watcher.run();
+    assertEquals(TimeKeeperAggregation.TRIMMED_MEAN, watcher.get().getAggregation());
+
+    // invalid settings keep the previous configuration
+    write(file, "period=0\n", 3_000_000L);
+    watcher.run();
+    assertEquals(5, watcher.get().getUpdatePeriod());
+    write(file, "maxHistory=lots\n", 4_000_000L);
+    watcher.run();
+    assertEquals(5, watcher.get().getUpdatePeriod());
+
+    Files.delete(file);
+    watcher.run();
+    assertEquals(5, watcher.get().getUpdatePeriod());
+  }
+
+  @Test
+  public void testMissingFile() {
+    ConfigWatcher watcher = new ConfigWatcher(folder.getRoot().toPath().resolve("absent"),
+        new TimeKeeperConfig(20, 0, 0));
+    assertEquals(20, watcher.get().getUpdatePeriod());
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
+import com.blockchaintp.sawtooth.timekeeper.processor.DeviationCheck;
+import com.blockchaintp.sawtooth.timekeeper.processor.ParticipantTimeState;
+import com.blockchaintp.sawtooth.timekeeper.processor.RecordFields;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class DeviationCheckTest {
+
+  ByteString participantRecord(long seconds, int maxDeviation) {
+    TimeKeeperRecord.Builder builder = TimeKeeperRecord.newBuilder().setLastCalculatedTime(Timestamps.fromSeconds(seconds))
+        .setVersion(TimeKeeperVersion.V_2_0).setMaxDeviation(maxDeviation);
+    for (int i = 0; i < 100; i++) {
+      builder.addTimeHistory(Timestamps.fromSeconds(seconds - i));
+    }
+    return builder.build().toByteString();
+  }
+
+  ByteString globalRecord(long seconds) {
+    TimeKeeperGlobalRecord.Builder builder = TimeKeeperGlobalRecord.newBuilder()
+        .setLastCalculatedTime(Timestamps.fromSeconds(seconds)).setVersion(TimeKeeperVersion.V_2_0);
+    for (int i = 0; i < 100; i++) {
+      builder.addParticipant(TimeKeeperParticipant.newBuilder().setParticipantPublicKey(ByteString.copyFromUtf8("p" + i))
+          .setLastCalculatedTime(Timestamps.fromSeconds(seconds + i)));
+    }
+    return builder.build().toByteString();
+  }
+
+  TimeKeeperUpdate update(long seconds, int maxDeviation) {
+    return TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(seconds))
+        .setVersion(TimeKeeperVersion.V_2_0).setMaxDeviation(maxDeviation).build();
+  }
+
+  @Test
+  public void testRecordFields() throws InvalidProtocolBufferException {
+    assertEquals(5000, RecordFields.timestampSeconds(participantRecord(5000, 30), 1));
+    assertEquals(30, RecordFields.int32Field(participantRecord(5000, 30), 5));
+    assertEquals(7000, RecordFields.timestampSeconds(globalRecord(7000), 1));
+    assertEquals(0, RecordFields.timestampSeconds(null, 1));
+    assertEquals(0, RecordFields.timestampSeconds(ByteString.EMPTY, 1));
+    assertEquals(0, RecordFields.int32Field(ByteString.EMPTY, 5));
+  }
+
+  @Test
+  public void testNoDeviationNoCheck() throws Exception {
+    DeviationCheck.check(update(100, 0), participantRecord(5000, 0), globalRecord(5000));
+    TimeKeeperUpdate v1 = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(100)).build();
+    DeviationCheck.check(v1, participantRecord(5000, 30), globalRecord(5000));
+  }
+
+  @Test
+  public void testRejectsBehind() throws Exception {
+    try {
+      DeviationCheck.check(update(4000, 30), participantRecord(5000, 0), globalRecord(4000));
+      fail("Update behind the participant time should be rejected");
+    } catch (TimeKeeperException e) {
+      // expected
+    }
+    try {
+      DeviationCheck.check(update(4000, 30), null, globalRecord(5000));
+      fail("Update behind the global time should be rejected");
+    } catch (TimeKeeperException e) {
+      // expected
+    }
+    // the stored deviation applies when the update has none
+    try {
+      DeviationCheck.check(update(4000, 0), participantRecord(5000, 30), null);
+      fail("Update behind the participant time should be rejected");
+    } catch (TimeKeeperException e) {
+      // expected
+    }
+    DeviationCheck.check(update(4980, 30), participantRecord(5000, 0), globalRecord(5000));
+  }
+
+  @Test
+  public void testAcceptsAheadAfterStall() throws Exception {
+    // after a stall far longer than the deviation, honest updates are all ahead of the records
+    DeviationCheck.check(update(9000, 30), participantRecord(5000, 30), globalRecord(5000));
+    DeviationCheck.check(update(9000, 0), participantRecord(5000, 30), globalRecord(5000));
+    DeviationCheck.check(update(9000, 30), null, ByteString.EMPTY);
+  }
+
+  @Test
+  public void testExplicitDefaultDeviationIsKept() throws Exception {
+    ParticipantTimeState state = new ParticipantTimeState(update(5000, 200));
+    TimeKeeperRecord record = state.toTimeKeeperRecord();
+    assertEquals(200, record.getMaxDeviation());
+    state = new ParticipantTimeState(record);
+    state.addUpdate(update(5010, 0));
+    record = state.toTimeKeeperRecord();
+    assertEquals(200, record.getMaxDeviation());
+    try {
+      DeviationCheck.check(update(4000, 0), record.toByteString(), null);
+      fail("The stored deviation should still be enforced");
+    } catch (TimeKeeperException e) {
+      // expected
+    }
+    // without an explicit deviation nothing is stored
+    assertEquals(0, new ParticipantTimeState(update(5000, 0)).toTimeKeeperRecord().getMaxDeviation());
+  }
+}
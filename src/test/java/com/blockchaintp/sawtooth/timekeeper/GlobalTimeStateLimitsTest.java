@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.blockchaintp.sawtooth.timekeeper.processor.GlobalTimeState;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class GlobalTimeStateLimitsTest {
+
+  TimeKeeperUpdate update(long seconds, int expiry, int maxParticipants) {
+    return TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0)
+        .setTimeUpdate(Timestamps.fromSeconds(seconds)).setExpirySeconds(expiry).setMaxParticipants(maxParticipants)
+        .build();
+  }
+
+  ByteString key(String name) {
+    return ByteString.copyFromUtf8(name);
+  }
+
+  Set<String> participants(TimeKeeperGlobalRecord record) {
+    Set<String> names = new HashSet<>();
+    for (TimeKeeperParticipant p : record.getParticipantList()) {
+      names.add(p.getParticipantPublicKey().toStringUtf8());
+    }
+    return names;
+  }
+
+  @Test
+  public void testLegacyExpiry() {
+    GlobalTimeState state = new GlobalTimeState();
+    state.addUpdate(key("a"), update(1000, 0, 0));
+    state.addUpdate(key("b"), update(1150, 0, 0));
+    state.addUpdate(key("b"), update(1300, 0, 0));
+    state.addUpdate(key("c"), update(1300, 0, 0));
+    TimeKeeperGlobalRecord record = state.toTimeKeeperGlobalRecord();
+    assertEquals(0, record.getExpirySeconds());
+    assertEquals(3, record.getParticipantCount());
+  }
+
+  @Test
+  public void testExpiryWindow() {
+    GlobalTimeState state = new GlobalTimeState();
+    state.addUpdate(key("a"), update(1000, 60, 0));
+    state.addUpdate(key("b"), update(1050, 0, 0));
+    state.addUpdate(key("b"), update(1100, 0, 0));
+    state.addUpdate(key("c"), update(1100, 0, 0));
+    state.addUpdate(key("b"), update(1200, 0, 0));
+    state.addUpdate(key("c"), update(1200, 0, 0));
+    TimeKeeperGlobalRecord record = state.toTimeKeeperGlobalRecord();
+    assertEquals(60, record.getExpirySeconds());
+    assertEquals(Set.of("b", "c"), participants(record));
+
+    // the window is kept on the record for later updates which do not set it
+    GlobalTimeState reloaded = new GlobalTimeState(record);
+    reloaded.addUpdate(key("c"), update(1300, 0, 0));
+    assertEquals(60, reloaded.toTimeKeeperGlobalRecord().getExpirySeconds());
+  }
+
+  @Test
+  public void testMaxParticipantsEvictsStalest() {
+    GlobalTimeState state = new GlobalTimeState();
+    state.addUpdate(key("d"), update(1000, 0, 0));
+    state.addUpdate(key("c"), update(1000, 0, 0));
+    state.addUpdate(key("b"), update(1010, 0, 0));
+    state.addUpdate(key("a"), update(1020, 0, 0));
+    assertEquals(4, state.toTimeKeeperGlobalRecord().getParticipantCount());
+
+    // one participant alone cannot set a cap
+    state.addUpdate(key("e"), update(1030, 0, 3));
+    assertEquals(0, state.toTimeKeeperGlobalRecord().getMaxParticipants());
+    assertEquals(5, state.toTimeKeeperGlobalRecord().getParticipantCount());
+    state.addUpdate(key("a"), update(1030, 0, 3));
+    assertEquals(5, state.toTimeKeeperGlobalRecord().getParticipantCount());
+
+    // with three of five agreeing, c and d are equally stale and c goes first by key
+    state.addUpdate(key("b"), update(1030, 0, 3));
+    TimeKeeperGlobalRecord record = state.toTimeKeeperGlobalRecord();
+    assertEquals(3, record.getMaxParticipants());
+    assertEquals(Set.of("a", "b", "e"), participants(record));
+
+    GlobalTimeState reloaded = new GlobalTimeState(record);
+    reloaded.addUpdate(key("f"), update(1040, 0, 0));
+    // a, b and e are equally stale, a goes first by key
+    assertEquals(Set.of("b", "e", "f"), participants(reloaded.toTimeKeeperGlobalRecord()));
+    assertTrue(reloaded.isChanged());
+  }
+
+  @Test
+  public void testSettingsNeedMajority() {
+    GlobalTimeState state = new GlobalTimeState();
+    for (int i = 0; i < 4; i++) {
+      state.addUpdate(key("p" + i), update(1000, 300, 0));
+    }
+    assertEquals(300, state.toTimeKeeperGlobalRecord().getExpirySeconds());
+
+    // a participant asking for a tiny window evicts nobody
+    state.addUpdate(key("x"), update(1001, 1, 1));
+    state.addUpdate(key("x"), update(1100, 1, 1));
+    TimeKeeperGlobalRecord record = state.toTimeKeeperGlobalRecord();
+    assertEquals(300, record.getExpirySeconds());
+    assertEquals(0, record.getMaxParticipants());
+    assertEquals(5, record.getParticipantCount());
+
+    // submitters split between two windows leave the setting where it is, whoever updates last
+    state = new GlobalTimeState(record);
+    state.addUpdate(key("p0"), update(1100, 600, 0));
+    state.addUpdate(key("p1"), update(1100, 600, 0));
+    assertEquals(300, state.toTimeKeeperGlobalRecord().getExpirySeconds());
+    state.addUpdate(key("p2"), update(1100, 300, 0));
+    assertEquals(300, state.toTimeKeeperGlobalRecord().getExpirySeconds());
+    state.addUpdate(key("p3"), update(1100, 600, 0));
+    assertEquals(600, state.toTimeKeeperGlobalRecord().getExpirySeconds());
+    state.addUpdate(key("p2"), update(1101, 300, 0));
+    assertEquals(600, state.toTimeKeeperGlobalRecord().getExpirySeconds());
+
+    // the proposals are kept on the record
+    record = state.toTimeKeeperGlobalRecord();
+    int proposing = 0;
+    for (TimeKeeperParticipant p : record.getParticipantList()) {
+      if (p.getExpirySeconds() == 600) {
+        proposing++;
+      }
+    }
+    assertEquals(3, proposing);
+  }
+}
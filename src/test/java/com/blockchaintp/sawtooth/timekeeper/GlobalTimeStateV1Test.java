@@ -15,6 +15,7 @@ package com.blockchaintp.sawtooth.timekeeper;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -161,4 +162,36 @@ public class GlobalTimeStateV1Test {
 
   }
 
+  @Test
+  public void testUnchangedUpdate() {
+    List<ByteString> participants = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      participants.add(ByteString.copyFrom("participant-" + i, Charset.defaultCharset()));
+    }
+    GlobalTimeState gState = new GlobalTimeState();
+    assertTrue(gState.isChanged());
+    for (ByteString p : participants) {
+      gState.addUpdate(p, v2updates(0, 0, 1000L).get(0));
+    }
+    TimeKeeperGlobalRecord record = gState.toTimeKeeperGlobalRecord();
+
+    // a sub-second update repeats the participant time, nothing to write
+    gState = new GlobalTimeState(record);
+    assertFalse(gState.isChanged());
+    gState.addUpdate(participants.get(0), TimeKeeperUpdate.newBuilder()
+        .setTimeUpdate(Timestamps.fromMillis(1000_500L)).setVersion(TimeKeeperVersion.V_2_0).build());
+    assertFalse(gState.isChanged());
+    assertEquals(record, gState.toTimeKeeperGlobalRecord());
+
+    // a participant moving forward changes the record even if the global time holds
+    gState = new GlobalTimeState(record);
+    gState.addUpdate(participants.get(0), v2updates(0, 0, 1001L).get(0));
+    assertTrue(gState.isChanged());
+
+    // as does a new participant
+    gState = new GlobalTimeState(record);
+    gState.addUpdate(ByteString.copyFrom("participant-new", Charset.defaultCharset()), v2updates(0, 0, 1000L).get(0));
+    assertTrue(gState.isChanged());
+  }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.blockchaintp.sawtooth.timekeeper.processor.GlobalTimeState;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class GlobalTimeStateV3Test {
+
+  TimeKeeperUpdate update(TimeKeeperVersion version, long seconds, int nanos) {
+    return TimeKeeperUpdate.newBuilder().setVersion(version)
+        .setTimeUpdate(Timestamp.newBuilder().setSeconds(seconds).setNanos(nanos)).build();
+  }
+
+  @Test
+  public void testSecondsPrecisionDropsNanos() {
+    GlobalTimeState state = new GlobalTimeState();
+    state.addUpdate(ByteString.copyFromUtf8("a"), update(TimeKeeperVersion.V_2_0, 1000, 750_000_000));
+    assertEquals(Timestamps.fromSeconds(1000), state.getCurrentTime());
+  }
+
+  @Test
+  public void testMicrosecondPrecision() {
+    GlobalTimeState state = new GlobalTimeState();
+    state.addUpdate(ByteString.copyFromUtf8("a"), update(TimeKeeperVersion.V_3_0, 1000, 250_000_999));
+    assertEquals(Timestamps.fromMicros(1000_250_000L), state.getCurrentTime());
+    state.addUpdate(ByteString.copyFromUtf8("b"), update(TimeKeeperVersion.V_3_0, 1000, 750_000_000));
+    // the median of two is their midpoint
+    assertEquals(Timestamps.fromMicros(1000_500_000L), state.getCurrentTime());
+    assertTrue(state.isChanged());
+
+    TimeKeeperGlobalRecord record = state.toTimeKeeperGlobalRecord();
+    assertEquals(TimeKeeperVersion.V_3_0, record.getVersion());
+
+    // a later V_2_0 update neither downgrades the record nor loses its precision
+    GlobalTimeState reloaded = new GlobalTimeState(record);
+    reloaded.addUpdate(ByteString.copyFromUtf8("a"), update(TimeKeeperVersion.V_2_0, 1000, 900_000_000));
+    assertEquals(Timestamps.fromMicros(1000_825_000L), reloaded.getCurrentTime());
+    assertEquals(TimeKeeperVersion.V_3_0, reloaded.toTimeKeeperGlobalRecord().getVersion());
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import com.blockchaintp.sawtooth.SawtoothClientUtils;
+
+import org.junit.Test;
+
+public class NamespaceTest {
+
+  @Test
+  public void testNameSpaceConstant() {
+    assertEquals(SawtoothClientUtils.getHash(Namespace.TIMEKEEPER_FAMILY_NAME).substring(0, Namespace.NAMESPACE_LENGTH),
+        Namespace.getNameSpace());
+    assertEquals(Namespace.getNameSpace() + "00", Namespace.TIMEKEEPER_RECORD_NS);
+  }
+
+  @Test
+  public void testByteAddressMatchesStringAddress() {
+    for (int i = 0; i < 100; i++) {
+      String key = String.format("%066x", i * 7919L);
+      String expected = Namespace.makeAddress(Namespace.getNameSpace(), key);
+      assertEquals(expected, Namespace.makeAddress(Namespace.getNameSpace(), key.getBytes(StandardCharsets.UTF_8)));
+      assertEquals(expected, Namespace.makeParticipantAddress(key));
+      assertEquals(Namespace.ADDRESS_LENGTH, expected.length());
+    }
+    // odd length namespaces split a digest byte
+    String oddNs = Namespace.TIMEKEEPER_RECORD_NS + "1";
+    assertEquals(Namespace.makeAddress(oddNs, "Global Record"),
+        Namespace.makeAddress(oddNs, "Global Record".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(Namespace.TIMEKEEPER_GLOBAL_RECORD,
+        Namespace.makeAddress(Namespace.TIMEKEEPER_RECORD_NS, "Global Record".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testCheckpointAddressesSortInTimeOrder() {
+    String earlier = Namespace.makeCheckpointAddress(1_699_999_200L);
+    String later = Namespace.makeCheckpointAddress(1_700_002_800L);
+    assertEquals(Namespace.ADDRESS_LENGTH, earlier.length());
+    assertTrue(earlier.startsWith(Namespace.TIMEKEEPER_CHECKPOINT_NS));
+    assertTrue(earlier.compareTo(later) < 0);
+    // the addresses are those of the shorter prefix padded with zeros
+    assertEquals(Namespace.TIMEKEEPER_RECORD_NS + "01" + String.format("%060x", 1_699_999_200L), earlier);
+    assertTrue(Namespace.isCheckpointAddress(earlier));
+    // a participant whose hash starts as the old short prefix did is not taken for a checkpoint
+    String participant = Namespace.TIMEKEEPER_RECORD_NS + "01" + "ab".repeat(30);
+    assertTrue(!Namespace.isCheckpointAddress(participant));
+    assertTrue(!participant.startsWith(Namespace.TIMEKEEPER_CHECKPOINT_NS));
+  }
+
+  @Test
+  public void testDomainAddresses() {
+    assertEquals(Namespace.TIMEKEEPER_GLOBAL_RECORD, Namespace.makeGlobalRecordAddress(Namespace.DEFAULT_DOMAIN));
+    assertEquals(Namespace.makeParticipantAddress("02aa"),
+        Namespace.makeParticipantAddress(Namespace.DEFAULT_DOMAIN, "02aa"));
+    assertEquals(Namespace.makeCheckpointAddress(3600), Namespace.makeCheckpointAddress(Namespace.DEFAULT_DOMAIN, 3600));
+
+    String prefix = Namespace.makeDomainPrefix("ledger-a");
+    assertTrue(prefix.startsWith(Namespace.TIMEKEEPER_DOMAIN_NS));
+    for (String address : new String[] {Namespace.makeGlobalRecordAddress("ledger-a"),
+        Namespace.makeParticipantAddress("ledger-a", "02aa"), Namespace.makeCheckpointAddress("ledger-a", 3600)}) {
+      assertEquals(Namespace.ADDRESS_LENGTH, address.length());
+      assertTrue(address.startsWith(prefix));
+    }
+    assertTrue(Namespace.makeCheckpointAddress("ledger-a", 3600)
+        .startsWith(Namespace.makeCheckpointPrefix("ledger-a")));
+    assertTrue(!Namespace.makeGlobalRecordAddress("ledger-b").startsWith(prefix));
+
+    // unchanged from the addresses of the unpadded domain checkpoint prefix
+    assertEquals(prefix + "02" + String.format("%048x", 3600), Namespace.makeCheckpointAddress("ledger-a", 3600));
+    assertTrue(Namespace.isCheckpointAddress(Namespace.makeCheckpointAddress("ledger-a", 3600)));
+    assertTrue(Namespace.isGlobalRecordAddress(Namespace.makeGlobalRecordAddress("ledger-a")));
+    // a default participant hashed to begin as a domain checkpoint does is neither
+    String participant = prefix + "02" + "cd".repeat(24);
+    assertEquals(Namespace.ADDRESS_LENGTH, participant.length());
+    assertTrue(!Namespace.isCheckpointAddress(participant));
+    assertTrue(!Namespace.isGlobalRecordAddress(participant));
+  }
+
+  @Test
+  public void testAddressCacheBounded() {
+    AddressCache cache = new AddressCache(10);
+    String first = cache.computeIfAbsent("key-0", k -> Namespace.makeAddress(Namespace.getNameSpace(), k));
+    assertSame(first, cache.computeIfAbsent("key-0", k -> "recomputed"));
+    for (int i = 1; i < 100; i++) {
+      cache.computeIfAbsent("key-" + i, k -> Namespace.makeAddress(Namespace.getNameSpace(), k));
+      assertTrue(cache.size() <= 10);
+    }
+    assertEquals("recomputed", cache.computeIfAbsent("key-0", k -> "recomputed"));
+  }
+}
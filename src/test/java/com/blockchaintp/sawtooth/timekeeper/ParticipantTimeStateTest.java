@@ -21,6 +21,7 @@ import java.util.List;
 
 import com.blockchaintp.sawtooth.timekeeper.exceptions.TimeKeeperException;
 import com.blockchaintp.sawtooth.timekeeper.processor.ParticipantTimeState;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperHistoryMode;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
 import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
@@ -195,4 +196,35 @@ public class ParticipantTimeStateTest {
       }
     }
   }
+
+  @Test
+  public void testSummaryMode() throws TimeKeeperException {
+    List<TimeKeeperUpdate> updates = v2updates(0, 10, 100L, 120L, 140L);
+    ParticipantTimeState state = new ParticipantTimeState(updates.get(0));
+    state.addUpdate(updates.get(1));
+    state.addUpdate(updates.get(2));
+    TimeKeeperRecord full = state.toTimeKeeperRecord();
+    assertEquals(3, full.getTimeHistoryCount());
+    assertEquals(TimeKeeperHistoryMode.HISTORY_UNSET, full.getHistoryMode());
+    assertEquals(0, full.getUpdateCount());
+
+    // switching to a summary carries the history over into the count
+    TimeKeeperUpdate summary = updates.get(2).toBuilder().setTimeUpdate(Timestamps.fromSeconds(150))
+        .setHistoryMode(TimeKeeperHistoryMode.SUMMARY_SKETCH).build();
+    state.addUpdate(summary);
+    state = new ParticipantTimeState(state.toTimeKeeperRecord());
+    state.addUpdate(v2updates(0, 0, 130L).get(0));
+    state.addUpdate(v2updates(0, 0, 230L).get(0));
+    TimeKeeperRecord tkr = state.toTimeKeeperRecord();
+    assertEquals(0, tkr.getTimeHistoryCount());
+    assertEquals(6, tkr.getUpdateCount());
+    assertEquals(100, tkr.getFirstSeen().getSeconds());
+    assertEquals(230, tkr.getLastSeen().getSeconds());
+    assertEquals(230, tkr.getLastCalculatedTime().getSeconds());
+    assertEquals(ParticipantTimeState.SKETCH_BUCKETS, tkr.getIntervalSketchCount());
+    // intervals of 10 (150 after 140), -20 and 100 seconds
+    assertEquals(1, tkr.getIntervalSketch(0));
+    assertEquals(1, tkr.getIntervalSketch(4));
+    assertEquals(1, tkr.getIntervalSketch(7));
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Base64;
+
+import com.blockchaintp.sawtooth.timekeeper.bench.StateDump;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCheckpoint;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperParticipant;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperRecord;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+public class StateDumpTest {
+
+  String line(String address, byte[] data) {
+    return address + "," + data.length + "," + Base64.getEncoder().encodeToString(data) + "\n";
+  }
+
+  @Test
+  public void testSummarizesRecords() throws Exception {
+    TimeKeeperRecord record = TimeKeeperRecord.newBuilder().setLastCalculatedTime(Timestamps.fromSeconds(86_400))
+        .addTimeHistory(Timestamps.fromSeconds(86_390)).addTimeHistory(Timestamps.fromSeconds(86_400)).build();
+    TimeKeeperGlobalRecord global = TimeKeeperGlobalRecord.newBuilder()
+        .addParticipant(TimeKeeperParticipant.newBuilder().setParticipantPublicKey(ByteString.copyFromUtf8("a")))
+        .addParticipant(TimeKeeperParticipant.newBuilder().setParticipantPublicKey(ByteString.copyFromUtf8("b")))
+        .build();
+    StringBuilder export = new StringBuilder("ADDRESS,SIZE,DATA\n");
+    export.append(line(Namespace.makeParticipantAddress("a"), record.toByteArray()));
+    export.append(line(Namespace.makeParticipantAddress("b"), record.toByteArray()));
+    export.append(line(Namespace.makeParticipantAddress("other", "c"), record.toByteArray()));
+    export.append(line(Namespace.TIMEKEEPER_GLOBAL_RECORD, global.toByteArray()));
+    export.append(line(Namespace.makeGlobalRecordAddress("other"), global.toByteArray()));
+    export.append(line(Namespace.makeCheckpointAddress(86_400),
+        TimeKeeperCheckpoint.newBuilder().setParticipantCount(2).build().toByteArray()));
+    export.append(line(Namespace.makeCheckpointAddress("other", 86_400),
+        TimeKeeperCheckpoint.newBuilder().setParticipantCount(2).build().toByteArray()));
+    // a default participant whose hash begins as the checkpoints of the other domain do
+    export.append(line(Namespace.makeDomainPrefix("other") + "02" + "cd".repeat(24), record.toByteArray()));
+    export.append(line("000000" + "0".repeat(64), new byte[] {1}));
+    export.append(Namespace.makeParticipantAddress("d") + ",3,@@@\n");
+
+    StateDump dump = new StateDump(Namespace.getNameSpace(), 2);
+    dump.scan(new BufferedReader(new StringReader(export.toString())));
+    String report = dump.report();
+    assertTrue(report, report.contains("lines=11 skipped=2 undecodable=1"));
+    assertTrue(report, report.contains("global_records count=2"));
+    assertTrue(report, report.contains("participants_total=4 participants_max=2"));
+    assertTrue(report, report.contains("checkpoints count=2"));
+    assertTrue(report, report.contains("participant_records count=4"));
+    assertTrue(report, report.contains("history_max=2"));
+    assertTrue(report, report.contains("1970-01-02: 4"));
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import sawtooth.sdk.messaging.Future;
+import sawtooth.sdk.messaging.Stream;
+import sawtooth.sdk.protobuf.Batch;
+import sawtooth.sdk.protobuf.ClientBatchSubmitRequest;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+import sawtooth.sdk.protobuf.Message;
+
+public class SubmitAggregatorTest {
+
+  private static final int TIMEOUT_MILLIS = 5_000;
+  private static final int WINDOW_MILLIS = 300;
+
+  private final List<ClientBatchSubmitRequest> forwarded = new ArrayList<>();
+  private SubmitAggregator aggregator;
+  private Thread aggregatorThread;
+  private ZContext zmq;
+  private String endpoint;
+
+  @Before
+  public void setUp() throws IOException {
+    File socketFile = File.createTempFile("timekeeper", ".sock");
+    socketFile.delete();
+    endpoint = "ipc://" + socketFile.getAbsolutePath();
+    zmq = new ZContext();
+  }
+
+  void start(Stream upstream, long upstreamTimeout) {
+    aggregator = new SubmitAggregator(endpoint, upstream, WINDOW_MILLIS, 10, upstreamTimeout);
+    aggregatorThread = new Thread(aggregator);
+    aggregatorThread.start();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    zmq.close();
+    aggregator.close();
+    aggregatorThread.join();
+  }
+
+  ZMQ.Socket submit(String batchId) {
+    ZMQ.Socket socket = zmq.createSocket(SocketType.DEALER);
+    socket.setReceiveTimeOut(TIMEOUT_MILLIS);
+    socket.connect(endpoint);
+    ClientBatchSubmitRequest request = ClientBatchSubmitRequest.newBuilder()
+        .addBatches(Batch.newBuilder().setHeaderSignature(batchId)).build();
+    socket.send(Message.newBuilder().setMessageType(Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST)
+        .setCorrelationId("corr-" + batchId).setContent(request.toByteString()).build().toByteArray());
+    return socket;
+  }
+
+  @Test
+  public void testSubmissionsForwardedTogether() throws Exception {
+    start(new RecordingStream(0), TIMEOUT_MILLIS);
+    ZMQ.Socket first = submit("a");
+    ZMQ.Socket second = submit("b");
+
+    Message firstReply = Message.parseFrom(first.recv());
+    Message secondReply = Message.parseFrom(second.recv());
+    assertEquals("corr-a", firstReply.getCorrelationId());
+    assertEquals("corr-b", secondReply.getCorrelationId());
+    assertEquals(ClientBatchSubmitResponse.Status.OK,
+        ClientBatchSubmitResponse.parseFrom(secondReply.getContent()).getStatus());
+
+    synchronized (forwarded) {
+      assertEquals(1, forwarded.size());
+      assertEquals(2, forwarded.get(0).getBatchesCount());
+    }
+    assertEquals(1, aggregator.getUpstreamSubmits());
+    assertEquals(2, aggregator.getForwardedBatches());
+  }
+
+  @Test
+  public void testRejectedSubmissionResentAlone() throws Exception {
+    start(new RecordingStream(0), TIMEOUT_MILLIS);
+    ZMQ.Socket good = submit("a");
+    ZMQ.Socket bad = submit("bad");
+
+    Message goodReply = Message.parseFrom(good.recv());
+    Message badReply = Message.parseFrom(bad.recv());
+    assertEquals(ClientBatchSubmitResponse.Status.OK,
+        ClientBatchSubmitResponse.parseFrom(goodReply.getContent()).getStatus());
+    assertEquals(ClientBatchSubmitResponse.Status.INVALID_BATCH,
+        ClientBatchSubmitResponse.parseFrom(badReply.getContent()).getStatus());
+
+    synchronized (forwarded) {
+      assertEquals(3, forwarded.size());
+      assertEquals(2, forwarded.get(0).getBatchesCount());
+      assertEquals(1, forwarded.get(1).getBatchesCount());
+      assertEquals(1, forwarded.get(2).getBatchesCount());
+    }
+    assertEquals(3, aggregator.getUpstreamSubmits());
+    assertEquals(2, aggregator.getForwardedBatches());
+  }
+
+  @Test
+  public void testRejectedSubmissionFoundByHalves() throws Exception {
+    start(new RecordingStream(0), TIMEOUT_MILLIS);
+    List<ZMQ.Socket> sockets = new ArrayList<>();
+    for (String batchId : List.of("a", "b", "c", "d", "e", "f", "g", "bad")) {
+      sockets.add(submit(batchId));
+    }
+    for (int i = 0; i < sockets.size(); i++) {
+      Message reply = Message.parseFrom(sockets.get(i).recv());
+      ClientBatchSubmitResponse.Status expected = ClientBatchSubmitResponse.Status.OK;
+      if (i == sockets.size() - 1) {
+        expected = ClientBatchSubmitResponse.Status.INVALID_BATCH;
+      }
+      assertEquals(expected, ClientBatchSubmitResponse.parseFrom(reply.getContent()).getStatus());
+    }
+    // the combined request, then both halves at each of three levels
+    assertEquals(7, aggregator.getUpstreamSubmits());
+  }
+
+  @Test
+  public void testSlowUpstreamBoundsResends() throws Exception {
+    long upstreamTimeout = 500;
+    start(new RecordingStream(400), upstreamTimeout);
+    long start = System.nanoTime();
+    List<ZMQ.Socket> sockets = new ArrayList<>();
+    for (String batchId : List.of("a", "b", "c", "d", "e", "bad")) {
+      sockets.add(submit(batchId));
+    }
+    List<ClientBatchSubmitResponse.Status> statuses = new ArrayList<>();
+    for (ZMQ.Socket socket : sockets) {
+      statuses.add(ClientBatchSubmitResponse.parseFrom(Message.parseFrom(socket.recv()).getContent()).getStatus());
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    // one request per submitter would take 400 ms each, the resends share a single timeout
+    assertTrue("took " + elapsedMillis + " ms", elapsedMillis < WINDOW_MILLIS + 2 * upstreamTimeout + 500);
+    assertNotEquals(ClientBatchSubmitResponse.Status.OK, statuses.get(statuses.size() - 1));
+  }
+
+  /**
+   * An upstream which records what it is sent and answers after a delay, rejecting any request
+   * holding a batch with the signature "bad" as the validator would.
+   */
+  private final class RecordingStream implements Stream {
+
+    private final long delayMillis;
+
+    RecordingStream(long delay) {
+      this.delayMillis = delay;
+    }
+
+    @Override
+    public Future send(Message.MessageType destination, ByteString contents) {
+      ClientBatchSubmitResponse.Status status = ClientBatchSubmitResponse.Status.OK;
+      try {
+        ClientBatchSubmitRequest request = ClientBatchSubmitRequest.parseFrom(contents);
+        synchronized (forwarded) {
+          forwarded.add(request);
+        }
+        for (Batch batch : request.getBatchesList()) {
+          if (batch.getHeaderSignature().equals("bad")) {
+            status = ClientBatchSubmitResponse.Status.INVALID_BATCH;
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      ByteString ok = ClientBatchSubmitResponse.newBuilder().setStatus(status).build().toByteString();
+      return new Future() {
+        @Override
+        public ByteString getResult() {
+          return ok;
+        }
+
+        @Override
+        public ByteString getResult(long timeout) throws InterruptedException, TimeoutException {
+          Thread.sleep(Math.min(delayMillis, timeout));
+          if (delayMillis > timeout) {
+            throw new TimeoutException("no response in " + timeout + " ms");
+          }
+          return ok;
+        }
+
+        @Override
+        public void setResult(ByteString byteString) {
+        }
+
+        @Override
+        public boolean isDone() {
+          return true;
+        }
+      };
+    }
+
+    @Override
+    public void sendBack(Message.MessageType destination, String correlationId, ByteString contents) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Message receive() {
+      return null;
+    }
+
+    @Override
+    public Message receive(long timeout) {
+      return null;
+    }
+  }
+}
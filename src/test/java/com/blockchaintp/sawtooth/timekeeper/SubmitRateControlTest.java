@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class SubmitRateControlTest {
+
+  int submissions(SubmitRateControl control, int rounds) {
+    int submitted = 0;
+    for (int i = 0; i < rounds; i++) {
+      if (control.shouldSubmit()) {
+        submitted++;
+      }
+    }
+    return submitted;
+  }
+
+  @Test
+  public void testBackoffDoublesSkips() {
+    BackoffRateControl control = new BackoffRateControl();
+    assertTrue(control.shouldSubmit());
+    control.onOutcome(SubmitOutcome.QUEUE_FULL, 0);
+    control.onOutcome(SubmitOutcome.CONNECTION_LOST, 0);
+    // two rounds skipped, then a submission
+    assertFalse(control.shouldSubmit());
+    assertFalse(control.shouldSubmit());
+    assertTrue(control.shouldSubmit());
+    control.onOutcome(SubmitOutcome.OK, 0);
+    assertEquals(1, submissions(control, 2));
+  }
+
+  @Test
+  public void testAimdReactsToEachOutcome() {
+    AimdRateControl control = new AimdRateControl(Duration.ofSeconds(2));
+    assertEquals(10, submissions(control, 10));
+
+    control.onOutcome(SubmitOutcome.QUEUE_FULL, 0);
+    assertEquals(0.5, control.getRate(), 0.0);
+    assertEquals(5, submissions(control, 10));
+
+    control.onOutcome(SubmitOutcome.INVALID_BATCH, 0);
+    assertEquals(0.5, control.getRate(), 0.0);
+
+    control.onOutcome(SubmitOutcome.CONNECTION_LOST, 0);
+    assertEquals(0.125, control.getRate(), 0.0);
+
+    // a slow success backs off a little, fast ones recover in steps
+    control.onOutcome(SubmitOutcome.OK, Duration.ofSeconds(3).toNanos());
+    assertEquals(0.09375, control.getRate(), 0.0);
+    for (int i = 0; i < 4; i++) {
+      control.onOutcome(SubmitOutcome.OK, Duration.ofMillis(100).toNanos());
+    }
+    assertEquals(1.0, control.getRate(), 0.0);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blockchaintp.keymanager.KeyManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SubmitterLeaseTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testStandbyTakesOverWhenReleased() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("submitter.lock");
+    AtomicInteger activeRuns = new AtomicInteger();
+    AtomicInteger standbyRuns = new AtomicInteger();
+    try (SubmitterLease active = new SubmitterLease(file); SubmitterLease standby = new SubmitterLease(file)) {
+      Runnable activeTask = active.guard(activeRuns::incrementAndGet);
+      Runnable standbyTask = standby.guard(standbyRuns::incrementAndGet);
+
+      activeTask.run();
+      standbyTask.run();
+      activeTask.run();
+      assertEquals(2, activeRuns.get());
+      assertEquals(0, standbyRuns.get());
+
+      active.close();
+      standbyTask.run();
+      assertEquals(1, standbyRuns.get());
+      assertTrue(standby.tryAcquire());
+      assertFalse(active.tryAcquire());
+    }
+  }
+
+  @Test
+  public void testTakeoverKeepsParticipant() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("submitter.lock");
+    Path keyDir = folder.getRoot().toPath().resolve("key");
+    KeyManager activeKey = TimeKeeperTransactionProcessorMain.createKeyManager(keyDir);
+    KeyManager standbyKey = TimeKeeperTransactionProcessorMain.createKeyManager(keyDir);
+    List<String> submittedAs = new ArrayList<>();
+    try (SubmitterLease active = new SubmitterLease(file); SubmitterLease standby = new SubmitterLease(file)) {
+      Runnable activeTask = active.guard(() -> submittedAs.add(
+          Namespace.makeParticipantAddress(activeKey.getPublicKeyInHex())));
+      Runnable standbyTask = standby.guard(() -> submittedAs.add(
+          Namespace.makeParticipantAddress(standbyKey.getPublicKeyInHex())));
+
+      activeTask.run();
+      standbyTask.run();
+      active.close();
+      standbyTask.run();
+    }
+    assertEquals(2, submittedAs.size());
+    assertEquals(submittedAs.get(0), submittedAs.get(1));
+  }
+}
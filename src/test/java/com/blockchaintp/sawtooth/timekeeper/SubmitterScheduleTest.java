@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SubmitterScheduleTest {
+
+  @Test
+  public void testDelayToPhase() {
+    // period of 20s with a phase of 5s
+    assertEquals(5_000, SubmitterSchedule.delayToPhase(100_000, 20_000, 5_000));
+    assertEquals(20_000, SubmitterSchedule.delayToPhase(105_000, 20_000, 5_000));
+    assertEquals(1, SubmitterSchedule.delayToPhase(104_999, 20_000, 5_000));
+    assertEquals(19_999, SubmitterSchedule.delayToPhase(105_001, 20_000, 5_000));
+  }
+
+  @Test
+  public void testPhasesSpreadAcrossThePeriod() {
+    assertEquals(SubmitterSchedule.phaseOf("02abcdef"), SubmitterSchedule.phaseOf("02abcdef"), 0.0);
+    int[] quarters = new int[4];
+    for (int i = 0; i < 400; i++) {
+      double phase = SubmitterSchedule.phaseOf(String.format("02%064x", i));
+      assertTrue(phase >= 0 && phase < 1);
+      quarters[(int) (phase * 4)]++;
+    }
+    for (int count : quarters) {
+      assertTrue("uneven spread " + count, count > 60 && count < 140);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blockchaintp.keymanager.InMemoryKeyManager;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import sawtooth.sdk.messaging.Future;
+import sawtooth.sdk.messaging.Stream;
+import sawtooth.sdk.protobuf.Batch;
+import sawtooth.sdk.protobuf.ClientBatchSubmitRequest;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+import sawtooth.sdk.protobuf.Message;
+
+public class TimeKeeperRunnableTest {
+
+  private final List<ClientBatchSubmitRequest> sent = new ArrayList<>();
+  private final List<SubmitOutcome> outcomes = new ArrayList<>();
+
+  private final SubmitRateControl everyRound = new SubmitRateControl() {
+    @Override
+    public boolean shouldSubmit() {
+      return true;
+    }
+
+    @Override
+    public void onOutcome(SubmitOutcome outcome, long latencyNanos) {
+      outcomes.add(outcome);
+    }
+  };
+
+  TimeKeeperRunnable submitter(List<String> domains, SubmitRateControl rateControl) {
+    TimeKeeperConfig config = new TimeKeeperConfig(20, 0, 0);
+    return new TimeKeeperRunnable(InMemoryKeyManager.create(), new RejectingStream(), () -> config, domains,
+        rateControl);
+  }
+
+  @Test
+  public void testRejectedDomainDoesNotHoldBackOthers() {
+    submitter(List.of("good", "bad"), everyRound).run();
+    assertEquals(3, sent.size());
+    assertEquals(2, sent.get(0).getBatchesCount());
+    assertEquals(1, sent.get(1).getBatchesCount());
+    assertEquals(1, sent.get(2).getBatchesCount());
+    assertEquals(List.of(SubmitOutcome.OK), outcomes);
+  }
+
+  @Test
+  public void testAllDomainsRejected() {
+    submitter(List.of("bad"), everyRound).run();
+    assertEquals(1, sent.size());
+    assertEquals(List.of(SubmitOutcome.INVALID_BATCH), outcomes);
+  }
+
+  @Test
+  public void testSkippedRoundSendsNothing() {
+    submitter(List.of("good"), new SubmitRateControl() {
+      @Override
+      public boolean shouldSubmit() {
+        return false;
+      }
+
+      @Override
+      public void onOutcome(SubmitOutcome outcome, long latencyNanos) {
+        outcomes.add(outcome);
+      }
+    }).run();
+    assertEquals(0, sent.size());
+    assertEquals(0, outcomes.size());
+  }
+
+  /**
+   * A validator which rejects any request holding an update for the domain "bad", as it rejects a
+   * request with an invalid batch as a whole.
+   */
+  private final class RejectingStream implements Stream {
+
+    @Override
+    public Future send(Message.MessageType destination, ByteString contents) {
+      ClientBatchSubmitResponse.Status status = ClientBatchSubmitResponse.Status.OK;
+      try {
+        ClientBatchSubmitRequest request = ClientBatchSubmitRequest.parseFrom(contents);
+        sent.add(request);
+        for (Batch batch : request.getBatchesList()) {
+          if (TimeKeeperUpdate.parseFrom(batch.getTransactions(0).getPayload()).getDomain().equals("bad")) {
+            status = ClientBatchSubmitResponse.Status.INVALID_BATCH;
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      ByteString response = ClientBatchSubmitResponse.newBuilder().setStatus(status).build().toByteString();
+      return new Future() {
+        @Override
+        public ByteString getResult() {
+          return response;
+        }
+
+        @Override
+        public ByteString getResult(long timeout) {
+          return response;
+        }
+
+        @Override
+        public void setResult(ByteString byteString) {
+        }
+
+        @Override
+        public boolean isDone() {
+          return true;
+        }
+      };
+    }
+
+    @Override
+    public void sendBack(Message.MessageType destination, String correlationId, ByteString contents) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Message receive() {
+      return null;
+    }
+
+    @Override
+    public Message receive(long timeout) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.blockchaintp.sawtooth.timekeeper.bench.InMemoryContext;
+import com.blockchaintp.sawtooth.timekeeper.bench.SimulatedParticipant;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCheckpoint;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperEvent;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.util.Timestamps;
+
+import org.junit.Test;
+
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.Event;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+
+public class TimeKeeperTransactionHandlerTest {
+
+  private final TimeKeeperTransactionHandler handler = new TimeKeeperTransactionHandler();
+
+  TpProcessRequest request(String key, long millis, int maxDeviation) {
+    return request(key, millis, maxDeviation, TimeKeeperVersion.V_2_0);
+  }
+
+  TpProcessRequest request(String key, long millis, int maxDeviation, TimeKeeperVersion version) {
+    TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromMillis(millis))
+        .setVersion(version).setMaxDeviation(maxDeviation).build();
+    return SimulatedParticipant.toRequest(key, update, key + millis);
+  }
+
+  TimeKeeperGlobalRecord globalRecord(InMemoryContext context) throws Exception {
+    return TimeKeeperGlobalRecord.parseFrom(context.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD));
+  }
+
+  @Test
+  public void testApply() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 0), context);
+    handler.apply(request("02bb", 1_002_000L, 0), context);
+    assertEquals(3, context.getState().size());
+    assertTrue(context.getState().containsKey(Namespace.makeParticipantAddress("02aa")));
+    TimeKeeperGlobalRecord record = globalRecord(context);
+    assertEquals(2, record.getParticipantCount());
+    assertEquals(1001, record.getLastCalculatedTime().getSeconds());
+    assertEquals(2, context.getEvents().size());
+    TimeKeeperEvent event = TimeKeeperEvent.parseFrom(context.getEvents().get(1).getData());
+    assertEquals(1001, event.getTimeUpdate().getSeconds());
+    assertEquals(1000, event.getPreviousTime().getSeconds());
+    assertEquals(2, event.getParticipantCount());
+    assertEquals(1000, event.getMinParticipantTime().getSeconds());
+    assertEquals(1002, event.getMaxParticipantTime().getSeconds());
+    assertEquals(EventConstants.TIMEKEEPER_EVENT_SUBJECT, context.getEvents().get(1).getEventType());
+  }
+
+  @Test
+  public void testUnchangedUpdateRewritesGlobalRecordBeforeV3() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 0), context);
+    ByteString global = context.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD);
+    context.clearEvents();
+
+    // processors which predate V_3_0 rewrite the global record and send an event on every update
+    handler.apply(request("02aa", 1_000_400L, 0), context);
+    assertEquals(1, context.getEvents().size());
+    assertTrue(global != context.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD));
+  }
+
+  @Test
+  public void testUnchangedV3UpdateSkipsGlobalRecord() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 0, TimeKeeperVersion.V_3_0), context);
+    ByteString global = context.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD);
+    ByteString participant = context.getState().get(Namespace.makeParticipantAddress("02aa"));
+    context.clearEvents();
+
+    handler.apply(request("02aa", 1_000_000L, 0, TimeKeeperVersion.V_3_0), context);
+    assertEquals(0, context.getEvents().size());
+    assertTrue(global == context.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD));
+    assertTrue(participant != context.getState().get(Namespace.makeParticipantAddress("02aa")));
+
+    handler.apply(request("02aa", 1_000_400L, 0, TimeKeeperVersion.V_3_0), context);
+    assertEquals(1, context.getEvents().size());
+  }
+
+  @Test
+  public void testDeviationRejected() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 30), context);
+    try {
+      handler.apply(request("02bb", 900_000L, 30), context);
+      fail("An update 100s behind the global time should be rejected");
+    } catch (InvalidTransactionException e) {
+      // expected
+    }
+    handler.apply(request("02bb", 1_020_000L, 30), context);
+    assertEquals(1010, globalRecord(context).getLastCalculatedTime().getSeconds());
+  }
+
+  @Test
+  public void testRecoversAfterStall() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 30), context);
+    handler.apply(request("02bb", 1_000_000L, 30), context);
+    // the network stalls for far longer than the deviation, then both participants resume
+    handler.apply(request("02aa", 5_000_000L, 30), context);
+    handler.apply(request("02bb", 5_001_000L, 30), context);
+    handler.apply(request("02aa", 5_020_000L, 0), context);
+    assertTrue(globalRecord(context).getLastCalculatedTime().getSeconds() >= 5_000);
+  }
+
+  @Test
+  public void testCheckpoints() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(39_590))
+        .setVersion(TimeKeeperVersion.V_2_0).setCheckpointSeconds(3600).build();
+    handler.apply(SimulatedParticipant.toRequest("02aa", update, "1"), context);
+    assertTrue(context.getState().containsKey(Namespace.makeCheckpointAddress(36_000)));
+
+    // no further checkpoint until the hour changes
+    handler.apply(request("02aa", 39_595_000L, 0), context);
+    assertEquals(3, context.getState().size());
+    handler.apply(request("02aa", 39_605_000L, 0), context);
+    TimeKeeperCheckpoint checkpoint = TimeKeeperCheckpoint
+        .parseFrom(context.getState().get(Namespace.makeCheckpointAddress(39_600)));
+    assertEquals(39_600, checkpoint.getBucketStart().getSeconds());
+    assertEquals(39_605, checkpoint.getGlobalTime().getSeconds());
+    assertEquals(39_600, globalRecord(context).getLastCheckpointSeconds());
+
+    // a submitter which cannot write checkpoints leaves the hour for the next one
+    TpProcessRequest legacy = request("02bb", 43_210_000L, 0);
+    legacy = legacy.toBuilder().setHeader(legacy.getHeader().toBuilder().clearOutputs()
+        .addAllOutputs(legacy.getHeader().getOutputsList().subList(0, 2))).build();
+    handler.apply(legacy, context);
+    assertTrue(!context.getState().containsKey(Namespace.makeCheckpointAddress(43_200)));
+    handler.apply(request("02aa", 43_220_000L, 0), context);
+    assertTrue(context.getState().containsKey(Namespace.makeCheckpointAddress(43_200)));
+  }
+
+  @Test
+  public void testDomainsAreIndependent() throws Exception {
+    InMemoryContext context = new InMemoryContext();
+    handler.apply(request("02aa", 1_000_000L, 0), context);
+    TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setTimeUpdate(Timestamps.fromSeconds(5000))
+        .setVersion(TimeKeeperVersion.V_2_0).setDomain("ledger-a").build();
+    TpProcessRequest request = SimulatedParticipant.toRequest("02aa", update, "a");
+    assertTrue(!request.getHeader().getOutputsList().contains(Namespace.TIMEKEEPER_GLOBAL_RECORD));
+    handler.apply(request, context);
+
+    assertEquals(1000, globalRecord(context).getLastCalculatedTime().getSeconds());
+    TimeKeeperGlobalRecord domainRecord = TimeKeeperGlobalRecord
+        .parseFrom(context.getState().get(Namespace.makeGlobalRecordAddress("ledger-a")));
+    assertEquals(5000, domainRecord.getLastCalculatedTime().getSeconds());
+    assertTrue(context.getState().containsKey(Namespace.makeParticipantAddress("ledger-a", "02aa")));
+    assertEquals(4, context.getState().size());
+
+    Event event = context.getEvents().get(1);
+    assertEquals(1, event.getAttributesList().stream()
+        .filter(a -> a.getKey().equals(EventConstants.TIMEKEEPER_DOMAIN_ATTRIBUTE) && a.getValue().equals("ledger-a"))
+        .count());
+    assertEquals("ledger-a", TimeKeeperEvent.parseFrom(event.getData()).getDomain());
+  }
+
+  @Test(expected = InvalidTransactionException.class)
+  public void testWrongFamily() throws Exception {
+    TpProcessRequest request = request("02aa", 1_000_000L, 0);
+    request = request.toBuilder().setHeader(request.getHeader().toBuilder().setFamilyName("other")).build();
+    handler.apply(request, new InMemoryContext());
+  }
+}
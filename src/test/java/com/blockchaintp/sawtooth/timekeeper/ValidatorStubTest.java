@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+import com.blockchaintp.sawtooth.timekeeper.bench.ValidatorStub;
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import sawtooth.sdk.protobuf.Batch;
+import sawtooth.sdk.protobuf.ClientBatchSubmitRequest;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+import sawtooth.sdk.protobuf.Message;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+import sawtooth.sdk.protobuf.TpProcessResponse;
+import sawtooth.sdk.protobuf.TpRegisterRequest;
+import sawtooth.sdk.protobuf.TpStateEntry;
+import sawtooth.sdk.protobuf.TpStateGetRequest;
+import sawtooth.sdk.protobuf.TpStateGetResponse;
+import sawtooth.sdk.protobuf.TpStateSetRequest;
+import sawtooth.sdk.protobuf.TpStateSetResponse;
+import sawtooth.sdk.protobuf.Transaction;
+import sawtooth.sdk.protobuf.TransactionHeader;
+
+public class ValidatorStubTest {
+
+  private static final int TIMEOUT_MILLIS = 5_000;
+
+  private ValidatorStub stub;
+  private Thread stubThread;
+  private ZContext zmq;
+  private String endpoint;
+
+  @Before
+  public void setUp() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      endpoint = "tcp://127.0.0.1:" + s.getLocalPort();
+    }
+    stub = new ValidatorStub(endpoint, 0);
+    stubThread = new Thread(stub);
+    stubThread.start();
+    zmq = new ZContext();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    zmq.close();
+    stub.close();
+    stubThread.join();
+  }
+
+  ZMQ.Socket connect() {
+    ZMQ.Socket socket = zmq.createSocket(SocketType.DEALER);
+    socket.setReceiveTimeOut(TIMEOUT_MILLIS);
+    socket.connect(endpoint);
+    return socket;
+  }
+
+  Message exchange(ZMQ.Socket socket, Message.MessageType type, ByteString content) throws Exception {
+    send(socket, type, "c", content);
+    return Message.parseFrom(socket.recv());
+  }
+
+  void send(ZMQ.Socket socket, Message.MessageType type, String correlationId, ByteString content) {
+    socket.send(Message.newBuilder().setMessageType(type).setCorrelationId(correlationId).setContent(content).build()
+        .toByteArray());
+  }
+
+  ByteString batch(String address) {
+    TransactionHeader header = TransactionHeader.newBuilder().setFamilyName(Namespace.TIMEKEEPER_FAMILY_NAME)
+        .addInputs(address).addOutputs(address).build();
+    Transaction txn = Transaction.newBuilder().setHeader(header.toByteString()).setPayload(ByteString.copyFromUtf8("x"))
+        .build();
+    return ClientBatchSubmitRequest.newBuilder().addBatches(Batch.newBuilder().addTransactions(txn)).build()
+        .toByteString();
+  }
+
+  @Test
+  public void testSubmitAndProcess() throws Exception {
+    String address = Namespace.makeParticipantAddress("02aa");
+    ZMQ.Socket tp = connect();
+    exchange(tp, Message.MessageType.TP_REGISTER_REQUEST,
+        TpRegisterRequest.newBuilder().setFamily(Namespace.TIMEKEEPER_FAMILY_NAME).build().toByteString());
+
+    ZMQ.Socket client = connect();
+    Message submitted = exchange(client, Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST, batch(address));
+    assertEquals(ClientBatchSubmitResponse.Status.OK,
+        ClientBatchSubmitResponse.parseFrom(submitted.getContent()).getStatus());
+
+    Message process = Message.parseFrom(tp.recv());
+    assertEquals(Message.MessageType.TP_PROCESS_REQUEST, process.getMessageType());
+    String contextId = TpProcessRequest.parseFrom(process.getContent()).getContextId();
+
+    Message get = exchange(tp, Message.MessageType.TP_STATE_GET_REQUEST,
+        TpStateGetRequest.newBuilder().setContextId(contextId).addAddresses(address).build().toByteString());
+    List<TpStateEntry> entries = TpStateGetResponse.parseFrom(get.getContent()).getEntriesList();
+    assertEquals(1, entries.size());
+    assertTrue(entries.get(0).getData().isEmpty());
+
+    Message denied = exchange(tp, Message.MessageType.TP_STATE_SET_REQUEST,
+        TpStateSetRequest.newBuilder().setContextId(contextId)
+            .addEntries(TpStateEntry.newBuilder().setAddress(Namespace.TIMEKEEPER_GLOBAL_RECORD)).build()
+            .toByteString());
+    assertEquals(TpStateSetResponse.Status.AUTHORIZATION_ERROR,
+        TpStateSetResponse.parseFrom(denied.getContent()).getStatus());
+
+    ByteString data = ByteString.copyFromUtf8("record");
+    exchange(tp, Message.MessageType.TP_STATE_SET_REQUEST, TpStateSetRequest.newBuilder().setContextId(contextId)
+        .addEntries(TpStateEntry.newBuilder().setAddress(address).setData(data)).build().toByteString());
+    assertTrue(stub.getState().isEmpty());
+
+    send(tp, Message.MessageType.TP_PROCESS_RESPONSE, process.getCorrelationId(),
+        TpProcessResponse.newBuilder().setStatus(TpProcessResponse.Status.OK).build().toByteString());
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (stub.getCommittedTransactions() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, stub.getCommittedTransactions());
+    assertEquals(data, stub.getState().get(address));
+    assertEquals(1, stub.drainCommitLatencies().length);
+  }
+
+  @Test
+  public void testInjectedErrors() throws Exception {
+    stub.setSubmitErrors(1.0, ClientBatchSubmitResponse.Status.INTERNAL_ERROR);
+    stub.setSubmitLatency(50);
+    ZMQ.Socket client = connect();
+    long begin = System.nanoTime();
+    Message response = exchange(client, Message.MessageType.CLIENT_BATCH_SUBMIT_REQUEST, batch("abc"));
+    assertTrue(System.nanoTime() - begin >= 50_000_000L);
+    assertEquals(ClientBatchSubmitResponse.Status.INTERNAL_ERROR,
+        ClientBatchSubmitResponse.parseFrom(response.getContent()).getStatus());
+    assertEquals(1, stub.getRejectedBatches());
+    assertEquals(0, stub.getQueueDepth());
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.blockchaintp.keymanager.InMemoryKeyManager;
+import com.blockchaintp.sawtooth.messaging.ZmqStream;
+import com.blockchaintp.sawtooth.timekeeper.InvalidCommandException;
+import com.blockchaintp.sawtooth.timekeeper.Namespace;
+import com.blockchaintp.sawtooth.timekeeper.TimeKeeperRunnable;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.utils.LogUtils;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import sawtooth.sdk.messaging.Stream;
+import sawtooth.sdk.processor.TransactionProcessor;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+
+/**
+ * Runs the submitter and the transaction processor of this project against a ValidatorStub in a
+ * single process and reports the full submit to apply loop.
+ *
+ * <p>
+ * Each simulated participant is a TimeKeeperRunnable with its own key and stream, scheduled at the
+ * given period. Submissions may be delayed or failed for a window of the run, and comparing the
+ * submissions received against the rounds scheduled shows the backoff of the submitters.
+ * </p>
+ */
+public final class EndToEndBenchmark {
+
+  private static final String DEFAULT_ENDPOINT = "tcp://127.0.0.1:14004";
+  private static final int DEFAULT_PARTICIPANTS = 10;
+  private static final long DEFAULT_PERIOD_MILLIS = 1_000;
+  private static final long DEFAULT_DURATION_SECONDS = 60;
+  private static final long DEFAULT_REPORT_SECONDS = 5;
+
+  private static final double P50 = 0.50;
+  private static final double P99 = 0.99;
+
+  private static final String OPT_CONNECT = "C";
+  private static final String OPT_PARTICIPANTS = "n";
+  private static final String OPT_PERIOD = "period-millis";
+  private static final String OPT_DURATION = "duration";
+  private static final String OPT_REPORT = "report";
+  private static final String OPT_LATENCY = "latency";
+  private static final String OPT_ERROR_RATE = "error-rate";
+  private static final String OPT_ERROR_STATUS = "error-status";
+  private static final String OPT_ERROR_FROM = "error-from";
+  private static final String OPT_ERROR_UNTIL = "error-until";
+  private static final String OPT_VERBOSE = "v";
+
+  private String endpoint = DEFAULT_ENDPOINT;
+  private int participantCount = DEFAULT_PARTICIPANTS;
+  private long periodMillis = DEFAULT_PERIOD_MILLIS;
+  private long durationSeconds = DEFAULT_DURATION_SECONDS;
+  private long reportSeconds = DEFAULT_REPORT_SECONDS;
+  private long latencyMillis;
+  private double errorRate;
+  private ClientBatchSubmitResponse.Status errorStatus = ClientBatchSubmitResponse.Status.QUEUE_FULL;
+  private long errorFromSeconds;
+  private long errorUntilSeconds = Long.MAX_VALUE;
+  private int vCount;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          the command line arguments, see --help
+   */
+  public static void main(final String[] args) {
+    final EndToEndBenchmark benchmark = new EndToEndBenchmark();
+    try {
+      benchmark.parseArgs(args);
+      benchmark.run();
+    } catch (InvalidCommandException e) {
+      System.err.println(e.getMessage());
+      System.exit(-1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // the transaction processor does not stop on its own
+    System.exit(0);
+  }
+
+  /**
+   * Run the stub, the transaction processor and the submitters for the configured duration.
+   *
+   * @throws InterruptedException
+   *           if interrupted while running
+   */
+  @SuppressWarnings("java:S2095")
+  public void run() throws InterruptedException {
+    LogUtils.setRootLogLevel(vCount);
+    final ValidatorStub validator = new ValidatorStub(endpoint, 0);
+    validator.setSubmitLatency(latencyMillis);
+    final Thread validatorThread = new Thread(validator, "validator-stub");
+    validatorThread.start();
+
+    final TransactionProcessor processor = new TransactionProcessor(endpoint);
+    processor.addHandler(new TimeKeeperTransactionHandler());
+    final Thread processorThread = new Thread(processor, "transaction-processor");
+    processorThread.setDaemon(true);
+    processorThread.start();
+
+    final ScheduledExecutorService submitters = Executors.newScheduledThreadPool(participantCount);
+    final List<Stream> streams = new ArrayList<>();
+    for (int i = 0; i < participantCount; i++) {
+      final Stream stream = new ZmqStream(endpoint);
+      streams.add(stream);
+      final long initialDelay = periodMillis * i / participantCount;
+      submitters.scheduleWithFixedDelay(new TimeKeeperRunnable(InMemoryKeyManager.create(), stream), initialDelay,
+          periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    if (errorRate > 0) {
+      submitters.schedule(() -> validator.setSubmitErrors(errorRate, errorStatus), errorFromSeconds,
+          TimeUnit.SECONDS);
+      if (errorUntilSeconds < durationSeconds) {
+        submitters.schedule(() -> validator.setSubmitErrors(0, errorStatus), errorUntilSeconds, TimeUnit.SECONDS);
+      }
+    }
+
+    final long start = System.nanoTime();
+    final long reportMillis = TimeUnit.SECONDS.toMillis(reportSeconds);
+    final long endMillis = TimeUnit.SECONDS.toMillis(durationSeconds);
+    long elapsedMillis = 0;
+    long lastSubmitted = 0;
+    long lastRejected = 0;
+    long lastCommitted = 0;
+    long lastInvalid = 0;
+    while (elapsedMillis < endMillis) {
+      Thread.sleep(Math.min(reportMillis, endMillis - elapsedMillis));
+      final long previousMillis = elapsedMillis;
+      elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      final long elapsedSeconds = TimeUnit.MILLISECONDS.toSeconds(elapsedMillis);
+      final long submitted = validator.getSubmittedBatches();
+      final long rejected = validator.getRejectedBatches();
+      final long committed = validator.getCommittedTransactions();
+      final long invalid = validator.getInvalidTransactions();
+      final long rounds = participantCount * (elapsedMillis - previousMillis) / periodMillis;
+      final long[] latencies = validator.drainCommitLatencies();
+      Arrays.sort(latencies);
+      System.out.println(String.format(
+          "t=%ds rounds=%d submitted=%d rejected=%d committed=%d invalid=%d queue=%d"
+              + " commit_ms p50=%.2f p99=%.2f global_participants=%d global_bytes=%d",
+          elapsedSeconds, rounds, submitted - lastSubmitted, rejected - lastRejected, committed - lastCommitted,
+          invalid - lastInvalid, validator.getQueueDepth(), millis(latencies, P50), millis(latencies, P99),
+          globalParticipants(validator), globalBytes(validator)));
+      lastSubmitted = submitted;
+      lastRejected = rejected;
+      lastCommitted = committed;
+      lastInvalid = invalid;
+    }
+
+    submitters.shutdownNow();
+    submitters.awaitTermination(reportSeconds, TimeUnit.SECONDS);
+    for (final Stream stream : streams) {
+      stream.close();
+    }
+    validator.close();
+    validatorThread.join();
+  }
+
+  private static double millis(final long[] sortedNanos, final double quantile) {
+    if (sortedNanos.length == 0) {
+      return 0;
+    }
+    final int index = Math.min(sortedNanos.length - 1, (int) (quantile * sortedNanos.length));
+    return sortedNanos[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static int globalBytes(final ValidatorStub validator) {
+    final ByteString global = validator.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD);
+    if (global == null) {
+      return 0;
+    }
+    return global.size();
+  }
+
+  private static int globalParticipants(final ValidatorStub validator) {
+    final ByteString global = validator.getState().get(Namespace.TIMEKEEPER_GLOBAL_RECORD);
+    if (global == null) {
+      return 0;
+    }
+    try {
+      return TimeKeeperGlobalRecord.parseFrom(global).getParticipantCount();
+    } catch (InvalidProtocolBufferException e) {
+      return -1;
+    }
+  }
+
+  private Options createOptions() {
+    final Options options = new Options();
+    options.addOption(Option.builder(OPT_CONNECT).longOpt("connect").hasArg()
+        .desc("ZMQ endpoint for the validator stub to bind").build());
+    options.addOption(Option.builder(OPT_PARTICIPANTS).longOpt("participants").hasArg()
+        .desc("Number of submitters").build());
+    options.addOption(Option.builder().longOpt(OPT_PERIOD).hasArg()
+        .desc("Milliseconds between the updates of each submitter").build());
+    options.addOption(Option.builder().longOpt(OPT_DURATION).hasArg().desc("Seconds to run for").build());
+    options.addOption(Option.builder().longOpt(OPT_REPORT).hasArg().desc("Seconds between reports").build());
+    options.addOption(Option.builder().longOpt(OPT_LATENCY).hasArg()
+        .desc("Milliseconds to delay each batch submission response").build());
+    options.addOption(Option.builder().longOpt(OPT_ERROR_RATE).hasArg()
+        .desc("Probability that a batch submission fails").build());
+    options.addOption(Option.builder().longOpt(OPT_ERROR_STATUS).hasArg()
+        .desc("Status of failed submissions, e.g. QUEUE_FULL or INTERNAL_ERROR").build());
+    options.addOption(Option.builder().longOpt(OPT_ERROR_FROM).hasArg()
+        .desc("Seconds into the run at which submissions start failing").build());
+    options.addOption(Option.builder().longOpt(OPT_ERROR_UNTIL).hasArg()
+        .desc("Seconds into the run at which submissions stop failing").build());
+    options.addOption(Option.builder(OPT_VERBOSE).desc("Verbosity. Repeat for greater detail.").build());
+    return options;
+  }
+
+  private void parseArgs(final String[] args) throws InvalidCommandException {
+    final CommandLineParser parser = new DefaultParser();
+    final CommandLine cmd;
+    try {
+      cmd = parser.parse(createOptions(), args);
+    } catch (ParseException e) {
+      throw new InvalidCommandException(String.format("Invalid command line arguments: %s", e.getMessage()));
+    }
+    try {
+      if (cmd.hasOption(OPT_CONNECT)) {
+        endpoint = cmd.getOptionValue(OPT_CONNECT);
+      }
+      if (cmd.hasOption(OPT_PARTICIPANTS)) {
+        participantCount = Integer.parseInt(cmd.getOptionValue(OPT_PARTICIPANTS));
+      }
+      if (cmd.hasOption(OPT_PERIOD)) {
+        periodMillis = Long.parseLong(cmd.getOptionValue(OPT_PERIOD));
+      }
+      if (cmd.hasOption(OPT_DURATION)) {
+        durationSeconds = Long.parseLong(cmd.getOptionValue(OPT_DURATION));
+      }
+      if (cmd.hasOption(OPT_REPORT)) {
+        reportSeconds = Long.parseLong(cmd.getOptionValue(OPT_REPORT));
+      }
+      if (cmd.hasOption(OPT_LATENCY)) {
+        latencyMillis = Long.parseLong(cmd.getOptionValue(OPT_LATENCY));
+      }
+      if (cmd.hasOption(OPT_ERROR_RATE)) {
+        errorRate = Double.parseDouble(cmd.getOptionValue(OPT_ERROR_RATE));
+      }
+      if (cmd.hasOption(OPT_ERROR_STATUS)) {
+        errorStatus = ClientBatchSubmitResponse.Status.valueOf(cmd.getOptionValue(OPT_ERROR_STATUS));
+      }
+      if (cmd.hasOption(OPT_ERROR_FROM)) {
+        errorFromSeconds = Long.parseLong(cmd.getOptionValue(OPT_ERROR_FROM));
+      }
+      if (cmd.hasOption(OPT_ERROR_UNTIL)) {
+        errorUntilSeconds = Long.parseLong(cmd.getOptionValue(OPT_ERROR_UNTIL));
+      }
+    } catch (IllegalArgumentException e) {
+      throw new InvalidCommandException(String.format("Invalid option value: %s", e.getMessage()));
+    }
+    for (final Option o : cmd.getOptions()) {
+      if (OPT_VERBOSE.equals(o.getOpt())) {
+        vCount++;
+      }
+    }
+    if (participantCount <= 0 || periodMillis <= 0 || durationSeconds <= 0 || reportSeconds <= 0) {
+      throw new InvalidCommandException("participants, period, duration and report must be positive");
+    }
+  }
+}
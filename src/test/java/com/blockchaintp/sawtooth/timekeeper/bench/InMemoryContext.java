@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.ByteString;
+
+import sawtooth.sdk.processor.Context;
+import sawtooth.sdk.protobuf.Event;
+
+/**
+ * A Context which keeps global state, events and receipt data in memory, standing in for a
+ * validator when driving a TransactionHandler directly. State writes are visible to subsequent
+ * reads immediately, as if every transaction were committed on its own.
+ */
+public final class InMemoryContext implements Context {
+
+  private final Map<String, ByteString> state;
+  private final List<Event> events;
+  private final List<ByteString> receipts;
+
+  /**
+   * Create a context with empty state.
+   */
+  public InMemoryContext() {
+    this(Collections.emptyMap());
+  }
+
+  /**
+   * Create a context seeded with the given state.
+   *
+   * @param initialState
+   *          the entries to start from
+   */
+  public InMemoryContext(final Map<String, ByteString> initialState) {
+    this.state = new HashMap<>(initialState);
+    this.events = new ArrayList<>();
+    this.receipts = new ArrayList<>();
+  }
+
+  @Override
+  public Map<String, ByteString> getState(final Collection<String> addresses) {
+    final Map<String, ByteString> results = new HashMap<>();
+    for (final String address : addresses) {
+      final ByteString value = state.get(address);
+      if (value != null) {
+        results.put(address, value);
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public Collection<String> setState(final Collection<Map.Entry<String, ByteString>> addressValuePairs) {
+    final List<String> addresses = new ArrayList<>(addressValuePairs.size());
+    for (final Map.Entry<String, ByteString> e : addressValuePairs) {
+      state.put(e.getKey(), e.getValue());
+      addresses.add(e.getKey());
+    }
+    return addresses;
+  }
+
+  @Override
+  public void addReceiptData(final ByteString data) {
+    receipts.add(data);
+  }
+
+  @Override
+  public void addEvent(final String eventType, final Collection<Map.Entry<String, String>> attributes,
+      final ByteString extraData) {
+    final Event.Builder builder = Event.newBuilder().setEventType(eventType).setData(extraData);
+    for (final Map.Entry<String, String> a : attributes) {
+      builder.addAttributes(Event.Attribute.newBuilder().setKey(a.getKey()).setValue(a.getValue()));
+    }
+    events.add(builder.build());
+  }
+
+  @Override
+  public Collection<String> deleteState(final Collection<String> addresses) {
+    final List<String> deleted = new ArrayList<>();
+    for (final String address : addresses) {
+      if (state.remove(address) != null) {
+        deleted.add(address);
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Return a read only view of the current state.
+   *
+   * @return the state entries by address
+   */
+  public Map<String, ByteString> getState() {
+    return Collections.unmodifiableMap(state);
+  }
+
+  /**
+   * Return the events added since the context was created or last cleared.
+   *
+   * @return the events in the order they were added
+   */
+  public List<Event> getEvents() {
+    return Collections.unmodifiableList(events);
+  }
+
+  /**
+   * Return the receipt data added since the context was created or last cleared.
+   *
+   * @return the receipt data in the order it was added
+   */
+  public List<ByteString> getReceipts() {
+    return Collections.unmodifiableList(receipts);
+  }
+
+  /**
+   * Discard the collected events and receipt data, leaving state in place.
+   */
+  public void clearEvents() {
+    events.clear();
+    receipts.clear();
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.blockchaintp.sawtooth.timekeeper.InvalidCommandException;
+import com.blockchaintp.sawtooth.timekeeper.Namespace;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperGlobalRecord;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperHistoryMode;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import sawtooth.sdk.processor.exceptions.InternalError;
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+
+/**
+ * Drives a TimeKeeperTransactionHandler with a synthetic population of participants against an
+ * InMemoryContext and reports throughput, apply latency and the growth of the records.
+ *
+ * <p>
+ * Simulated time advances so that every participant submits once per period, and runs as fast as
+ * the handler allows. Each participant has a fixed clock skew and a random jitter, and may be
+ * replaced by a new identity at any update, as happens when a submitter restarts.
+ * </p>
+ */
+public final class LoadGenerator {
+
+  private static final int DEFAULT_PARTICIPANTS = 10;
+  private static final long DEFAULT_TRANSACTIONS = 100_000;
+  private static final int DEFAULT_PERIOD_SECONDS = 20;
+  private static final long DEFAULT_SKEW_MILLIS = 500;
+  private static final long DEFAULT_JITTER_MILLIS = 50;
+  private static final int DEFAULT_REPORT_EVERY = 10_000;
+
+  private static final double P50 = 0.50;
+  private static final double P90 = 0.90;
+  private static final double P99 = 0.99;
+
+  private static final String OPT_PARTICIPANTS = "n";
+  private static final String OPT_TRANSACTIONS = "t";
+  private static final String OPT_PERIOD = "p";
+  private static final String OPT_SKEW = "skew";
+  private static final String OPT_JITTER = "jitter";
+  private static final String OPT_CHURN = "churn";
+  private static final String OPT_REPORT = "report";
+  private static final String OPT_SEED = "seed";
+  private static final String OPT_AGGREGATION = "aggregation";
+  private static final String OPT_MAX_DEVIATION = "max-deviation";
+  private static final String OPT_EXPIRY = "expiry";
+  private static final String OPT_MAX_PARTICIPANTS = "max-participants";
+  private static final String OPT_HISTORY_MODE = "history-mode";
+  private static final String OPT_CHECKPOINT = "checkpoint";
+
+  private int participantCount = DEFAULT_PARTICIPANTS;
+  private long transactions = DEFAULT_TRANSACTIONS;
+  private int periodSeconds = DEFAULT_PERIOD_SECONDS;
+  private long skewMillis = DEFAULT_SKEW_MILLIS;
+  private long jitterMillis = DEFAULT_JITTER_MILLIS;
+  private double churn = 0.0;
+  private int reportEvery = DEFAULT_REPORT_EVERY;
+  private long seed = 0;
+  private TimeKeeperUpdate template = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0).build();
+
+  private Random random;
+  private long nextIdentity;
+
+  /**
+   * Run the load generator.
+   *
+   * @param args
+   *          the command line arguments, see --help
+   */
+  public static void main(final String[] args) {
+    final LoadGenerator generator = new LoadGenerator();
+    try {
+      generator.parseArgs(args);
+      generator.run();
+    } catch (InvalidCommandException | InternalError e) {
+      System.err.println(e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  /**
+   * Run the configured number of transactions through a new handler and context.
+   *
+   * @throws InternalError
+   *           if the handler fails with an internal error
+   */
+  public void run() throws InternalError {
+    random = new Random(seed);
+    final List<SimulatedParticipant> participants = new ArrayList<>();
+    for (int i = 0; i < participantCount; i++) {
+      participants.add(newParticipant());
+    }
+    final InMemoryContext context = new InMemoryContext();
+    final TimeKeeperTransactionHandler handler = new TimeKeeperTransactionHandler();
+    final long startMillis = System.currentTimeMillis();
+    final long periodMillis = TimeUnit.SECONDS.toMillis(periodSeconds);
+    final long[] latencies = new long[reportEvery];
+    int sampled = 0;
+    long invalid = 0;
+    long intervalStart = System.nanoTime();
+
+    for (long i = 0; i < transactions; i++) {
+      final int index = (int) (i % participantCount);
+      if (churn > 0 && random.nextDouble() < churn) {
+        participants.set(index, newParticipant());
+      }
+      final long nowMillis = startMillis + i * periodMillis / participantCount;
+      final TpProcessRequest request = participants.get(index).nextRequest(nowMillis);
+      final long begin = System.nanoTime();
+      try {
+        handler.apply(request, context);
+      } catch (InvalidTransactionException e) {
+        invalid++;
+      }
+      latencies[sampled++] = System.nanoTime() - begin;
+      if (sampled == latencies.length || i == transactions - 1) {
+        final long elapsed = System.nanoTime() - intervalStart;
+        System.out.println(report(i + 1, latencies, sampled, elapsed, invalid, context));
+        context.clearEvents();
+        sampled = 0;
+        invalid = 0;
+        intervalStart = System.nanoTime();
+      }
+    }
+  }
+
+  private SimulatedParticipant newParticipant() {
+    nextIdentity++;
+    final String key = String.format("02%064x", nextIdentity);
+    final long skew = Math.round((random.nextDouble() * 2 - 1) * skewMillis);
+    return new SimulatedParticipant(key, skew, jitterMillis, random, template);
+  }
+
+  private String report(final long total, final long[] latencies, final int count, final long elapsedNanos,
+      final long invalid, final InMemoryContext context) {
+    Arrays.sort(latencies, 0, count);
+    final double tps = count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+
+    int globalParticipants = 0;
+    int globalBytes = 0;
+    long participantBytes = 0;
+    int participantRecords = 0;
+    int checkpoints = 0;
+    for (final Map.Entry<String, ByteString> e : context.getState().entrySet()) {
+      if (e.getKey().equals(Namespace.TIMEKEEPER_GLOBAL_RECORD)) {
+        globalBytes = e.getValue().size();
+        try {
+          globalParticipants = TimeKeeperGlobalRecord.parseFrom(e.getValue()).getParticipantCount();
+        } catch (InvalidProtocolBufferException exc) {
+          globalParticipants = -1;
+        }
+      } else if (e.getKey().startsWith(Namespace.TIMEKEEPER_CHECKPOINT_NS)) {
+        checkpoints++;
+      } else {
+        participantBytes += e.getValue().size();
+        participantRecords++;
+      }
+    }
+    long participantAverage = 0;
+    if (participantRecords > 0) {
+      participantAverage = participantBytes / participantRecords;
+    }
+    return String.format(
+        "txns=%d tps=%.0f latency_us p50=%.1f p90=%.1f p99=%.1f max=%.1f invalid=%d events=%d"
+            + " global_participants=%d global_bytes=%d participant_records=%d participant_avg_bytes=%d"
+            + " checkpoints=%d",
+        total, tps, micros(latencies, count, P50), micros(latencies, count, P90), micros(latencies, count, P99),
+        micros(latencies, count, 1.0), invalid, context.getEvents().size(), globalParticipants, globalBytes,
+        participantRecords, participantAverage, checkpoints);
+  }
+
+  private static double micros(final long[] sortedNanos, final int count, final double quantile) {
+    final int index = Math.min(count - 1, (int) (quantile * count));
+    return sortedNanos[index] / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  private Options createOptions() {
+    final Options options = new Options();
+    options.addOption(Option.builder(OPT_PARTICIPANTS).longOpt("participants").hasArg()
+        .desc("Number of simulated participants").build());
+    options.addOption(Option.builder(OPT_TRANSACTIONS).longOpt("transactions").hasArg()
+        .desc("Number of transactions to apply").build());
+    options.addOption(Option.builder(OPT_PERIOD).longOpt("period").hasArg()
+        .desc("Simulated seconds between updates of each participant").build());
+    options.addOption(Option.builder().longOpt(OPT_SKEW).hasArg()
+        .desc("Maximum clock skew of a participant in milliseconds").build());
+    options.addOption(Option.builder().longOpt(OPT_JITTER).hasArg()
+        .desc("Standard deviation of the clock jitter in milliseconds").build());
+    options.addOption(Option.builder().longOpt(OPT_CHURN).hasArg()
+        .desc("Probability that a participant is replaced by a new identity at an update").build());
+    options.addOption(Option.builder().longOpt(OPT_REPORT).hasArg().desc("Report every this many transactions")
+        .build());
+    options.addOption(Option.builder().longOpt(OPT_SEED).hasArg().desc("Random seed").build());
+    options.addOption(Option.builder().longOpt(OPT_AGGREGATION).hasArg()
+        .desc("Global time aggregation to request, e.g. QUICKSELECT_MEDIAN").build());
+    options.addOption(Option.builder().longOpt(OPT_MAX_DEVIATION).hasArg()
+        .desc("Maximum deviation in seconds to request").build());
+    options.addOption(Option.builder().longOpt(OPT_EXPIRY).hasArg()
+        .desc("Participant expiry in seconds to request").build());
+    options.addOption(Option.builder().longOpt(OPT_MAX_PARTICIPANTS).hasArg()
+        .desc("Maximum participants in the global record to request").build());
+    options.addOption(Option.builder().longOpt(OPT_HISTORY_MODE).hasArg()
+        .desc("Participant history mode to request, e.g. SUMMARY").build());
+    options.addOption(Option.builder().longOpt(OPT_CHECKPOINT).hasArg()
+        .desc("Seconds between global time checkpoints to request").build());
+    return options;
+  }
+
+  private void parseArgs(final String[] args) throws InvalidCommandException {
+    final CommandLineParser parser = new DefaultParser();
+    final CommandLine cmd;
+    try {
+      cmd = parser.parse(createOptions(), args);
+    } catch (ParseException e) {
+      throw new InvalidCommandException(String.format("Invalid command line arguments: %s", e.getMessage()));
+    }
+    try {
+      if (cmd.hasOption(OPT_PARTICIPANTS)) {
+        participantCount = Integer.parseInt(cmd.getOptionValue(OPT_PARTICIPANTS));
+      }
+      if (cmd.hasOption(OPT_TRANSACTIONS)) {
+        transactions = Long.parseLong(cmd.getOptionValue(OPT_TRANSACTIONS));
+      }
+      if (cmd.hasOption(OPT_PERIOD)) {
+        periodSeconds = Integer.parseInt(cmd.getOptionValue(OPT_PERIOD));
+      }
+      if (cmd.hasOption(OPT_SKEW)) {
+        skewMillis = Long.parseLong(cmd.getOptionValue(OPT_SKEW));
+      }
+      if (cmd.hasOption(OPT_JITTER)) {
+        jitterMillis = Long.parseLong(cmd.getOptionValue(OPT_JITTER));
+      }
+      if (cmd.hasOption(OPT_CHURN)) {
+        churn = Double.parseDouble(cmd.getOptionValue(OPT_CHURN));
+      }
+      if (cmd.hasOption(OPT_REPORT)) {
+        reportEvery = Integer.parseInt(cmd.getOptionValue(OPT_REPORT));
+      }
+      if (cmd.hasOption(OPT_SEED)) {
+        seed = Long.parseLong(cmd.getOptionValue(OPT_SEED));
+      }
+      final TimeKeeperUpdate.Builder builder = template.toBuilder();
+      if (cmd.hasOption(OPT_AGGREGATION)) {
+        builder.setAggregation(TimeKeeperAggregation.valueOf(cmd.getOptionValue(OPT_AGGREGATION)));
+      }
+      if (cmd.hasOption(OPT_MAX_DEVIATION)) {
+        builder.setMaxDeviation(Integer.parseInt(cmd.getOptionValue(OPT_MAX_DEVIATION)));
+      }
+      if (cmd.hasOption(OPT_EXPIRY)) {
+        builder.setExpirySeconds(Integer.parseInt(cmd.getOptionValue(OPT_EXPIRY)));
+      }
+      if (cmd.hasOption(OPT_MAX_PARTICIPANTS)) {
+        builder.setMaxParticipants(Integer.parseInt(cmd.getOptionValue(OPT_MAX_PARTICIPANTS)));
+      }
+      if (cmd.hasOption(OPT_HISTORY_MODE)) {
+        builder.setHistoryMode(TimeKeeperHistoryMode.valueOf(cmd.getOptionValue(OPT_HISTORY_MODE)));
+      }
+      if (cmd.hasOption(OPT_CHECKPOINT)) {
+        builder.setCheckpointSeconds(Integer.parseInt(cmd.getOptionValue(OPT_CHECKPOINT)));
+      }
+      template = builder.build();
+    } catch (IllegalArgumentException e) {
+      throw new InvalidCommandException(String.format("Invalid option value: %s", e.getMessage()));
+    }
+    if (participantCount <= 0 || transactions <= 0 || periodSeconds <= 0 || reportEvery <= 0) {
+      throw new InvalidCommandException("participants, transactions, period and report must be positive");
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.blockchaintp.sawtooth.timekeeper.InvalidCommandException;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCapture;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperCaptureEntry;
+import com.google.protobuf.ByteString;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import sawtooth.sdk.processor.TransactionHandler;
+import sawtooth.sdk.processor.exceptions.InternalError;
+import sawtooth.sdk.processor.exceptions.InvalidTransactionException;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+
+/**
+ * Replays a capture file written by a CapturingTransactionHandler through a
+ * TimeKeeperTransactionHandler as fast as it will go, and checks that every transaction writes the
+ * same state and events as it did when captured.
+ *
+ * <p>
+ * Each transaction is applied to an InMemoryContext holding only the state it read when captured,
+ * so transactions are independent of each other and of the order of the file. Only the apply calls
+ * are timed.
+ * </p>
+ */
+public final class ReplayBenchmark {
+
+  private static final double P50 = 0.50;
+  private static final double P99 = 0.99;
+  private static final int INITIAL_LATENCIES = 1_024;
+  private static final int MAX_REPORTED_MISMATCHES = 10;
+
+  private static final String OPT_FILE = "f";
+  private static final String OPT_ITERATIONS = "i";
+  private static final String OPT_NO_VERIFY = "no-verify";
+
+  private final TransactionHandler handler;
+  private Path file;
+  private int iterations = 1;
+  private boolean verify = true;
+
+  private long transactions;
+  private long mismatches;
+  private long[] latencies = new long[INITIAL_LATENCIES];
+
+  /**
+   * Create a replay through a new TimeKeeperTransactionHandler.
+   */
+  public ReplayBenchmark() {
+    this(new TimeKeeperTransactionHandler());
+  }
+
+  /**
+   * Create a replay through the given handler.
+   *
+   * @param transactionHandler
+   *          the handler to replay the transactions with
+   */
+  public ReplayBenchmark(final TransactionHandler transactionHandler) {
+    this.handler = transactionHandler;
+  }
+
+  /**
+   * Replay a capture file.
+   *
+   * @param args
+   *          the command line arguments, see --help
+   */
+  public static void main(final String[] args) {
+    final ReplayBenchmark replay = new ReplayBenchmark();
+    try {
+      replay.parseArgs(args);
+      for (int i = 0; i < replay.iterations; i++) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(replay.file))) {
+          replay.replay(in);
+        }
+        System.out.println(replay.report(i + 1));
+        replay.transactions = 0;
+      }
+    } catch (InvalidCommandException | IOException | InternalError e) {
+      System.err.println(e.getMessage());
+      System.exit(-1);
+    }
+    if (replay.mismatches > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Replay every transaction in a stream of captures.
+   *
+   * @param in
+   *          the length delimited TimeKeeperCaptures
+   * @return the number of transactions whose output did not match the capture
+   * @throws IOException
+   *           if the stream cannot be read
+   * @throws InternalError
+   *           if the handler fails with an internal error
+   */
+  public long replay(final InputStream in) throws IOException, InternalError {
+    long frameMismatches = 0;
+    TimeKeeperCapture captured = TimeKeeperCapture.parseDelimitedFrom(in);
+    while (captured != null) {
+      final TpProcessRequest request = TpProcessRequest.parseFrom(captured.getRequest());
+      final Map<String, ByteString> reads = new HashMap<>();
+      for (final TimeKeeperCaptureEntry e : captured.getReadsList()) {
+        reads.put(e.getAddress(), e.getData());
+      }
+      final TimeKeeperCapture.Builder replayed = TimeKeeperCapture.newBuilder().setRequest(captured.getRequest());
+      final CapturingContext context = new CapturingContext(new InMemoryContext(reads), replayed);
+
+      final long begin = System.nanoTime();
+      try {
+        handler.apply(request, context);
+      } catch (InvalidTransactionException e) {
+        replayed.setInvalid(true).setMessage(String.valueOf(e.getMessage()));
+      }
+      recordLatency(System.nanoTime() - begin);
+
+      if (verify && !matches(captured, replayed)) {
+        frameMismatches++;
+        if (mismatches + frameMismatches <= MAX_REPORTED_MISMATCHES) {
+          System.err.println(String.format("Mismatch at transaction %d, signature %s", transactions,
+              request.getSignature()));
+        }
+      }
+      captured = TimeKeeperCapture.parseDelimitedFrom(in);
+    }
+    mismatches += frameMismatches;
+    return frameMismatches;
+  }
+
+  private static boolean matches(final TimeKeeperCapture captured, final TimeKeeperCapture.Builder replayed) {
+    return captured.getInvalid() == replayed.getInvalid() && captured.getWritesList().equals(replayed.getWritesList())
+        && captured.getDeletesList().equals(replayed.getDeletesList())
+        && captured.getEventsList().equals(replayed.getEventsList());
+  }
+
+  private void recordLatency(final long nanos) {
+    if (transactions == latencies.length) {
+      latencies = Arrays.copyOf(latencies, latencies.length * 2);
+    }
+    latencies[(int) transactions] = nanos;
+    transactions++;
+  }
+
+  private String report(final int iteration) {
+    final int count = (int) transactions;
+    Arrays.sort(latencies, 0, count);
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      total += latencies[i];
+    }
+    double tps = 0;
+    if (total > 0) {
+      tps = count * (double) TimeUnit.SECONDS.toNanos(1) / total;
+    }
+    return String.format("iteration=%d txns=%d tps=%.0f latency_us p50=%.1f p99=%.1f max=%.1f mismatches=%d",
+        iteration, count, tps, micros(count, P50), micros(count, P99), micros(count, 1.0), mismatches);
+  }
+
+  private double micros(final int count, final double quantile) {
+    if (count == 0) {
+      return 0;
+    }
+    final int index = Math.min(count - 1, (int) (quantile * count));
+    return latencies[index] / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  private Options createOptions() {
+    final Options options = new Options();
+    options.addOption(Option.builder(OPT_FILE).longOpt("file").hasArg().required()
+        .desc("Capture file written by the transaction processor with --capture").build());
+    options.addOption(Option.builder(OPT_ITERATIONS).longOpt("iterations").hasArg()
+        .desc("Number of times to replay the file").build());
+    options.addOption(Option.builder().longOpt(OPT_NO_VERIFY).desc("Skip comparing the output with the capture")
+        .build());
+    return options;
+  }
+
+  private void parseArgs(final String[] args) throws InvalidCommandException {
+    final CommandLineParser parser = new DefaultParser();
+    final CommandLine cmd;
+    try {
+      cmd = parser.parse(createOptions(), args);
+    } catch (ParseException e) {
+      throw new InvalidCommandException(String.format("Invalid command line arguments: %s", e.getMessage()));
+    }
+    file = Paths.get(cmd.getOptionValue(OPT_FILE));
+    if (cmd.hasOption(OPT_ITERATIONS)) {
+      try {
+        iterations = Integer.parseInt(cmd.getOptionValue(OPT_ITERATIONS));
+      } catch (NumberFormatException e) {
+        throw new InvalidCommandException(String.format("Invalid iterations: %s", e.getMessage()));
+      }
+    }
+    verify = !cmd.hasOption(OPT_NO_VERIFY);
+  }
+}
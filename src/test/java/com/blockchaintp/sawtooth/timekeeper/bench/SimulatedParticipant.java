@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.Random;
+
+import com.blockchaintp.sawtooth.timekeeper.Namespace;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.utils.VersionedEnvelopeUtils;
+import com.google.protobuf.util.Timestamps;
+
+import sawtooth.sdk.protobuf.TpProcessRequest;
+import sawtooth.sdk.protobuf.TransactionHeader;
+
+/**
+ * A simulated TimeKeeper submitter with a fixed clock skew and a random jitter on every reading,
+ * producing the TpProcessRequests a validator would hand to the transaction processor.
+ */
+public final class SimulatedParticipant {
+
+  private final String publicKey;
+  private final long skewMillis;
+  private final long jitterMillis;
+  private final Random random;
+  private final TimeKeeperUpdate template;
+  private long sequence;
+
+  /**
+   * Create a participant.
+   *
+   * @param participantKey
+   *          the public key in hex this participant signs with
+   * @param skew
+   *          the fixed offset of this participant's clock in milliseconds
+   * @param jitter
+   *          the standard deviation of the per reading jitter in milliseconds
+   * @param rnd
+   *          the source of jitter
+   * @param updateTemplate
+   *          the update to send, the time of which is replaced on every reading
+   */
+  public SimulatedParticipant(final String participantKey, final long skew, final long jitter, final Random rnd,
+      final TimeKeeperUpdate updateTemplate) {
+    this.publicKey = participantKey;
+    this.skewMillis = skew;
+    this.jitterMillis = jitter;
+    this.random = rnd;
+    this.template = updateTemplate;
+    this.sequence = 0;
+  }
+
+  /**
+   * Return the public key of this participant.
+   *
+   * @return the public key in hex
+   */
+  public String getPublicKey() {
+    return publicKey;
+  }
+
+  /**
+   * Read this participant's clock at the given true time.
+   *
+   * @param nowMillis
+   *          the true time in milliseconds since the epoch
+   * @return the update this participant would send
+   */
+  public TimeKeeperUpdate nextUpdate(final long nowMillis) {
+    final long jitter = Math.round(random.nextGaussian() * jitterMillis);
+    final long reading = Math.max(0, nowMillis + skewMillis + jitter);
+    return template.toBuilder().setTimeUpdate(Timestamps.fromMillis(reading)).build();
+  }
+
+  /**
+   * Read this participant's clock at the given true time and wrap the update as a process request.
+   *
+   * @param nowMillis
+   *          the true time in milliseconds since the epoch
+   * @return the request the transaction processor would receive
+   */
+  public TpProcessRequest nextRequest(final long nowMillis) {
+    sequence++;
+    return toRequest(publicKey, nextUpdate(nowMillis), String.format("%s-%d", publicKey, sequence));
+  }
+
+  /**
+   * Wrap an update from the given signer as a process request, with the payload in the versioned
+   * envelope a submitter puts it in.
+   *
+   * @param signerPublicKey
+   *          the public key of the signer in hex
+   * @param update
+   *          the update
+   * @param contextId
+   *          the context id, which also serves as the signature
+   * @return the request
+   */
+  public static TpProcessRequest toRequest(final String signerPublicKey, final TimeKeeperUpdate update,
+      final String contextId) {
+    final String domain = update.getDomain();
+    final String recordAddress = Namespace.makeParticipantAddress(domain, signerPublicKey);
+    final String globalAddress = Namespace.makeGlobalRecordAddress(domain);
+    final TransactionHeader header = TransactionHeader.newBuilder().setFamilyName(Namespace.TIMEKEEPER_FAMILY_NAME)
+        .setFamilyVersion(Namespace.TIMEKEEPER_FAMILY_VERSION_1_0).setSignerPublicKey(signerPublicKey)
+        .setBatcherPublicKey(signerPublicKey).addInputs(recordAddress).addInputs(globalAddress)
+        .addOutputs(recordAddress).addOutputs(globalAddress).addOutputs(Namespace.makeCheckpointPrefix(domain))
+        .build();
+    return TpProcessRequest.newBuilder().setHeader(header)
+        .setPayload(VersionedEnvelopeUtils.wrap(update.toByteString())).setSignature(contextId)
+        .setContextId(contextId).build();
+  }
+}
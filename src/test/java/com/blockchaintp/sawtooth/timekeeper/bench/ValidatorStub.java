@@ -0,0 +1,570 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.bench;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import sawtooth.sdk.protobuf.Batch;
+import sawtooth.sdk.protobuf.ClientBatchSubmitRequest;
+import sawtooth.sdk.protobuf.ClientBatchSubmitResponse;
+import sawtooth.sdk.protobuf.Event;
+import sawtooth.sdk.protobuf.Message;
+import sawtooth.sdk.protobuf.TpEventAddRequest;
+import sawtooth.sdk.protobuf.TpEventAddResponse;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+import sawtooth.sdk.protobuf.TpProcessResponse;
+import sawtooth.sdk.protobuf.TpReceiptAddDataRequest;
+import sawtooth.sdk.protobuf.TpReceiptAddDataResponse;
+import sawtooth.sdk.protobuf.TpRegisterRequest;
+import sawtooth.sdk.protobuf.TpRegisterResponse;
+import sawtooth.sdk.protobuf.TpStateDeleteRequest;
+import sawtooth.sdk.protobuf.TpStateDeleteResponse;
+import sawtooth.sdk.protobuf.TpStateEntry;
+import sawtooth.sdk.protobuf.TpStateGetRequest;
+import sawtooth.sdk.protobuf.TpStateGetResponse;
+import sawtooth.sdk.protobuf.TpStateSetRequest;
+import sawtooth.sdk.protobuf.TpStateSetResponse;
+import sawtooth.sdk.protobuf.TpUnregisterResponse;
+import sawtooth.sdk.protobuf.Transaction;
+import sawtooth.sdk.protobuf.TransactionHeader;
+
+/**
+ * A single process stand-in for a Sawtooth validator, speaking enough of the validator protocol
+ * over a ZMQ ROUTER socket for a submitter and a transaction processor to run against it.
+ *
+ * <p>
+ * Submitted batches are queued and their transactions dispatched one at a time to the transaction
+ * processor registered for their family. The context calls of the transaction processor are served
+ * from an in-memory state, checked against the inputs and outputs of the transaction, and the
+ * writes are committed when the processor answers OK. There is no block publishing, signature
+ * checking or parallel scheduling.
+ * </p>
+ *
+ * <p>
+ * The acknowledgement of a batch submission may be delayed, and a fraction of submissions answered
+ * with an error status instead, to exercise the backoff of a submitter. Both may be changed while
+ * the stub is running.
+ * </p>
+ */
+public final class ValidatorStub implements Runnable, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidatorStub.class);
+
+  private static final long IDLE_POLL_MILLIS = 100;
+  private static final int DEFAULT_MAX_QUEUE = 1_000;
+  private static final int INITIAL_LATENCIES = 1_024;
+
+  private final String endpoint;
+  private final Map<String, ByteString> state = new ConcurrentHashMap<>();
+  private final Deque<PendingTransaction> queue = new ArrayDeque<>();
+  private final PriorityQueue<DelayedReply> delayedReplies = new PriorityQueue<>();
+  private final Map<String, byte[]> processors = new HashMap<>();
+  private final Random random;
+
+  private final AtomicLong submittedBatches = new AtomicLong();
+  private final AtomicLong rejectedBatches = new AtomicLong();
+  private final AtomicLong committedTransactions = new AtomicLong();
+  private final AtomicLong invalidTransactions = new AtomicLong();
+  private final AtomicLong events = new AtomicLong();
+
+  private final Object latencyLock = new Object();
+  private long[] commitLatencies = new long[INITIAL_LATENCIES];
+  private int commitLatencyCount;
+
+  private volatile boolean running = true;
+  private volatile long submitLatencyMillis;
+  private volatile double submitErrorRate;
+  private volatile ClientBatchSubmitResponse.Status submitErrorStatus = ClientBatchSubmitResponse.Status.QUEUE_FULL;
+  private volatile int queueDepth;
+  private volatile int maxQueue = DEFAULT_MAX_QUEUE;
+
+  private InFlight inFlight;
+  private long nextContextId;
+
+  /**
+   * Create a stub which will bind to the given endpoint when run.
+   *
+   * @param bindEndpoint
+   *          the ZMQ endpoint to bind, e.g. tcp://127.0.0.1:4004
+   * @param seed
+   *          the seed for the injected errors
+   */
+  public ValidatorStub(final String bindEndpoint, final long seed) {
+    this.endpoint = bindEndpoint;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Delay the acknowledgement of every batch submission.
+   *
+   * @param millis
+   *          the delay in milliseconds, 0 to answer immediately
+   */
+  public void setSubmitLatency(final long millis) {
+    this.submitLatencyMillis = millis;
+  }
+
+  /**
+   * Answer a fraction of batch submissions with an error status, without queueing the batch.
+   *
+   * @param rate
+   *          the probability that a submission fails, 0 for none
+   * @param status
+   *          the status to answer failed submissions with
+   */
+  public void setSubmitErrors(final double rate, final ClientBatchSubmitResponse.Status status) {
+    this.submitErrorStatus = status;
+    this.submitErrorRate = rate;
+  }
+
+  /**
+   * Set the number of pending transactions beyond which submissions are answered with QUEUE_FULL.
+   *
+   * @param max
+   *          the maximum queue depth
+   */
+  public void setMaxQueue(final int max) {
+    this.maxQueue = max;
+  }
+
+  /**
+   * The committed state. Changes as transactions are committed.
+   *
+   * @return an unmodifiable view of the state
+   */
+  public Map<String, ByteString> getState() {
+    return Collections.unmodifiableMap(state);
+  }
+
+  /**
+   * @return the number of batch submissions received
+   */
+  public long getSubmittedBatches() {
+    return submittedBatches.get();
+  }
+
+  /**
+   * @return the number of batch submissions answered with an error
+   */
+  public long getRejectedBatches() {
+    return rejectedBatches.get();
+  }
+
+  /**
+   * @return the number of transactions committed
+   */
+  public long getCommittedTransactions() {
+    return committedTransactions.get();
+  }
+
+  /**
+   * @return the number of transactions the processor found invalid
+   */
+  public long getInvalidTransactions() {
+    return invalidTransactions.get();
+  }
+
+  /**
+   * @return the number of events added by committed transactions
+   */
+  public long getEvents() {
+    return events.get();
+  }
+
+  /**
+   * @return the number of transactions waiting to be dispatched
+   */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /**
+   * Take the submit to commit latencies recorded since the last call.
+   *
+   * @return the latencies in nanoseconds, in commit order
+   */
+  public long[] drainCommitLatencies() {
+    synchronized (latencyLock) {
+      final long[] drained = Arrays.copyOf(commitLatencies, commitLatencyCount);
+      commitLatencyCount = 0;
+      return drained;
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+  }
+
+  @Override
+  public void run() {
+    try (ZContext zmq = new ZContext()) {
+      final ZMQ.Socket socket = zmq.createSocket(SocketType.ROUTER);
+      socket.bind(endpoint);
+      LOGGER.info("Validator stub listening on {}", endpoint);
+      final ZMQ.Poller poller = zmq.createPoller(1);
+      poller.register(socket, ZMQ.Poller.POLLIN);
+      while (running && !Thread.currentThread().isInterrupted()) {
+        poller.poll(pollTimeout());
+        if (poller.pollin(0)) {
+          receiveAll(socket);
+        }
+        sendDueReplies(socket);
+        dispatch(socket);
+      }
+      poller.close();
+    }
+  }
+
+  private long pollTimeout() {
+    final DelayedReply next = delayedReplies.peek();
+    if (next == null) {
+      return IDLE_POLL_MILLIS;
+    }
+    final long remaining = TimeUnit.NANOSECONDS.toMillis(next.dueNanos - System.nanoTime());
+    return Math.max(0, Math.min(IDLE_POLL_MILLIS, remaining));
+  }
+
+  private void receiveAll(final ZMQ.Socket socket) {
+    byte[] identity = socket.recv(ZMQ.DONTWAIT);
+    while (identity != null) {
+      final byte[] body = socket.recv();
+      try {
+        handle(socket, identity, Message.parseFrom(body));
+      } catch (InvalidProtocolBufferException e) {
+        LOGGER.warn("Discarding unparseable message: {}", e.getMessage());
+      }
+      identity = socket.recv(ZMQ.DONTWAIT);
+    }
+  }
+
+  private void handle(final ZMQ.Socket socket, final byte[] identity, final Message message)
+      throws InvalidProtocolBufferException {
+    final String correlationId = message.getCorrelationId();
+    switch (message.getMessageType()) {
+    case TP_REGISTER_REQUEST:
+      final TpRegisterRequest register = TpRegisterRequest.parseFrom(message.getContent());
+      LOGGER.info("Registered transaction processor for {} {}", register.getFamily(), register.getVersion());
+      processors.put(register.getFamily(), identity);
+      send(socket, identity, Message.MessageType.TP_REGISTER_RESPONSE, correlationId,
+          TpRegisterResponse.newBuilder().setStatus(TpRegisterResponse.Status.OK).build().toByteString());
+      break;
+    case TP_UNREGISTER_REQUEST:
+      processors.values().removeIf(id -> Arrays.equals(id, identity));
+      send(socket, identity, Message.MessageType.TP_UNREGISTER_RESPONSE, correlationId,
+          TpUnregisterResponse.newBuilder().setStatus(TpUnregisterResponse.Status.OK).build().toByteString());
+      break;
+    case CLIENT_BATCH_SUBMIT_REQUEST:
+      submit(socket, identity, correlationId, ClientBatchSubmitRequest.parseFrom(message.getContent()));
+      break;
+    case TP_PROCESS_RESPONSE:
+      processed(correlationId, TpProcessResponse.parseFrom(message.getContent()));
+      break;
+    case TP_STATE_GET_REQUEST:
+      send(socket, identity, Message.MessageType.TP_STATE_GET_RESPONSE, correlationId,
+          getState(TpStateGetRequest.parseFrom(message.getContent())).toByteString());
+      break;
+    case TP_STATE_SET_REQUEST:
+      send(socket, identity, Message.MessageType.TP_STATE_SET_RESPONSE, correlationId,
+          setState(TpStateSetRequest.parseFrom(message.getContent())).toByteString());
+      break;
+    case TP_STATE_DELETE_REQUEST:
+      send(socket, identity, Message.MessageType.TP_STATE_DELETE_RESPONSE, correlationId,
+          deleteState(TpStateDeleteRequest.parseFrom(message.getContent())).toByteString());
+      break;
+    case TP_EVENT_ADD_REQUEST:
+      send(socket, identity, Message.MessageType.TP_EVENT_ADD_RESPONSE, correlationId,
+          addEvent(TpEventAddRequest.parseFrom(message.getContent())).toByteString());
+      break;
+    case TP_RECEIPT_ADD_DATA_REQUEST:
+      final TpReceiptAddDataRequest receipt = TpReceiptAddDataRequest.parseFrom(message.getContent());
+      TpReceiptAddDataResponse.Status receiptStatus = TpReceiptAddDataResponse.Status.ERROR;
+      if (contextFor(receipt.getContextId()) != null) {
+        receiptStatus = TpReceiptAddDataResponse.Status.OK;
+      }
+      send(socket, identity, Message.MessageType.TP_RECEIPT_ADD_DATA_RESPONSE, correlationId,
+          TpReceiptAddDataResponse.newBuilder().setStatus(receiptStatus).build().toByteString());
+      break;
+    case PING_RESPONSE:
+      break;
+    default:
+      LOGGER.warn("Ignoring unexpected message type {}", message.getMessageType());
+    }
+  }
+
+  private void submit(final ZMQ.Socket socket, final byte[] identity, final String correlationId,
+      final ClientBatchSubmitRequest request) throws InvalidProtocolBufferException {
+    submittedBatches.incrementAndGet();
+    ClientBatchSubmitResponse.Status status = ClientBatchSubmitResponse.Status.OK;
+    if (submitErrorRate > 0 && random.nextDouble() < submitErrorRate) {
+      status = submitErrorStatus;
+    } else if (queue.size() >= maxQueue) {
+      status = ClientBatchSubmitResponse.Status.QUEUE_FULL;
+    } else {
+      final long now = System.nanoTime();
+      for (final Batch batch : request.getBatchesList()) {
+        for (final Transaction txn : batch.getTransactionsList()) {
+          queue.add(new PendingTransaction(TransactionHeader.parseFrom(txn.getHeader()), txn, now));
+        }
+      }
+      queueDepth = queue.size();
+    }
+    if (status != ClientBatchSubmitResponse.Status.OK) {
+      rejectedBatches.incrementAndGet();
+    }
+    final ByteString content = ClientBatchSubmitResponse.newBuilder().setStatus(status).build().toByteString();
+    final long latency = submitLatencyMillis;
+    if (latency > 0) {
+      delayedReplies.add(new DelayedReply(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latency), identity,
+          message(Message.MessageType.CLIENT_BATCH_SUBMIT_RESPONSE, correlationId, content)));
+    } else {
+      send(socket, identity, Message.MessageType.CLIENT_BATCH_SUBMIT_RESPONSE, correlationId, content);
+    }
+  }
+
+  private void sendDueReplies(final ZMQ.Socket socket) {
+    final long now = System.nanoTime();
+    while (!delayedReplies.isEmpty() && delayedReplies.peek().dueNanos <= now) {
+      final DelayedReply reply = delayedReplies.poll();
+      socket.send(reply.identity, ZMQ.SNDMORE);
+      socket.send(reply.message.toByteArray());
+    }
+  }
+
+  private void dispatch(final ZMQ.Socket socket) {
+    if (inFlight != null || queue.isEmpty()) {
+      return;
+    }
+    final PendingTransaction next = queue.peek();
+    final byte[] processor = processors.get(next.header.getFamilyName());
+    if (processor == null) {
+      // as the validator does, hold the transaction until a processor for its family registers
+      return;
+    }
+    queue.poll();
+    queueDepth = queue.size();
+    nextContextId++;
+    final String contextId = Long.toHexString(nextContextId);
+    inFlight = new InFlight(contextId, next);
+    final TpProcessRequest request = TpProcessRequest.newBuilder().setHeader(next.header)
+        .setPayload(next.transaction.getPayload()).setSignature(next.transaction.getHeaderSignature())
+        .setContextId(contextId).build();
+    send(socket, processor, Message.MessageType.TP_PROCESS_REQUEST, contextId, request.toByteString());
+  }
+
+  private void processed(final String correlationId, final TpProcessResponse response) {
+    if (inFlight == null || !inFlight.contextId.equals(correlationId)) {
+      LOGGER.warn("Ignoring process response for unknown context {}", correlationId);
+      return;
+    }
+    final InFlight done = inFlight;
+    inFlight = null;
+    switch (response.getStatus()) {
+    case OK:
+      for (final String address : done.deletes) {
+        state.remove(address);
+      }
+      state.putAll(done.writes);
+      committedTransactions.incrementAndGet();
+      events.addAndGet(done.events.size());
+      recordLatency(System.nanoTime() - done.transaction.submittedNanos);
+      break;
+    case INTERNAL_ERROR:
+      // the validator retries a transaction which failed with an internal error
+      queue.addFirst(done.transaction);
+      queueDepth = queue.size();
+      break;
+    default:
+      LOGGER.debug("Transaction invalid: {}", response.getMessage());
+      invalidTransactions.incrementAndGet();
+    }
+  }
+
+  private void recordLatency(final long nanos) {
+    synchronized (latencyLock) {
+      if (commitLatencyCount == commitLatencies.length) {
+        commitLatencies = Arrays.copyOf(commitLatencies, commitLatencies.length * 2);
+      }
+      commitLatencies[commitLatencyCount++] = nanos;
+    }
+  }
+
+  private InFlight contextFor(final String contextId) {
+    if (inFlight != null && inFlight.contextId.equals(contextId)) {
+      return inFlight;
+    }
+    return null;
+  }
+
+  private TpStateGetResponse getState(final TpStateGetRequest request) {
+    final InFlight context = contextFor(request.getContextId());
+    final TpStateGetResponse.Builder response = TpStateGetResponse.newBuilder();
+    if (context == null || !context.allowed(request.getAddressesList(), context.transaction.header.getInputsList())) {
+      return response.setStatus(TpStateGetResponse.Status.AUTHORIZATION_ERROR).build();
+    }
+    for (final String address : request.getAddressesList()) {
+      // like the validator, answer unset addresses with empty data
+      ByteString data = context.writes.get(address);
+      if (data == null && !context.deletes.contains(address)) {
+        data = state.get(address);
+      }
+      if (data == null) {
+        data = ByteString.EMPTY;
+      }
+      response.addEntries(TpStateEntry.newBuilder().setAddress(address).setData(data));
+    }
+    return response.setStatus(TpStateGetResponse.Status.OK).build();
+  }
+
+  private TpStateSetResponse setState(final TpStateSetRequest request) {
+    final InFlight context = contextFor(request.getContextId());
+    final TpStateSetResponse.Builder response = TpStateSetResponse.newBuilder();
+    final List<String> addresses = new ArrayList<>(request.getEntriesCount());
+    for (final TpStateEntry entry : request.getEntriesList()) {
+      addresses.add(entry.getAddress());
+    }
+    if (context == null || !context.allowed(addresses, context.transaction.header.getOutputsList())) {
+      return response.setStatus(TpStateSetResponse.Status.AUTHORIZATION_ERROR).build();
+    }
+    for (final TpStateEntry entry : request.getEntriesList()) {
+      context.deletes.remove(entry.getAddress());
+      context.writes.put(entry.getAddress(), entry.getData());
+    }
+    return response.addAllAddresses(addresses).setStatus(TpStateSetResponse.Status.OK).build();
+  }
+
+  private TpStateDeleteResponse deleteState(final TpStateDeleteRequest request) {
+    final InFlight context = contextFor(request.getContextId());
+    final TpStateDeleteResponse.Builder response = TpStateDeleteResponse.newBuilder();
+    if (context == null || !context.allowed(request.getAddressesList(), context.transaction.header.getOutputsList())) {
+      return response.setStatus(TpStateDeleteResponse.Status.AUTHORIZATION_ERROR).build();
+    }
+    for (final String address : request.getAddressesList()) {
+      if (context.writes.remove(address) != null || state.containsKey(address)) {
+        context.deletes.add(address);
+        response.addAddresses(address);
+      }
+    }
+    return response.setStatus(TpStateDeleteResponse.Status.OK).build();
+  }
+
+  private TpEventAddResponse addEvent(final TpEventAddRequest request) {
+    final InFlight context = contextFor(request.getContextId());
+    if (context == null) {
+      return TpEventAddResponse.newBuilder().setStatus(TpEventAddResponse.Status.ERROR).build();
+    }
+    context.events.add(request.getEvent());
+    return TpEventAddResponse.newBuilder().setStatus(TpEventAddResponse.Status.OK).build();
+  }
+
+  private static Message message(final Message.MessageType type, final String correlationId,
+      final ByteString content) {
+    return Message.newBuilder().setMessageType(type).setCorrelationId(correlationId).setContent(content).build();
+  }
+
+  private static void send(final ZMQ.Socket socket, final byte[] identity, final Message.MessageType type,
+      final String correlationId, final ByteString content) {
+    socket.send(identity, ZMQ.SNDMORE);
+    socket.send(message(type, correlationId, content).toByteArray());
+  }
+
+  /**
+   * A transaction accepted from a batch and waiting to be dispatched.
+   */
+  private static final class PendingTransaction {
+    private final TransactionHeader header;
+    private final Transaction transaction;
+    private final long submittedNanos;
+
+    PendingTransaction(final TransactionHeader txnHeader, final Transaction txn, final long submitted) {
+      this.header = txnHeader;
+      this.transaction = txn;
+      this.submittedNanos = submitted;
+    }
+  }
+
+  /**
+   * The context of the transaction being executed by a processor.
+   */
+  private static final class InFlight {
+    private final String contextId;
+    private final PendingTransaction transaction;
+    private final Map<String, ByteString> writes = new HashMap<>();
+    private final Set<String> deletes = new HashSet<>();
+    private final List<Event> events = new ArrayList<>();
+
+    InFlight(final String id, final PendingTransaction txn) {
+      this.contextId = id;
+      this.transaction = txn;
+    }
+
+    boolean allowed(final List<String> addresses, final List<String> prefixes) {
+      for (final String address : addresses) {
+        boolean matched = false;
+        final Iterator<String> it = prefixes.iterator();
+        while (!matched && it.hasNext()) {
+          matched = address.startsWith(it.next());
+        }
+        if (!matched) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A reply held back by the injected latency.
+   */
+  private static final class DelayedReply implements Comparable<DelayedReply> {
+    private final long dueNanos;
+    private final byte[] identity;
+    private final Message message;
+
+    DelayedReply(final long due, final byte[] replyIdentity, final Message replyMessage) {
+      this.dueNanos = due;
+      this.identity = replyIdentity;
+      this.message = replyMessage;
+    }
+
+    @Override
+    public int compareTo(final DelayedReply other) {
+      return Long.compare(dueNanos, other.dueNanos);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.blockchaintp.sawtooth.timekeeper.processor.AggregationStrategies;
+import com.blockchaintp.sawtooth.timekeeper.processor.AggregationStrategy;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimestampUtils;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperAggregation;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of the global time aggregations at a range of participant counts.
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Djmh.args="AggregationBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AggregationBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int participants;
+
+  @Param({"MEDIAN_OR_LAST", "QUICKSELECT_MEDIAN", "TRIMMED_MEAN", "WEIGHTED_MEDIAN"})
+  public TimeKeeperAggregation aggregation;
+
+  private long[] times;
+  private long[] weights;
+  private long[] workTimes;
+  private long[] workWeights;
+  private List<Timestamp> timestamps;
+  private AggregationStrategy strategy;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(participants);
+    times = new long[participants];
+    weights = new long[participants];
+    timestamps = new ArrayList<>();
+    for (int i = 0; i < participants; i++) {
+      times[i] = 1_600_000_000L + random.nextInt(200);
+      weights[i] = 1 + random.nextInt(200);
+      timestamps.add(Timestamps.fromSeconds(times[i]));
+    }
+    workTimes = new long[participants];
+    workWeights = new long[participants];
+    strategy = AggregationStrategies.forType(aggregation);
+  }
+
+  @Benchmark
+  public long aggregate() {
+    System.arraycopy(times, 0, workTimes, 0, participants);
+    System.arraycopy(weights, 0, workWeights, 0, participants);
+    return strategy.aggregate(workTimes, workWeights, participants);
+  }
+
+  /**
+   * The original Timestamp collection based calculation, for reference.
+   */
+  @Benchmark
+  public Timestamp timestampMedianOrLast() {
+    return TimestampUtils.medianOrLast(Timestamps.EPOCH, timestamps);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2023 Paravela Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.blockchaintp.sawtooth.timekeeper.benchmark;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.blockchaintp.sawtooth.timekeeper.bench.SimulatedParticipant;
+import com.blockchaintp.sawtooth.timekeeper.processor.TimeKeeperTransactionHandler;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperUpdate;
+import com.blockchaintp.sawtooth.timekeeper.protobuf.TimeKeeperVersion;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.util.Timestamps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sawtooth.sdk.processor.Context;
+import sawtooth.sdk.protobuf.TpProcessRequest;
+
+/**
+ * Measures a single apply of the transaction handler against a context which itself allocates
+ * nothing, so that the gc profiler reports what the handler allocates.
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Djmh.args="ApplyBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ApplyBenchmark {
+
+  private static final long START_SECONDS = 1_600_000_000L;
+
+  private static final int ROUNDS = 64;
+
+  @Param({"10", "100", "1000"})
+  public int participants;
+
+  @Param({"0", "10"})
+  public int maxHistory;
+
+  private TimeKeeperTransactionHandler handler;
+  private TpProcessRequest[] requests;
+  private Map<String, ByteString> initialState;
+  private ReusedContext context;
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    handler = new TimeKeeperTransactionHandler();
+    requests = new TpProcessRequest[participants * ROUNDS];
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int p = 0; p < participants; p++) {
+        TimeKeeperUpdate update = TimeKeeperUpdate.newBuilder().setVersion(TimeKeeperVersion.V_2_0)
+            .setMaxHistory(maxHistory).setTimeUpdate(Timestamps.fromSeconds(START_SECONDS + round * 20L + p % 20))
+            .build();
+        requests[round * participants + p] = SimulatedParticipant.toRequest(String.format("02%064x", p), update,
+            Integer.toString(p));
+      }
+    }
+    context = new ReusedContext(new HashMap<>());
+    // the first round seeds every participant, measurement starts from there
+    for (int p = 0; p < participants; p++) {
+      handler.apply(requests[p], context);
+    }
+    initialState = new HashMap<>(context.state);
+    next = participants;
+  }
+
+  @Benchmark
+  public Context apply() throws Exception {
+    if (next == requests.length) {
+      context.state.clear();
+      context.state.putAll(initialState);
+      next = participants;
+    }
+    handler.apply(requests[next++], context);
+    return context;
+  }
+
+  /**
+   * A context over a plain map which reuses its read results and drops events.
+   */
+  private static final class ReusedContext implements Context {
+
+    private final Map<String, ByteString> state;
+    private final Map<String, ByteString> results = new HashMap<>();
+
+    ReusedContext(final Map<String, ByteString> initial) {
+      this.state = initial;
+    }
+
+    @Override
+    public Map<String, ByteString> getState(final Collection<String> addresses) {
+      results.clear();
+      for (String address : addresses) {
+        ByteString value = state.get(address);
+        if (value != null) {
+          results.put(address, value);
+        }
+      }
+      return results;
+    }
+
+    @Override
+    public Collection<String> setState(final Collection<Map.Entry<String, ByteString>> addressValuePairs) {
+      for (Map.Entry<String, ByteString> e : addressValuePairs) {
+        state.put(e.getKey(), e.getValue());
+      }
+      return List.of();
+    }
+
+    @Override
+    public void addReceiptData(final ByteString data) {
+    }
+
+    @Override
+    public void addEvent(final String eventType, final Collection<Map.Entry<String, String>> attributes,
+        final ByteString extraData) {
+    }
+
+    @Override
+    public Collection<String> deleteState(final Collection<String> addresses) {
+      return List.of();
+    }
+  }
+}